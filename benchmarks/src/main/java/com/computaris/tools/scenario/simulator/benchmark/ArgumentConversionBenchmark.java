@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.computaris.tools.scenario.simulator.SimulatorFacadeRemoteDecorator;
+
+/**
+ * Argument conversion done by keywords before reaching the facade, e.g. parsing the endpoint properties and the
+ * schema list of ScenSimCreateLocalEndpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentConversionBenchmark {
+    @Param({"5", "50"})
+    public int propertyCount;
+
+    private SimulatorFacadeRemoteDecorator decorator;
+    private String properties;
+    private String schemas;
+
+    @Setup
+    public void setUp() {
+        Logger log = Logger.getLogger("benchmark");
+        log.setLevel(Level.OFF);
+        decorator = new SimulatorFacadeRemoteDecorator(new StubSimulatorFacade(10), log);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < propertyCount; i++) {
+            sb.append("endpoint.property.").append(i).append('=').append("value-").append(i).append('\n');
+        }
+        properties = sb.toString();
+        schemas = "diameter-base,diameter-ro,diameter-sh";
+    }
+
+    @Benchmark
+    public void createLocalEndpoint() throws Exception {
+        decorator.scenSimCreateLocalEndpoint("endpoint", "diameter", properties, schemas);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robotframework.remoteserver.RemoteServer;
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+import com.computaris.tools.scenario.simulator.SimulatorFacadeRemoteDecorator;
+
+/**
+ * Cost of keyword lookup and dispatch through the library the remote server builds from the decorator, compared
+ * with calling the decorator directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordDispatchBenchmark {
+    private static final String LIBRARY_PATH = "/SimulatorFacade";
+
+    private SimulatorFacadeRemoteDecorator decorator;
+    private RemoteLibrary library;
+    private List<String> noArguments;
+    private List<String> bindRoleArguments;
+    private Map<String, Object> noKeywordArguments;
+
+    @Setup
+    public void setUp() throws Exception {
+        Logger log = Logger.getLogger("benchmark");
+        log.setLevel(Level.OFF);
+        decorator = new SimulatorFacadeRemoteDecorator(new StubSimulatorFacade(10), log);
+        RemoteServer server = new RemoteServer(0);
+        server.putLibrary(LIBRARY_PATH, decorator);
+        library = server.getLibraryMap().get(LIBRARY_PATH);
+        noArguments = Collections.emptyList();
+        bindRoleArguments = Arrays.asList("role", "endpoint", "dialog", "config");
+        noKeywordArguments = Collections.emptyMap();
+    }
+
+    @Benchmark
+    public Object directGetScenarioNames() {
+        return decorator.scenSimGetScenarioNames();
+    }
+
+    @Benchmark
+    public Object dispatchGetScenarioNames() throws Throwable {
+        return library.runKeyword("ScenSimGetScenarioNames", noArguments, noKeywordArguments);
+    }
+
+    @Benchmark
+    public Object dispatchBindRole() throws Throwable {
+        return library.runKeyword("ScenSimBindRole", bindRoleArguments, noKeywordArguments);
+    }
+
+    @Benchmark
+    public Object keywordNames() {
+        return library.getKeywordNames();
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.ScenarioSimulatorMain;
+import com.computaris.tools.scenario.simulator.coordinator.RemotePeer;
+import com.computaris.tools.scenario.simulator.metrics.LatencyHistogram;
+
+/**
+ * Load test of the remote keyword server: serves a {@link StubSimulatorFacade} through
+ * {@link ScenarioSimulatorMain#serve} and calls it from local XML-RPC clients, each calling keywords of the mix back
+ * to back, for one step per client count. Needs no simulator installation nor network beyond the loopback:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar:$SIMULATOR_HOME/lib/scenario-simulator.jar \
+ *     com.computaris.tools.scenario.simulator.benchmark.LoadHarness clients=1,8,32,128 durationSeconds=20
+ * </pre>
+ * Settings (key=value arguments): clients (comma separated steps, default 1,4,16,64), durationSeconds (per step,
+ * default 20), warmupSeconds (per step, default 5), resultSize (items in collection results, default 100),
+ * callDelayMicros (added to every stub call, default 0), sessionDelayMicros (added to sessions, default 1000) and
+ * mix, the keywords called with their weight: keyword[|argument...]=weight, comma separated.
+ * <p>
+ * Each step reports calls per second, errors, the latency percentiles and the JVM peak threads, heap used and GC
+ * time, errors and latencies are reported per keyword for the last step. Clients run in the same JVM, their
+ * threads are included.
+ */
+public class LoadHarness {
+    private static final String DEFAULT_MIX = "ScenSimGetScenarioNames=15,ScenSimGetEndpointNames=10,"
+            + "ScenSimGetSessionLatency|name-0=10,ScenSimGetScenarioDescription|name-0=10,ScenSimGetSchemaInfos=5,"
+            + "ScenSimRunSession|name-0=20,ScenSimRunSessions|name-0|10|2=5,ScenSimSetSessionRate|10=5,"
+            + "ScenSimBindRole|role|endpoint|dialog|config=5,ScenSimGetConfigurationDescription=5,ScenSimGetKeywordStats=10";
+    private static final String LIBRARY_URL = "http://127.0.0.1:%d/SimulatorFacade";
+
+    private final int port;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final List<Call> mix = new ArrayList<>();
+    private final int totalWeight;
+
+    LoadHarness(int port, Properties settings) {
+        this.port = port;
+        this.durationSeconds = Integer.parseInt(settings.getProperty("durationSeconds", "20"));
+        this.warmupSeconds = Integer.parseInt(settings.getProperty("warmupSeconds", "5"));
+        int weight = 0;
+        for (String entry : settings.getProperty("mix", DEFAULT_MIX).split(",")) {
+            String[] keywordAndWeight = entry.trim().split("=", 2);
+            String[] keywordAndArgs = keywordAndWeight[0].split("\\|");
+            Call call = new Call(keywordAndArgs[0], Arrays.<Object>asList((Object[]) Arrays.copyOfRange(keywordAndArgs, 1, keywordAndArgs.length)),
+                    keywordAndWeight.length > 1 ? Integer.parseInt(keywordAndWeight[1]) : 1);
+            weight += call.weight;
+            mix.add(call);
+        }
+        this.totalWeight = weight;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties settings = new Properties();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                System.err.println("Usage: LoadHarness [key=value...], see the class documentation for the settings");
+                System.exit(2);
+            }
+            settings.setProperty(keyValue[0], keyValue[1]);
+        }
+        // the remote server swaps System.out to capture keyword output, racing between concurrent calls
+        PrintStream out = System.out;
+        Logger log = Logger.getLogger("simulator.main");
+        int port = freePort();
+        System.setProperty("com.computaris.robotremote.port", String.valueOf(port));
+        ScenarioSimulatorMain.serve(new StubSimulatorFacade(Integer.parseInt(settings.getProperty("resultSize", "100")),
+                Long.parseLong(settings.getProperty("callDelayMicros", "0")),
+                Long.parseLong(settings.getProperty("sessionDelayMicros", "1000"))), log);
+        Logger.getRootLogger().setLevel(Level.WARN);
+
+        LoadHarness harness = new LoadHarness(port, settings);
+        out.println(String.format(Locale.ROOT, "%8s %10s %8s %10s %10s %10s %10s %10s %10s %8s %8s %8s",
+                "clients", "calls/s", "errors", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "threads", "heap MB", "gc ms"));
+        Step last = null;
+        for (String clients : settings.getProperty("clients", "1,4,16,64").split(",")) {
+            last = harness.run(Integer.parseInt(clients.trim()));
+            out.println(last);
+        }
+        if (last != null) {
+            out.println();
+            out.println("Keyword latency (ms) with " + last.clients + " clients:");
+            for (Call call : harness.mix) {
+                out.println(String.format(Locale.ROOT, "%-40s errors=%d %s", call.keyword, call.errors.sum(), call.latency.summary()));
+            }
+        }
+        System.exit(0);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private Step run(int clients) throws Exception {
+        final List<RemotePeer> peers = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            peers.add(new RemotePeer(String.format(Locale.ROOT, LIBRARY_URL, port), 10000, 600000));
+        }
+        final Step step = new Step(clients);
+        final long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        final long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (final RemotePeer peer : peers) {
+            Thread client = new Thread(() -> {
+                try {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        Call call = next();
+                        boolean failed = false;
+                        try {
+                            peer.runKeyword(call.keyword, call.args);
+                        } catch (Exception e) {
+                            failed = true;
+                        }
+                        long elapsed = System.nanoTime() - now;
+                        if (now >= warmupEnd) {
+                            step.record(call, elapsed, failed);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client");
+            client.setDaemon(true);
+            client.start();
+        }
+        step.measure(warmupEnd, end, done);
+        return step;
+    }
+
+    private Call next() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Call call : mix) {
+            pick -= call.weight;
+            if (pick < 0) {
+                return call;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    private static final class Call {
+        private final String keyword;
+        private final List<Object> args;
+        private final int weight;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        Call(String keyword, List<Object> args, int weight) {
+            this.keyword = keyword;
+            this.args = args;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Client calls and JVM usage of one step, sampled every 100 ms during the measurement.
+     */
+    private final class Step {
+        private final int clients;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private Map<String, Object> summary;
+        private int peakThreads;
+        private long peakHeapBytes;
+        private long gcMillis;
+        private long measuredNanos;
+
+        Step(int clients) {
+            this.clients = clients;
+        }
+
+        void record(Call call, long elapsedNanos, boolean failed) {
+            latency.record(elapsedNanos);
+            call.latency.record(elapsedNanos);
+            calls.increment();
+            if (failed) {
+                errors.increment();
+                call.errors.increment();
+            }
+        }
+
+        void measure(long start, long end, CountDownLatch done) throws InterruptedException {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, start - System.nanoTime()));
+            for (Call call : mix) {
+                call.latency.reset();
+                call.errors.reset();
+            }
+            threads.resetPeakThreadCount();
+            long gcStart = gcMillis();
+            long measureStart = System.nanoTime();
+            while (!done.await(100, TimeUnit.MILLISECONDS)) {
+                peakHeapBytes = Math.max(peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+            }
+            measuredNanos = Math.min(System.nanoTime(), end) - measureStart;
+            peakThreads = threads.getPeakThreadCount();
+            gcMillis = gcMillis() - gcStart;
+            summary = latency.summary();
+        }
+
+        private long gcMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(0, collector.getCollectionTime());
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%8d %10.1f %8d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %8d %8d %8d",
+                    clients, calls.sum() * 1e9 / Math.max(1, measuredNanos), errors.sum(), summary.get("mean"), summary.get("p50"),
+                    summary.get("p90"), summary.get("p99"), summary.get("p99.9"), summary.get("max"), peakThreads,
+                    peakHeapBytes >> 20, gcMillis);
+        }
+    }
+}
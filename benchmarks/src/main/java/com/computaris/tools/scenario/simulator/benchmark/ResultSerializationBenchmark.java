@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.xmlrpc.common.XmlRpcHttpRequestConfigImpl;
+import org.apache.xmlrpc.serializer.DefaultXMLWriterFactory;
+import org.apache.xmlrpc.serializer.XmlRpcWriter;
+import org.apache.xmlrpc.server.XmlRpcServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robotframework.remoteserver.RemoteServer;
+import org.robotframework.remoteserver.xmlrpc.TypeFactory;
+
+import com.computaris.tools.scenario.simulator.SimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.transport.KeywordDispatcher;
+
+/**
+ * Marshalling of keyword results into an XML-RPC response with the remote server's type factory, and into a frame
+ * of the framed endpoint.
+ * <p>
+ * Simulator value objects (ScenarioBindingsDescription, SessionOutcome, stats snapshots) are marshalled as their
+ * string form by the remote server; they are represented here by a description string of the same shape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSerializationBenchmark {
+    @Param({"10", "1000"})
+    public int resultSize;
+
+    private XmlRpcHttpRequestConfigImpl config;
+    private TypeFactory typeFactory;
+    private DefaultXMLWriterFactory writerFactory;
+    private Collection<Map<String, String>> schemaInfos;
+    private String bindingsDescription;
+    private Map<String, Object> keywordResponse;
+    private KeywordDispatcher dispatcher;
+    private byte[] schemaInfosRequest;
+
+    @Setup
+    public void setUp() {
+        StubSimulatorFacade facade = new StubSimulatorFacade(resultSize);
+        config = new XmlRpcHttpRequestConfigImpl();
+        config.setEncoding(StandardCharsets.UTF_8.name());
+        typeFactory = new TypeFactory(new XmlRpcServer());
+        writerFactory = new DefaultXMLWriterFactory();
+        schemaInfos = facade.getSchemaInfos();
+        bindingsDescription = facade.getConfigurationDescription();
+
+        keywordResponse = new LinkedHashMap<>();
+        keywordResponse.put("status", "PASS");
+        keywordResponse.put("return", new ArrayList<>(schemaInfos));
+        keywordResponse.put("output", "");
+
+        Logger log = Logger.getLogger("benchmark");
+        log.setLevel(Level.OFF);
+        RemoteServer server = new RemoteServer(0);
+        server.putLibrary("/SimulatorFacade", new SimulatorFacadeRemoteDecorator(facade, log));
+        dispatcher = new KeywordDispatcher(server.getLibraryMap().get("/SimulatorFacade"));
+        schemaInfosRequest = "{\"id\":1,\"keyword\":\"ScenSimGetSchemaInfos\",\"args\":[]}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] writeXmlRpc(Object result) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XmlRpcWriter(config, writerFactory.getXmlWriter(config, out), typeFactory).write(config, result);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] xmlRpcSchemaInfos() throws Exception {
+        List<Object> result = new ArrayList<Object>(schemaInfos);
+        return writeXmlRpc(result);
+    }
+
+    @Benchmark
+    public byte[] xmlRpcBindingsDescription() throws Exception {
+        return writeXmlRpc(bindingsDescription);
+    }
+
+    @Benchmark
+    public byte[] xmlRpcKeywordResponse() throws Exception {
+        return writeXmlRpc(keywordResponse);
+    }
+
+    @Benchmark
+    public byte[] framedSchemaInfos() {
+        return dispatcher.dispatch(schemaInfosRequest);
+    }
+}
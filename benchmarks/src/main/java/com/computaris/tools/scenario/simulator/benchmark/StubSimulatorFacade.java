@@ -0,0 +1,280 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescription;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+import com.opencloud.tools.scenario.simulator.monitoring.DialogStatsSnapshot;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionLifecycleListener;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionMessageListener;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionStatusSnapshot;
+
+/**
+ * SimulatorFacade doing no work, so benchmarks measure the remote keyword layer only. Read only calls return
+ * preallocated results of configurable size; calls returning simulator value objects return null. Calls can be given
+ * a fixed delay, sessions a delay of their own, to stand in for the simulator in load tests.
+ */
+public class StubSimulatorFacade implements SimulatorFacade {
+    private final List<String> names;
+    private final List<Map<String, String>> infos;
+    private final String configurationDescription;
+    private final long callDelayNanos;
+    private final long sessionDelayNanos;
+
+    public StubSimulatorFacade(int resultSize) {
+        this(resultSize, 0, 0);
+    }
+
+    public StubSimulatorFacade(int resultSize, long callDelayMicros, long sessionDelayMicros) {
+        this.callDelayNanos = TimeUnit.MICROSECONDS.toNanos(callDelayMicros);
+        this.sessionDelayNanos = TimeUnit.MICROSECONDS.toNanos(sessionDelayMicros);
+        names = new ArrayList<>(resultSize);
+        infos = new ArrayList<>(resultSize);
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < resultSize; i++) {
+            names.add("name-" + i);
+            Map<String, String> info = new LinkedHashMap<>();
+            info.put("name", "schema-" + i);
+            info.put("version", "1." + i);
+            info.put("protocolAdaptorType", "adaptor-" + i);
+            infos.add(info);
+            description.append("endpoint-").append(i).append(" bound to role-").append(i).append('\n');
+        }
+        configurationDescription = description.toString();
+    }
+
+    private static void pause(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    @Override
+    public void setEndpointAddress(String endpointName, String addressString) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public Collection<String> getEndpointNames() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public Collection<String> getSchemaNames() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public Collection<Map<String, String>> getSchemaInfos() {
+        pause(callDelayNanos);
+        return infos;
+    }
+
+    @Override
+    public Collection<String> getProtocolAdaptorTypes() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public Collection<Map<String, String>> getProtocolAdaptorTypeInfos() {
+        pause(callDelayNanos);
+        return infos;
+    }
+
+    @Override
+    public String getProtocolAdaptorTypeForSchema(String schema) {
+        pause(callDelayNanos);
+        return schema;
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void createLocalEndpoint(String endpointName, String protocolAdaptorType, String propertiesFile, Collection<String> schemas) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void createLocalEndpoint(String localEndpointName, String protocolAdaptorType, Map<String, String> properties, Collection<String> schemas) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void bindRole(String roleName, String endpointName, String dialogName, String configName) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void loadDataSet(String dataSetName, String csvFilePath) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public Collection<String> getDataSetNames() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public void bindTable(String tableName, String dataSetName, String configName) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public ScenarioBindingsDescription load(String scenarioFile, String configName) {
+        pause(callDelayNanos);
+        return null;
+    }
+
+    @Override
+    public String getConfigurationDescription() {
+        pause(callDelayNanos);
+        return configurationDescription;
+    }
+
+    @Override
+    public Collection<String> getConfigurationNames() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public void setPreferredScenario(Map<String, Double> scenarios) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void setPreferredScenario(String scenarioName) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public boolean removeScenario(String scenarioName) {
+        pause(callDelayNanos);
+        return true;
+    }
+
+    @Override
+    public Collection<String> getScenarioNames() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public Collection<String> getInitiatingScenarioNames() {
+        pause(callDelayNanos);
+        return names;
+    }
+
+    @Override
+    public String getScenarioDescription(String scenarioName) {
+        pause(callDelayNanos);
+        return configurationDescription;
+    }
+
+    @Override
+    public ScenarioBindingsDescription getScenarioBindings(String scenarioName) {
+        pause(callDelayNanos);
+        return null;
+    }
+
+    @Override
+    public String getConnectivityStatusSummary() {
+        pause(callDelayNanos);
+        return configurationDescription;
+    }
+
+    @Override
+    public SessionStatusSnapshot getSessionStatsSnapshot() {
+        pause(callDelayNanos);
+        return null;
+    }
+
+    @Override
+    public void resetSessionAndDialogStats() {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public DialogStatsSnapshot getDialogStatsSnapshot() {
+        pause(callDelayNanos);
+        return null;
+    }
+
+    @Override
+    public SessionOutcome runSession(String scenarioName, SessionMessageListener sessionMessageListener) {
+        pause(sessionDelayNanos);
+        return null;
+    }
+
+    @Override
+    public boolean startGeneratingSessions() {
+        pause(callDelayNanos);
+        return true;
+    }
+
+    @Override
+    public void stopGeneratingSessions() {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void setSessionRate(double sessionRate) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void rampUpSessionRate(double initialRate, double targetRate, int period) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void addGlobalSessionLifecycleListener(SessionLifecycleListener sessionLifecycleListener) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void addGlobalSessionMessageListener(SessionMessageListener sessionMessageListener) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void waitUntilOperational(int timeout) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void quit(long timeout) {
+        pause(callDelayNanos);
+    }
+
+    @Override
+    public void quit() {
+        pause(callDelayNanos);
+    }
+}
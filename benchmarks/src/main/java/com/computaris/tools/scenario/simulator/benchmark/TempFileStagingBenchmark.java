@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.computaris.tools.scenario.simulator.SimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.cache.ScenarioCache;
+import com.computaris.tools.scenario.simulator.dataset.DataSetUploads;
+
+/**
+ * Staging of keyword payloads into files: the temp file written by ScenSimLoadDataSet, the chunked dataset upload
+ * and ScenSimLoadNoConfig. The stub returns no bindings, so the latter is never an index hit; it measures hashing
+ * a scenario which is already in the on-disk store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TempFileStagingBenchmark {
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    @Param({"1024", "1048576"})
+    public int payloadSize;
+
+    private File storeDirectory;
+    private SimulatorFacadeRemoteDecorator decorator;
+    private String payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        storeDirectory = Files.createTempDirectory("staging-benchmark").toFile();
+        System.setProperty(ScenarioCache.CACHE_DIR_PROPERTY, new File(storeDirectory, "scenarios").getPath());
+        System.setProperty(DataSetUploads.STORE_DIR_PROPERTY, new File(storeDirectory, "datasets").getPath());
+        Logger log = Logger.getLogger("benchmark");
+        log.setLevel(Level.OFF);
+        decorator = new SimulatorFacadeRemoteDecorator(new StubSimulatorFacade(10), log);
+
+        StringBuilder sb = new StringBuilder(payloadSize);
+        int row = 0;
+        while (sb.length() < payloadSize) {
+            sb.append("subscriber-").append(row).append(',').append(447700000000L + row).append(",active\n");
+            row++;
+        }
+        payload = sb.substring(0, payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(storeDirectory);
+    }
+
+    @Benchmark
+    public void loadDataSet() throws Exception {
+        decorator.scenSimLoadDataSet("dataset", payload);
+    }
+
+    @Benchmark
+    public void chunkedDataSetUpload() throws Exception {
+        Map<String, Object> upload = decorator.scenSimBeginDataSetUpload("dataset", payload.length());
+        String uploadId = (String) upload.get("uploadId");
+        for (int offset = 0; offset < payload.length(); offset += CHUNK_SIZE) {
+            decorator.scenSimAppendDataSetChunk(uploadId, payload.substring(offset, Math.min(payload.length(), offset + CHUNK_SIZE)));
+        }
+        decorator.scenSimCommitDataSetUpload(uploadId);
+    }
+
+    @Benchmark
+    public Object loadNoConfigStored() throws Exception {
+        return decorator.scenSimloadNoConfig(payload);
+    }
+}
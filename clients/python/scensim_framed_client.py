@@ -0,0 +1,123 @@
+# (C) Copyright 2020 Computaris International (http://computaris.com/).
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+"""Client for the framed keyword endpoint of the scenario simulator remote.
+
+Frames are a 4 byte big endian length followed by a UTF-8 JSON document.
+Calls can be pipelined: call() returns a Future, any number may be in flight.
+
+    with FramedKeywordClient("localhost", 8271) as client:
+        names = client.run("ScenSimGetScenarioNames")
+        futures = [client.call("ScenSimGetSessionLatency", s) for s in names]
+        latencies = [f.result() for f in futures]
+"""
+import itertools
+import json
+import socket
+import struct
+import threading
+from concurrent.futures import Future
+
+
+class KeywordError(Exception):
+    pass
+
+
+class FramedKeywordClient(object):
+
+    def __init__(self, host, port):
+        self._socket = socket.create_connection((host, port))
+        self._socket.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        self._ids = itertools.count(1)
+        self._in_flight = {}
+        self._closed = None
+        # _lock guards ids and _in_flight only, _send_lock keeps frames whole on the socket
+        self._lock = threading.Lock()
+        self._send_lock = threading.Lock()
+        self._reader = threading.Thread(target=self._read_responses, name="framed-keyword-client")
+        self._reader.daemon = True
+        self._reader.start()
+
+    def call(self, keyword, *args, **kwargs):
+        """Sends a keyword call without waiting, returns a Future of its return value."""
+        future = Future()
+        with self._lock:
+            if self._closed is not None:
+                future.set_exception(self._closed)
+                return future
+            call_id = next(self._ids)
+            self._in_flight[call_id] = future
+        frame = json.dumps({"id": call_id, "keyword": keyword, "args": list(args), "kwargs": kwargs}).encode("utf-8")
+        try:
+            with self._send_lock:
+                self._socket.sendall(struct.pack(">I", len(frame)) + frame)
+        except OSError:
+            with self._lock:
+                self._in_flight.pop(call_id, None)
+            raise
+        return future
+
+    def run(self, keyword, *args, **kwargs):
+        """Calls a keyword and waits for its return value."""
+        return self.call(keyword, *args, **kwargs).result()
+
+    def close(self):
+        self._socket.close()
+
+    def __enter__(self):
+        return self
+
+    def __exit__(self, *exc):
+        self.close()
+
+    def _read_exactly(self, length):
+        data = bytearray()
+        while len(data) < length:
+            chunk = self._socket.recv(length - len(data))
+            if not chunk:
+                raise EOFError("connection closed")
+            data.extend(chunk)
+        return bytes(data)
+
+    def _read_responses(self):
+        """Completes calls as responses arrive; when reading stops, every call still in flight fails."""
+        error = None
+        try:
+            while True:
+                length, = struct.unpack(">I", self._read_exactly(4))
+                self._complete(self._read_exactly(length))
+        except Exception as e:
+            error = e if isinstance(e, (EOFError, OSError)) else OSError("framed keyword client reader failed: %r" % e)
+        finally:
+            with self._lock:
+                self._closed = error or EOFError("connection closed")
+                pending, self._in_flight = self._in_flight, {}
+            for future in pending.values():
+                future.set_exception(self._closed)
+
+    def _complete(self, frame):
+        """Skips responses which cannot be matched to a call."""
+        try:
+            response = json.loads(frame.decode("utf-8"))
+        except ValueError:
+            return
+        if not isinstance(response, dict) or not isinstance(response.get("id"), int):
+            return
+        with self._lock:
+            future = self._in_flight.pop(response["id"], None)
+        if future is None:
+            return
+        if response.get("status") == "PASS":
+            future.set_result(response.get("return"))
+        else:
+            future.set_exception(KeywordError(response.get("error")))
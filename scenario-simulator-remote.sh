@@ -3,20 +3,70 @@
 #-------------------------------
 # Starts the scenario simulator remote.
 #
+# With --dump-cds as first argument it starts the simulator until it serves keywords, records the loaded classes
+# and dumps them into a class data sharing archive that the following starts map instead of loading the classes.
+# The archive is mapped when it exists and was dumped by the java executable found now, which is checked without
+# starting a JVM. An archive the JVM cannot use (e.g. after upgrading the JDK in place) is ignored by -Xshare:auto.
 #-------------------------------
 
 fail() { echo "$*" >&2; exit 1 ; }
 
-CLASSPATH="${SIMULATOR_HOME}" # For log4j config
-for library in `find "${SIMULATOR_HOME}/lib" -name '*.jar'|grep -v 'scenario-editor*.jar'`
+CDS_ARCHIVE="${SIMULATOR_HOME}/scenario-simulator-remote.jsa"
+CDS_CLASS_LIST="${SIMULATOR_HOME}/scenario-simulator-remote.classlist"
+CDS_JAVA="${SIMULATOR_HOME}/scenario-simulator-remote.jsa.java"
+
+JAVA_EXECUTABLE=`command -v java`
+JAVA_EXECUTABLE=`readlink -f "$JAVA_EXECUTABLE" 2>/dev/null || echo "$JAVA_EXECUTABLE"`
+
+USE_CDS=""
+if [ "$1" = "--dump-cds" ]; then
+    java -XX:DumpLoadedClassList=/dev/null -version >/dev/null 2>&1 \
+        || fail "This JVM cannot dump class data sharing archives"
+    USE_CDS="dump"
+elif [ -f "$CDS_ARCHIVE" ] && [ -f "$CDS_JAVA" ] && [ "$JAVA_EXECUTABLE" = "`cat "$CDS_JAVA"`" ]; then
+    USE_CDS="map"
+fi
+
+# Sorted, as the class path must not change between dumping and using the archive
+LIBRARIES=""
+for library in `find "${SIMULATOR_HOME}/lib" -name '*.jar'|grep -v 'scenario-editor*.jar'|sort`
 do
-    CLASSPATH="$CLASSPATH:$library"
+    LIBRARIES="$LIBRARIES:$library"
 done
 
+CLASSPATH="${SIMULATOR_HOME}$LIBRARIES" # For log4j config
+CDS_OPTIONS=""
+if [ -n "$USE_CDS" ]; then
+    # Class data sharing does not allow a non-empty directory in the class path, point log4j to its config instead
+    CLASSPATH="${LIBRARIES#:}"
+    LOG4J_CONFIG=`ls "${SIMULATOR_HOME}/log4j.xml" "${SIMULATOR_HOME}/log4j.properties" 2>/dev/null | head -n 1`
+    if [ -n "$LOG4J_CONFIG" ]; then
+        CDS_OPTIONS="-Dlog4j.configuration=file:$LOG4J_CONFIG"
+    fi
+fi
+
 . "$SIMULATOR_HOME/config_variables"
 
-java $OPTIONS -classpath "$CLASSPATH" \
+if [ "$USE_CDS" = "dump" ]; then
+    shift
+    rm -f "$CDS_ARCHIVE" "$CDS_CLASS_LIST" "$CDS_JAVA"
+    CDS_OPTIONS="$CDS_OPTIONS -Xshare:off -XX:DumpLoadedClassList=$CDS_CLASS_LIST -Dcom.computaris.robotremote.exit-when-ready=true"
+elif [ "$USE_CDS" = "map" ]; then
+    CDS_OPTIONS="$CDS_OPTIONS -XX:SharedArchiveFile=$CDS_ARCHIVE -Xshare:auto"
+fi
+
+java $OPTIONS $CDS_OPTIONS -classpath "$CLASSPATH" \
   -Dcom.opencloud.scenario-packs="${SIMULATOR_HOME}/protocols" \
   -Dcom.opencloud.simulator-log-directory="${SIMULATOR_HOME}/logs/" \
   -Dcom.opencloud.simulator-log-name="simulator.log" \
   com.computaris.tools.scenario.simulator.ScenarioSimulatorMain "$@"
+STATUS=$?
+
+if [ "$USE_CDS" = "dump" ]; then
+    [ $STATUS -eq 0 -a -f "$CDS_CLASS_LIST" ] || fail "Training run failed"
+    java -Xshare:dump -XX:SharedClassListFile="$CDS_CLASS_LIST" -XX:SharedArchiveFile="$CDS_ARCHIVE" -classpath "$CLASSPATH" \
+        || fail "Class data sharing archive dump failed"
+    echo "$JAVA_EXECUTABLE" > "$CDS_JAVA"
+fi
+
+exit $STATUS
@@ -18,10 +18,21 @@ package com.computaris.tools.scenario.simulator;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import com.computaris.tools.scenario.simulator.cache.MetadataCache;
+import com.computaris.tools.scenario.simulator.cache.ScenarioCache;
+import com.computaris.tools.scenario.simulator.concurrency.SimulatorLocks;
+import com.computaris.tools.scenario.simulator.config.ConfigurationJournal;
+import com.computaris.tools.scenario.simulator.config.ConfigurationPlan;
+import com.computaris.tools.scenario.simulator.config.ConfigurationSnapshots;
+import com.computaris.tools.scenario.simulator.logging.AsyncLogging;
+import com.computaris.tools.scenario.simulator.metrics.SnapshotCounters;
+import com.computaris.tools.scenario.simulator.shard.ShardedSimulatorFacade;
 import com.opencloud.tools.scenario.definition.ScenarioRecognitionException;
 import com.opencloud.tools.scenario.schema.validation.InvalidScenarioException;
 import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescription;
@@ -37,134 +48,267 @@ import com.opencloud.tools.scenario.simulator.protocol.ProtocolAdaptorException;
 
 /**
  * Base implementation for SimulatorFacade. Proxies local calls for scenario simulator.
+ * <p>
+ * Calls changing or using the simulator configuration are locked as described in {@link SimulatorLocks}, so that
+ * several clients can share the simulator. Configuration calls that succeed are journaled for
+ * {@link ConfigurationSnapshots}. Metadata results are served from a {@link MetadataCache}, configuration calls
+ * invalidate the results they can change.
  */
 public class BaseSimulatorFacadeRemoteDecorator implements SimulatorFacade {
-    protected SimulatorFacade simulatorFacade;
-    protected static Logger log;
+    public static final String APPLY_THREADS_PROPERTY = "com.computaris.robotremote.apply-threads";
+
+    protected final SimulatorFacade simulatorFacade;
+    protected final Logger log;
+    protected final Logger keywordLog;
+    protected final SimulatorLocks locks;
+    protected final ConfigurationSnapshots snapshots;
+    protected final ConfigurationJournal journal;
+    protected final MetadataCache metadataCache;
+    protected final ScenarioCache scenarioCache;
+    private volatile double sessionRate;
+    private volatile boolean generatingSessions;
 
     public BaseSimulatorFacadeRemoteDecorator(SimulatorFacade simulatorFacade, Logger log) {
         this.simulatorFacade = simulatorFacade;
-        BaseSimulatorFacadeRemoteDecorator.log = log;
+        this.log = log;
+        this.keywordLog = AsyncLogging.asyncLogger(log.getName() + ".keywords");
+        this.locks = SimulatorLocks.fromSystemProperties();
+        this.snapshots = ConfigurationSnapshots.fromSystemProperties(log);
+        this.journal = snapshots.newJournal();
+        this.metadataCache = MetadataCache.fromSystemProperties();
+        this.scenarioCache = ScenarioCache.fromSystemProperties();
+    }
+
+    /**
+     * Applies a configuration document as described in {@link ConfigurationPlan}, excluding every other locked call
+     * until done.
+     */
+    public Map<String, Object> applyConfiguration(String document) {
+        ConfigurationPlan plan = ConfigurationPlan.parse(document);
+        try (SimulatorLocks.Held held = locks.configuration("applyConfiguration")) {
+            try {
+                return plan.apply(simulatorFacade, journal, Integer.parseInt(System.getProperty(APPLY_THREADS_PROPERTY, "4")), log);
+            } finally {
+                invalidateCaches();
+            }
+        }
+    }
+
+    /**
+     * Saves the configuration applied so far as a named snapshot.
+     */
+    public Map<String, Object> saveConfiguration(String snapshotName) throws IOException {
+        try (SimulatorLocks.Held held = locks.configuration("saveConfiguration")) {
+            return snapshots.save(snapshotName, journal);
+        }
+    }
+
+    /**
+     * Applies a named snapshot, excluding every other locked call until done.
+     */
+    public Map<String, Object> restoreConfiguration(String snapshotName) throws Exception {
+        try (SimulatorLocks.Held held = locks.configuration("restoreConfiguration")) {
+            try {
+                return snapshots.restore(snapshotName, simulatorFacade, journal);
+            } finally {
+                invalidateCaches();
+            }
+        }
+    }
+
+    /**
+     * Forgets everything cached about the configuration, after calls changing it as a whole.
+     */
+    private void invalidateCaches() {
+        metadataCache.invalidateAll();
+        scenarioCache.invalidateAll();
     }
 
     @Override
     public void setEndpointAddress(String endpointName, String addressString) throws SimulatorConfigurationException {
-        simulatorFacade.setEndpointAddress(endpointName, addressString);
+        try (SimulatorLocks.Held held = locks.endpointChange("setEndpointAddress", endpointName)) {
+            simulatorFacade.setEndpointAddress(endpointName, addressString);
+            journal.recordEndpointAddress(endpointName, addressString);
+            metadataCache.invalidate(MetadataCache.ENDPOINT_NAMES, MetadataCache.CONFIGURATION_DESCRIPTION);
+        }
     }
 
     @Override
     public Collection<String> getEndpointNames() {
-        return simulatorFacade.getEndpointNames();
+        return metadataCache.get(MetadataCache.ENDPOINT_NAMES, simulatorFacade::getEndpointNames);
     }
 
     @Override
     public Collection<String> getSchemaNames() {
-        return simulatorFacade.getSchemaNames();
+        return metadataCache.get(MetadataCache.SCHEMA_NAMES, simulatorFacade::getSchemaNames);
     }
 
     @Override
     public Collection<Map<String, String>> getSchemaInfos() {
-        return simulatorFacade.getSchemaInfos();
+        return metadataCache.get(MetadataCache.SCHEMA_INFOS, simulatorFacade::getSchemaInfos);
     }
 
     @Override
     public Collection<String> getProtocolAdaptorTypes() {
-        return simulatorFacade.getProtocolAdaptorTypes();
+        return metadataCache.get(MetadataCache.PROTOCOL_ADAPTOR_TYPES, simulatorFacade::getProtocolAdaptorTypes);
     }
 
     @Override
     public Collection<Map<String, String>> getProtocolAdaptorTypeInfos() {
-        return simulatorFacade.getProtocolAdaptorTypeInfos();
+        return metadataCache.get(MetadataCache.PROTOCOL_ADAPTOR_TYPE_INFOS, simulatorFacade::getProtocolAdaptorTypeInfos);
     }
 
     @Override
     public String getProtocolAdaptorTypeForSchema(String schema) throws SimulatorConfigurationException {
-        return simulatorFacade.getProtocolAdaptorTypeForSchema(schema);
+        return metadataCache.get(MetadataCache.PROTOCOL_ADAPTOR_TYPE_FOR_SCHEMA + schema, () -> simulatorFacade.getProtocolAdaptorTypeForSchema(schema));
     }
 
     @SuppressWarnings("deprecation")
     @Override
     public void createLocalEndpoint(String endpointName, String protocolAdaptorType, String propertiesFile, Collection<String> schemas)
             throws ProtocolAdaptorException, IllegalStateException, IOException, SimulatorConfigurationException {
-        simulatorFacade.createLocalEndpoint(endpointName, protocolAdaptorType, propertiesFile, schemas);
+        try (SimulatorLocks.Held held = locks.endpointChange("createLocalEndpoint", endpointName)) {
+            simulatorFacade.createLocalEndpoint(endpointName, protocolAdaptorType, propertiesFile, schemas);
+            journal.recordCreateLocalEndpoint(endpointName, protocolAdaptorType, propertiesFile, schemas);
+            metadataCache.invalidate(MetadataCache.ENDPOINT_NAMES, MetadataCache.CONFIGURATION_DESCRIPTION);
+        }
     }
 
     @Override
     public void createLocalEndpoint(String localEndpointName, String protocolAdaptorType, Map<String, String> properties, Collection<String> schemas)
             throws ProtocolAdaptorException, IllegalStateException, SimulatorConfigurationException {
-        simulatorFacade.createLocalEndpoint(localEndpointName, protocolAdaptorType, properties, schemas);
+        try (SimulatorLocks.Held held = locks.endpointChange("createLocalEndpoint", localEndpointName)) {
+            simulatorFacade.createLocalEndpoint(localEndpointName, protocolAdaptorType, properties, schemas);
+            journal.recordCreateLocalEndpoint(localEndpointName, protocolAdaptorType, properties, schemas);
+            metadataCache.invalidate(MetadataCache.ENDPOINT_NAMES, MetadataCache.CONFIGURATION_DESCRIPTION);
+        }
     }
 
     @Override
     public void bindRole(String roleName, String endpointName, String dialogName, String configName) throws SimulatorConfigurationException {
-        simulatorFacade.bindRole(roleName, endpointName, dialogName, configName);
+        try (SimulatorLocks.Held held = locks.configuration("bindRole")) {
+            simulatorFacade.bindRole(roleName, endpointName, dialogName, configName);
+            journal.recordBindRole(roleName, endpointName, dialogName, configName);
+            metadataCache.invalidate(MetadataCache.CONFIGURATION_DESCRIPTION, MetadataCache.CONFIGURATION_NAMES, MetadataCache.SCENARIO_BINDINGS);
+        }
     }
 
     @Override
     public void loadDataSet(String dataSetName, String csvFilePath) throws IOException, SimulatorConfigurationException {
-        simulatorFacade.loadDataSet(dataSetName, csvFilePath);
+        try (SimulatorLocks.Held held = locks.configuration("loadDataSet")) {
+            simulatorFacade.loadDataSet(dataSetName, csvFilePath);
+            journal.recordLoadDataSet(dataSetName, csvFilePath);
+            metadataCache.invalidate(MetadataCache.DATASET_NAMES, MetadataCache.CONFIGURATION_DESCRIPTION);
+        }
     }
 
     @Override
     public Collection<String> getDataSetNames() {
-        return simulatorFacade.getDataSetNames();
+        return metadataCache.get(MetadataCache.DATASET_NAMES, simulatorFacade::getDataSetNames);
     }
 
     @Override
     public void bindTable(String tableName, String dataSetName, String configName) throws SimulatorConfigurationException {
-        simulatorFacade.bindTable(tableName, dataSetName, configName);
+        try (SimulatorLocks.Held held = locks.configuration("bindTable")) {
+            simulatorFacade.bindTable(tableName, dataSetName, configName);
+            journal.recordBindTable(tableName, dataSetName, configName);
+            metadataCache.invalidate(MetadataCache.CONFIGURATION_DESCRIPTION, MetadataCache.CONFIGURATION_NAMES, MetadataCache.SCENARIO_BINDINGS);
+        }
     }
 
     @Override
     public ScenarioBindingsDescription load(String scenarioFile, String configName)
             throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
-        log.info("load: scen=" + scenarioFile + ", config=" + configName);
-        return simulatorFacade.load(scenarioFile, configName);
+        return load(scenarioFile, configName, new HashSet<String>());
+    }
+
+    /**
+     * Loads the scenario, putting the names of the scenarios the load added into added, compared under the
+     * configuration lock so that no other load comes in between.
+     */
+    protected ScenarioBindingsDescription load(String scenarioFile, String configName, Set<String> added)
+            throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
+        if (keywordLog.isInfoEnabled()) {
+            keywordLog.info("load: scen=" + scenarioFile + ", config=" + configName);
+        }
+        try (SimulatorLocks.Held held = locks.configuration("load")) {
+            Set<String> namesBefore = new HashSet<>(getScenarioNames());
+            ScenarioBindingsDescription bindings = simulatorFacade.load(scenarioFile, configName);
+            // the name of the loaded scenario is only known from its file, all per scenario results go
+            metadataCache.invalidate(MetadataCache.SCENARIO_NAMES, MetadataCache.INITIATING_SCENARIO_NAMES, MetadataCache.SCENARIO_DESCRIPTION,
+                    MetadataCache.SCENARIO_BINDINGS, MetadataCache.CONFIGURATION_DESCRIPTION, MetadataCache.CONFIGURATION_NAMES);
+            added.addAll(getScenarioNames());
+            added.removeAll(namesBefore);
+            if (added.isEmpty()) {
+                // the load replaced a scenario of a name already loaded, which cached one is not known
+                scenarioCache.invalidateAll();
+            }
+            journal.recordLoad(scenarioFile, configName, added.size() == 1 ? added.iterator().next() : null);
+            return bindings;
+        }
     }
 
     @Override
     public String getConfigurationDescription() {
-        return simulatorFacade.getConfigurationDescription();
+        return metadataCache.get(MetadataCache.CONFIGURATION_DESCRIPTION, simulatorFacade::getConfigurationDescription);
     }
 
     @Override
     public Collection<String> getConfigurationNames() {
-        return simulatorFacade.getConfigurationNames();
+        return metadataCache.get(MetadataCache.CONFIGURATION_NAMES, simulatorFacade::getConfigurationNames);
     }
 
     @Override
     public void setPreferredScenario(Map<String, Double> scenarios) throws SimulatorException {
-        simulatorFacade.setPreferredScenario(scenarios);
+        try (SimulatorLocks.Held held = locks.configuration("setPreferredScenario")) {
+            simulatorFacade.setPreferredScenario(scenarios);
+            journal.recordPreferredScenarios(scenarios);
+            metadataCache.invalidate(MetadataCache.CONFIGURATION_DESCRIPTION);
+        }
     }
 
     @Override
     public void setPreferredScenario(String scenarioName) throws SimulatorException {
-        simulatorFacade.setPreferredScenario(scenarioName);
+        try (SimulatorLocks.Held held = locks.configuration("setPreferredScenario")) {
+            simulatorFacade.setPreferredScenario(scenarioName);
+            journal.recordPreferredScenario(scenarioName);
+            metadataCache.invalidate(MetadataCache.CONFIGURATION_DESCRIPTION);
+        }
     }
 
     @Override
     public boolean removeScenario(String scenarioName) {
-        return simulatorFacade.removeScenario(scenarioName);
+        try (SimulatorLocks.Held held = locks.scenarioChange("removeScenario", scenarioName)) {
+            boolean removed = simulatorFacade.removeScenario(scenarioName);
+            if (removed) {
+                journal.recordRemoveScenario(scenarioName);
+                scenarioCache.invalidateScenario(scenarioName);
+                metadataCache.invalidate(MetadataCache.SCENARIO_NAMES, MetadataCache.INITIATING_SCENARIO_NAMES,
+                        MetadataCache.SCENARIO_DESCRIPTION + scenarioName, MetadataCache.SCENARIO_BINDINGS + scenarioName,
+                        MetadataCache.CONFIGURATION_DESCRIPTION);
+            }
+            return removed;
+        }
     }
 
     @Override
     public Collection<String> getScenarioNames() {
-        return simulatorFacade.getScenarioNames();
+        return metadataCache.get(MetadataCache.SCENARIO_NAMES, simulatorFacade::getScenarioNames);
     }
 
     @Override
     public Collection<String> getInitiatingScenarioNames() {
-        return simulatorFacade.getInitiatingScenarioNames();
+        return metadataCache.get(MetadataCache.INITIATING_SCENARIO_NAMES, simulatorFacade::getInitiatingScenarioNames);
     }
 
     @Override
     public String getScenarioDescription(String scenarioName) {
-        return simulatorFacade.getScenarioDescription(scenarioName);
+        return metadataCache.get(MetadataCache.SCENARIO_DESCRIPTION + scenarioName, () -> simulatorFacade.getScenarioDescription(scenarioName));
     }
 
     @Override
     public ScenarioBindingsDescription getScenarioBindings(String scenarioName) {
-        return simulatorFacade.getScenarioBindings(scenarioName);
+        return metadataCache.get(MetadataCache.SCENARIO_BINDINGS + scenarioName, () -> simulatorFacade.getScenarioBindings(scenarioName));
     }
 
     @Override
@@ -177,6 +321,16 @@ public class BaseSimulatorFacadeRemoteDecorator implements SimulatorFacade {
         return simulatorFacade.getSessionStatsSnapshot();
     }
 
+    /**
+     * @return numeric view of the session stats, merged over all shards when sharded
+     */
+    public Map<String, Number> getSessionStatsCounters() {
+        if (simulatorFacade instanceof ShardedSimulatorFacade) {
+            return ((ShardedSimulatorFacade) simulatorFacade).getSessionStatsCounters();
+        }
+        return SnapshotCounters.of(getSessionStatsSnapshot());
+    }
+
     @Override
     public void resetSessionAndDialogStats() {
         simulatorFacade.resetSessionAndDialogStats();
@@ -187,31 +341,81 @@ public class BaseSimulatorFacadeRemoteDecorator implements SimulatorFacade {
         return simulatorFacade.getDialogStatsSnapshot();
     }
 
+    /**
+     * @return numeric view of the dialog stats, merged over all shards when sharded
+     */
+    public Map<String, Number> getDialogStatsCounters() {
+        if (simulatorFacade instanceof ShardedSimulatorFacade) {
+            return ((ShardedSimulatorFacade) simulatorFacade).getDialogStatsCounters();
+        }
+        return SnapshotCounters.of(getDialogStatsSnapshot());
+    }
+
     @Override
     public SessionOutcome runSession(String scenarioName, SessionMessageListener paramSessionMessageListener) throws SimulatorException {
-        return simulatorFacade.runSession(scenarioName, paramSessionMessageListener);
+        try (SimulatorLocks.Held held = locks.scenarioExecution("runSession", scenarioName)) {
+            return simulatorFacade.runSession(scenarioName, paramSessionMessageListener);
+        }
     }
 
     @Override
     public boolean startGeneratingSessions() {
-        return simulatorFacade.startGeneratingSessions();
+        try (SimulatorLocks.Held held = locks.execution("startGeneratingSessions")) {
+            boolean started = simulatorFacade.startGeneratingSessions();
+            generatingSessions = true;
+            return started;
+        }
     }
 
     @Override
     public void stopGeneratingSessions() {
-        simulatorFacade.stopGeneratingSessions();
+        try (SimulatorLocks.Held held = locks.execution("stopGeneratingSessions")) {
+            simulatorFacade.stopGeneratingSessions();
+            generatingSessions = false;
+        }
     }
 
     @Override
     public void setSessionRate(double paramDouble) {
-        simulatorFacade.setSessionRate(paramDouble);
+        try (SimulatorLocks.Held held = locks.execution("setSessionRate")) {
+            simulatorFacade.setSessionRate(paramDouble);
+            sessionRate = paramDouble;
+        }
     }
 
+    /**
+     * Only validating and recording the target rate holds the execution lock: the ramp blocks for its whole period
+     * and would otherwise keep configuration calls out meanwhile.
+     */
     @Override
     public void rampUpSessionRate(double initialRate, double targetRate, int period) {
+        if (initialRate < 0 || targetRate < 0 || period < 0) {
+            throw new IllegalArgumentException("Invalid ramp up from " + initialRate + " to " + targetRate + " over " + period);
+        }
+        try (SimulatorLocks.Held held = locks.execution("rampUpSessionRate")) {
+            sessionRate = targetRate;
+        }
         simulatorFacade.rampUpSessionRate(initialRate, targetRate, period);
     }
 
+    public Map<String, Object> getMetadataCacheStats() {
+        return metadataCache.getStats();
+    }
+
+    /**
+     * @return the session rate last set through this decorator, the target rate of a ramp up
+     */
+    public double getSessionRate() {
+        return sessionRate;
+    }
+
+    /**
+     * @return whether sessions are generated, as last started or stopped through this decorator
+     */
+    public boolean isGeneratingSessions() {
+        return generatingSessions;
+    }
+
     @Override
     public void addGlobalSessionLifecycleListener(SessionLifecycleListener sessionLifecycleListener) {
         simulatorFacade.addGlobalSessionLifecycleListener(sessionLifecycleListener);
@@ -16,47 +16,201 @@
  */
 package com.computaris.tools.scenario.simulator;
 
+import com.computaris.tools.scenario.simulator.coordinator.CoordinatorLibrary;
+import com.computaris.tools.scenario.simulator.coordinator.RemotePeer;
+import com.computaris.tools.scenario.simulator.index.IndexedRemoteLibrary;
+import com.computaris.tools.scenario.simulator.index.KeywordIndex;
+import com.computaris.tools.scenario.simulator.metrics.InstrumentedRemoteLibrary;
+import com.computaris.tools.scenario.simulator.metrics.KeywordStats;
+import com.computaris.tools.scenario.simulator.metrics.OpenMetricsEndpoint;
+import com.computaris.tools.scenario.simulator.shard.ShardedSimulatorFacade;
+import com.computaris.tools.scenario.simulator.transport.FramedKeywordServer;
+import com.computaris.tools.scenario.simulator.transport.KeywordDispatcher;
 import com.opencloud.tools.scenario.simulator.ScenarioSimulatorFactory;
 import org.apache.log4j.Logger;
 import org.robotframework.javalib.library.AnnotationLibrary;
 import org.robotframework.remoteserver.RemoteServer;
+import org.robotframework.remoteserver.library.DefaultRemoteLibraryFactory;
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
 
 public final class ScenarioSimulatorMain extends AnnotationLibrary {
     private static final String SIMULATOR_RHINOREMOTE_PORT = "com.computaris.robotremote.port";
+    private static final String SIMULATOR_FRAMED_PORT = "com.computaris.robotremote.framed-port";
+    private static final String SIMULATOR_METRICS_PORT = "com.computaris.robotremote.metrics-port";
+    private static final String SIMULATOR_SHARDS = "com.computaris.robotremote.shards";
+    private static final String SIMULATOR_PEERS = "com.computaris.robotremote.peers";
+    private static final String SIMULATOR_PEER_TIMEOUT = "com.computaris.robotremote.peer-timeout";
+    private static final String SIMULATOR_PEER_LONG_TIMEOUT = "com.computaris.robotremote.peer-long-timeout";
+    private static final String SIMULATOR_EXIT_WHEN_READY = "com.computaris.robotremote.exit-when-ready";
+    private static final String SIMULATOR_RESTORE_SNAPSHOT = "com.computaris.robotremote.restore-snapshot";
     private static final String REMOTE_KEYWORD_DOCUMENTATION_EXPLANATION = "https://docs.opencloud.com/ocdoc/books/scenario-simulator/3.0.0/scenario-simulator-user-guide/managing-the-scenario-simulator/help-with-simulator-commands.html";
+    private static final String REMOTE_LIBRARY_PATH = "/SimulatorFacade";
     private static final String REMOTE_LIBRARY_LOCATION = "com/computaris/tools/scenario/simulator/*.class";
 
+    private final KeywordIndex keywordIndex;
+
     public ScenarioSimulatorMain() {
-        super(REMOTE_LIBRARY_LOCATION);
+        keywordIndex = KeywordIndex.forClass(SimulatorFacadeRemoteDecorator.class);
+        if (keywordIndex == null) {
+            addKeywordPattern(REMOTE_LIBRARY_LOCATION);
+        }
+    }
+
+    @Override
+    public List<String> getKeywordNames() {
+        return keywordIndex != null ? keywordIndex.getKeywordNames() : super.getKeywordNames();
+    }
+
+    @Override
+    public List<String> getKeywordArguments(String keywordName) {
+        return keywordIndex != null ? keywordIndex.getKeywordArguments(keywordName) : super.getKeywordArguments(keywordName);
     }
 
     @Override
     public String getKeywordDocumentation(String keywordName) {
         if (keywordName.equals("__intro__")) {
             return REMOTE_KEYWORD_DOCUMENTATION_EXPLANATION;
+        } else if (keywordIndex != null) {
+            return keywordIndex.getKeywordDocumentation(keywordName);
         } else {
             return super.getKeywordDocumentation(keywordName);
         }
     }
 
-    private static void startRemoteServer(SimulatorFacade simulatorFacade, Logger log) throws Exception {
+    /**
+     * @return the library served with the keyword index generated at build time, the library itself if there is none
+     */
+    private static Object indexed(Object library, Logger log) {
+        if (library instanceof RemoteLibrary) {
+            return library;
+        }
+        final KeywordIndex index = KeywordIndex.forClass(library.getClass());
+        if (index == null) {
+            log.info("No keyword index for " + library.getClass().getName() + ", keywords are found by reflection");
+            return library;
+        }
+        return new IndexedRemoteLibrary(library, index);
+    }
+
+    /**
+     * @return the library recording its keyword calls into stats, which are registered as an MBean
+     */
+    private static RemoteLibrary instrumented(Object library, KeywordStats stats, Logger log) throws Exception {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(KeywordStats.OBJECT_NAME));
+        log.info("Keyword stats registered as MBean " + KeywordStats.OBJECT_NAME);
+        RemoteLibrary remoteLibrary = library instanceof RemoteLibrary
+                ? (RemoteLibrary) library : new DefaultRemoteLibraryFactory().createRemoteLibrary(library);
+        return new InstrumentedRemoteLibrary(remoteLibrary, stats);
+    }
+
+    private static void startRemoteServer(Object library, KeywordStats stats, Logger log) throws Exception {
         RemoteServer.configureLogging();
         final String portNumber = System.getProperty(SIMULATOR_RHINOREMOTE_PORT, "8270");
         final RemoteServer server = new RemoteServer(Integer.parseInt(portNumber));
-        server.putLibrary("/SimulatorFacade", simulatorFacade);
+        final Object indexed = indexed(library, log);
+        server.putLibrary(REMOTE_LIBRARY_PATH, instrumented(indexed, stats, log));
         log.info("Starting RhinoRemote server on port=" + portNumber);
         server.start();
+        startFramedServer(server.getLibraryMap().get(REMOTE_LIBRARY_PATH), log);
+        startMetricsEndpoint(library, stats, log);
+        ready(log);
+    }
+
+    /**
+     * Logs the time from JVM start to serving keywords. With {@value #SIMULATOR_EXIT_WHEN_READY} set the JVM exits
+     * there, which is what the class data sharing training run of the launcher needs.
+     */
+    private static void ready(Logger log) {
+        log.info("Ready to serve keywords " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after JVM start");
+        if (Boolean.getBoolean(SIMULATOR_EXIT_WHEN_READY)) {
+            log.info("Exiting as " + SIMULATOR_EXIT_WHEN_READY + " is set");
+            System.exit(0);
+        }
+    }
+
+    private static void startFramedServer(RemoteLibrary library, Logger log) throws Exception {
+        final String portNumber = System.getProperty(SIMULATOR_FRAMED_PORT);
+        if (portNumber == null || portNumber.isEmpty()) {
+            return;
+        }
+        final FramedKeywordServer server = FramedKeywordServer.fromSystemProperties(Integer.parseInt(portNumber), new KeywordDispatcher(library), log);
+        log.info("Starting framed keyword server on address=" + server.getLocalAddress().getHostAddress() + " port=" + portNumber);
+        server.start();
+    }
+
+    private static void startMetricsEndpoint(Object library, KeywordStats stats, Logger log) throws Exception {
+        final String portNumber = System.getProperty(SIMULATOR_METRICS_PORT);
+        if (portNumber == null || portNumber.isEmpty()) {
+            return;
+        }
+        final BaseSimulatorFacadeRemoteDecorator simulatorFacade = library instanceof BaseSimulatorFacadeRemoteDecorator
+                ? (BaseSimulatorFacadeRemoteDecorator) library : null;
+        final OpenMetricsEndpoint endpoint = new OpenMetricsEndpoint(Integer.parseInt(portNumber), simulatorFacade, stats, log);
+        log.info("Starting metrics endpoint on port=" + portNumber);
+        endpoint.start();
+    }
+
+    private static SimulatorFacade createSimulator(Logger log) throws Exception {
+        final int shards = Integer.parseInt(System.getProperty(SIMULATOR_SHARDS, "1"));
+        if (shards <= 1) {
+            return ScenarioSimulatorFactory.createSimulator();
+        }
+        log.info("Creating " + shards + " simulator shards");
+        List<SimulatorFacade> facades = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            facades.add(ScenarioSimulatorFactory.createSimulator());
+        }
+        return new ShardedSimulatorFacade(facades);
+    }
+
+    private static CoordinatorLibrary createCoordinator(String peerUrls, Logger log) throws Exception {
+        final int timeout = Integer.parseInt(System.getProperty(SIMULATOR_PEER_TIMEOUT, "10000"));
+        final int longTimeout = Integer.parseInt(System.getProperty(SIMULATOR_PEER_LONG_TIMEOUT, "3600000"));
+        List<RemotePeer> peers = new ArrayList<>();
+        for (String url : peerUrls.split(",")) {
+            if (!url.trim().isEmpty()) {
+                peers.add(new RemotePeer(url.trim(), timeout, longTimeout));
+            }
+        }
+        log.info("Coordinating simulators " + peers);
+        return new CoordinatorLibrary(peers, log);
+    }
+
+    /**
+     * Serves the keywords of the simulator on the configured ports, as the simulator created by main. Also used to
+     * serve a stub simulator in load tests.
+     */
+    public static SimulatorFacadeRemoteDecorator serve(SimulatorFacade simulatorFacade, Logger log) throws Exception {
+        SimulatorFacadeRemoteDecorator simulatorFacadeRemote = new SimulatorFacadeRemoteDecorator(simulatorFacade, log);
+        final String snapshotName = System.getProperty(SIMULATOR_RESTORE_SNAPSHOT);
+        if (snapshotName != null && !snapshotName.isEmpty()) {
+            simulatorFacadeRemote.restoreConfiguration(snapshotName);
+        }
+        startRemoteServer(simulatorFacadeRemote, simulatorFacadeRemote.getKeywordStats(), log);
+        return simulatorFacadeRemote;
     }
 
     public static void main(String[] args) throws Exception {
         Logger log = Logger.getLogger("simulator.main");
         try {
+            final String peerUrls = System.getProperty(SIMULATOR_PEERS);
+            if (peerUrls != null && !peerUrls.isEmpty()) {
+                startRemoteServer(createCoordinator(peerUrls, log), new KeywordStats(), log);
+                return;
+            }
+
             log.info("Initialising the simulator...");
-            final SimulatorFacade simulatorFacade = ScenarioSimulatorFactory.createSimulator();
-            SimulatorFacadeRemoteDecorator simulatorFacadeRemote = new SimulatorFacadeRemoteDecorator(simulatorFacade, log);
-            startRemoteServer(simulatorFacadeRemote, log);
+            final long initStart = System.nanoTime();
+            final SimulatorFacade simulatorFacade = createSimulator(log);
+            log.info("Simulator initialised in " + (System.nanoTime() - initStart) / 1000000 + " ms");
+            serve(simulatorFacade, log);
 
         } catch (Throwable throwable) {
             if (log == null) {
@@ -16,6 +16,28 @@
  */
 package com.computaris.tools.scenario.simulator;
 
+import com.computaris.tools.scenario.simulator.cache.ContentDigest;
+import com.computaris.tools.scenario.simulator.cache.ScenarioCache;
+import com.computaris.tools.scenario.simulator.concurrency.SimulatorLocks;
+import com.computaris.tools.scenario.simulator.control.CapacitySearch;
+import com.computaris.tools.scenario.simulator.control.TrafficProfile;
+import com.computaris.tools.scenario.simulator.control.TrafficProfileScheduler;
+import com.computaris.tools.scenario.simulator.dataset.DataSetUploads;
+import com.computaris.tools.scenario.simulator.job.KeywordJobs;
+import com.computaris.tools.scenario.simulator.journal.SessionJournal;
+import com.computaris.tools.scenario.simulator.logging.AsyncLogging;
+import com.computaris.tools.scenario.simulator.metrics.KeywordStats;
+import com.computaris.tools.scenario.simulator.metrics.SessionLatencyRecorder;
+import com.computaris.tools.scenario.simulator.metrics.SlaMonitor;
+import com.computaris.tools.scenario.simulator.metrics.SnapshotCounters;
+import com.computaris.tools.scenario.simulator.metrics.StatsScopes;
+import com.computaris.tools.scenario.simulator.metrics.StatsSampler;
+import com.computaris.tools.scenario.simulator.payload.Payloads;
+import com.computaris.tools.scenario.simulator.session.ScenarioGenerators;
+import com.computaris.tools.scenario.simulator.session.SessionBatchRunner;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+import com.computaris.tools.scenario.simulator.session.SessionMessageCapture;
 import com.opencloud.scenariosimulator.thirdparty.guava.common.common.collect.Maps;
 import com.opencloud.tools.scenario.definition.ScenarioRecognitionException;
 import com.opencloud.tools.scenario.schema.validation.InvalidScenarioException;
@@ -23,9 +45,7 @@ import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescrip
 import com.opencloud.tools.scenario.simulator.management.SimulatorConfigurationException;
 import com.opencloud.tools.scenario.simulator.management.SimulatorException;
 import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
-import com.opencloud.tools.scenario.simulator.monitoring.DialogStatsSnapshot;
 import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
-import com.opencloud.tools.scenario.simulator.monitoring.SessionStatusSnapshot;
 import com.opencloud.tools.scenario.simulator.protocol.ProtocolAdaptorException;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -37,7 +57,6 @@ import org.robotframework.javalib.annotation.RobotKeywords;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
-import java.nio.charset.Charset;
 import java.util.*;
 
 /**
@@ -46,9 +65,52 @@ import java.util.*;
 @RobotKeywords
 public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDecorator {
     protected static final String LIB_PREFIX = "ScenSim";
+    private static final int FAILED_SESSION_CAPTURE_CAPACITY = 256;
+    private static final String DEFAULT_STATS_SCOPE = "";
+
+    private final DataSetUploads dataSetUploads;
+    private final SessionBatchRunner sessionBatchRunner;
+    private final SessionLifecycleBridge sessionLifecycleBridge;
+    private final SessionLatencyRecorder sessionLatencyRecorder;
+    private final SessionMessageCapture sessionMessageCapture;
+    private final StatsSampler statsSampler;
+    private final KeywordJobs keywordJobs;
+    private final StatsScopes statsScopes;
+    private final KeywordStats keywordStats;
+    private final TrafficProfileScheduler trafficProfileScheduler;
+    private final ScenarioGenerators scenarioGenerators;
+    private final SessionJournal sessionJournal;
+    private final SlaMonitor slaMonitor;
+    private boolean sessionMessageCaptureRegistered;
 
     public SimulatorFacadeRemoteDecorator(SimulatorFacade simulatorFacade, Logger log) {
         super(simulatorFacade, log);
+        this.dataSetUploads = DataSetUploads.fromSystemProperties();
+        this.sessionBatchRunner = new SessionBatchRunner(this, SessionExecutors.newTaskExecutor("session-batch"));
+        this.sessionLifecycleBridge = new SessionLifecycleBridge();
+        this.sessionLatencyRecorder = new SessionLatencyRecorder();
+        this.sessionMessageCapture = new SessionMessageCapture();
+        this.statsSampler = new StatsSampler(this, log);
+        this.keywordJobs = new KeywordJobs(SessionExecutors.newTaskExecutor("keyword-job"), log);
+        this.statsScopes = new StatsScopes(this);
+        this.keywordStats = new KeywordStats();
+        this.trafficProfileScheduler = new TrafficProfileScheduler(this, log);
+        this.scenarioGenerators = new ScenarioGenerators(this, SessionExecutors.newTaskExecutor("scenario-generator"), log);
+        sessionLifecycleBridge.addSink(sessionLatencyRecorder);
+        sessionLifecycleBridge.addSink(sessionMessageCapture);
+        this.sessionJournal = SessionJournal.fromSystemProperties(log);
+        if (sessionJournal != null) {
+            sessionLifecycleBridge.addSink(sessionJournal);
+        }
+        this.slaMonitor = new SlaMonitor(this, sessionLifecycleBridge, log);
+        addGlobalSessionLifecycleListener(sessionLifecycleBridge.asListener());
+    }
+
+    /**
+     * @return the stats the remote servers record the keyword calls of this library into
+     */
+    public KeywordStats getKeywordStats() {
+        return keywordStats;
     }
 
     @RobotKeyword(LIB_PREFIX + "SetEndpointAddress")
@@ -98,7 +160,9 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
     public void scenSimCreateLocalEndpoint(String endpointName, String protocolAdaptorType, String properties, String schemas)
             throws ProtocolAdaptorException, IllegalStateException, IOException, SimulatorConfigurationException {
 
-        log.info("CreateLocalEndpoint : endPointName=" + endpointName + ", protocolAdaptorType=" + protocolAdaptorType + ", properties=" + properties + ", schemas=" + schemas);
+        if (keywordLog.isInfoEnabled()) {
+            keywordLog.info("CreateLocalEndpoint : endPointName=" + endpointName + ", protocolAdaptorType=" + protocolAdaptorType + ", properties=" + AsyncLogging.bounded(properties) + ", schemas=" + schemas);
+        }
 
         List<String> schemasAsList = new ArrayList<>(Arrays.asList(schemas.split(",")));
         Properties props = new Properties();
@@ -108,14 +172,16 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
     }
 
     @RobotKeyword(LIB_PREFIX + "CreateLocalEndpointWithConfigurationFile")
-    @ArgumentNames({"endpointName", "protocolAdaptorType", "properties", "fileContent", "propertyNameForConfigurationFile", "schemas"})
-    public void scenSimCreateLocalEndpointWithConfigurationFile(String endpointName, String protocolAdaptorType, String properties, String fileContent, String propertyNameForConfigurationFile, String schemas)
+    @ArgumentNames({"endpointName", "protocolAdaptorType", "properties", "fileContent", "propertyNameForConfigurationFile", "schemas", "=encoding"})
+    public void scenSimCreateLocalEndpointWithConfigurationFile(String endpointName, String protocolAdaptorType, String properties, String fileContent, String propertyNameForConfigurationFile, String schemas, String encoding)
             throws ProtocolAdaptorException, IllegalStateException, IOException, SimulatorConfigurationException {
 
-        File tempFile = createTmpFile(fileContent, "xml");
+        File tempFile = createTmpFile(fileContent, encoding, "xml");
 
         try {
-            log.info("CreateLocalEndpoint : endPointName=" + endpointName + ", protocolAdaptorType=" + protocolAdaptorType + ", properties=" + properties + ", schemas=" + schemas);
+            if (keywordLog.isInfoEnabled()) {
+                keywordLog.info("CreateLocalEndpoint : endPointName=" + endpointName + ", protocolAdaptorType=" + protocolAdaptorType + ", properties=" + AsyncLogging.bounded(properties) + ", schemas=" + schemas);
+            }
             List<String> schemasAsList = new ArrayList<>(Arrays.asList(schemas.split(",")));
 
             Properties props = new Properties();
@@ -129,6 +195,12 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
         }
     }
 
+    @RobotKeywordOverload
+    public void scenSimCreateLocalEndpointWithConfigurationFile(String endpointName, String protocolAdaptorType, String properties, String fileContent, String propertyNameForConfigurationFile, String schemas)
+            throws ProtocolAdaptorException, IllegalStateException, IOException, SimulatorConfigurationException {
+        scenSimCreateLocalEndpointWithConfigurationFile(endpointName, protocolAdaptorType, properties, fileContent, propertyNameForConfigurationFile, schemas, Payloads.ENCODING_PLAIN);
+    }
+
     @RobotKeyword(LIB_PREFIX + "BindRole")
     @ArgumentNames({"roleName", "endpointName", "=dialogName", "=configName"})
     public void scenSimBindRole(String roleName, String endpointName, String dialogName, String configName) throws SimulatorConfigurationException {
@@ -149,15 +221,14 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
     @ArgumentNames({"scenarioFile", "configName"})
     public ScenarioBindingsDescription scenSimLoad(String scenarioFile, String configName)
             throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
-        log.info("load: scen=" + scenarioFile + ", config=" + configName);
         return load(scenarioFile, configName);
     }
 
     @RobotKeyword(LIB_PREFIX + "LoadDataSet")
-    @ArgumentNames({"dataSetName", "csvFileContent"})
-    public void scenSimLoadDataSet(String dataSetName, String csvFilePath) throws IOException, SimulatorConfigurationException {
+    @ArgumentNames({"dataSetName", "csvFileContent", "=encoding"})
+    public void scenSimLoadDataSet(String dataSetName, String csvFileContent, String encoding) throws IOException, SimulatorConfigurationException {
 
-        File tempFile = createTmpFile(csvFilePath, "csv");
+        File tempFile = createTmpFile(csvFileContent, encoding, "csv");
 
         try {
             loadDataSet(dataSetName, tempFile.getCanonicalPath());
@@ -167,6 +238,52 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
 
     }
 
+    @RobotKeywordOverload
+    public void scenSimLoadDataSet(String dataSetName, String csvFileContent) throws IOException, SimulatorConfigurationException {
+        scenSimLoadDataSet(dataSetName, csvFileContent, Payloads.ENCODING_PLAIN);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "BeginDataSetUpload")
+    @ArgumentNames({"dataSetName", "=expectedSize", "=sha256"})
+    public Map<String, Object> scenSimBeginDataSetUpload(String dataSetName, long expectedSize, String sha256) throws IOException {
+        return dataSetUploads.begin(dataSetName, expectedSize, sha256);
+    }
+
+    @RobotKeywordOverload
+    public Map<String, Object> scenSimBeginDataSetUpload(String dataSetName, long expectedSize) throws IOException {
+        return dataSetUploads.begin(dataSetName, expectedSize, "");
+    }
+
+    @RobotKeywordOverload
+    public Map<String, Object> scenSimBeginDataSetUpload(String dataSetName) throws IOException {
+        return dataSetUploads.begin(dataSetName, 0, "");
+    }
+
+    @RobotKeyword(LIB_PREFIX + "AppendDataSetChunk")
+    @ArgumentNames({"uploadId", "chunk", "=encoding"})
+    public long scenSimAppendDataSetChunk(String uploadId, String chunk, String encoding) throws IOException {
+        return dataSetUploads.append(uploadId, chunk, encoding);
+    }
+
+    @RobotKeywordOverload
+    public long scenSimAppendDataSetChunk(String uploadId, String chunk) throws IOException {
+        return dataSetUploads.append(uploadId, chunk, DataSetUploads.ENCODING_PLAIN);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "CommitDataSetUpload")
+    @ArgumentNames({"uploadId"})
+    public void scenSimCommitDataSetUpload(String uploadId) throws IOException, SimulatorConfigurationException {
+        String dataSetName = dataSetUploads.getDataSetName(uploadId);
+        File dataSetFile = dataSetUploads.commit(uploadId);
+        loadDataSet(dataSetName, dataSetFile.getCanonicalPath());
+    }
+
+    @RobotKeyword(LIB_PREFIX + "AbortDataSetUpload")
+    @ArgumentNames({"uploadId"})
+    public void scenSimAbortDataSetUpload(String uploadId) throws IOException {
+        dataSetUploads.abort(uploadId);
+    }
+
     @RobotKeyword(LIB_PREFIX + "BindTable")
     @ArgumentNames({"tableName", "dataSetName", "configName"})
     public void scenSimBindTable(String tableName, String dataSetName, String configName) throws SimulatorConfigurationException {
@@ -178,30 +295,102 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
         bindTable(tableName, dataSetName, null);
     }
 
-    @RobotKeyword(LIB_PREFIX + "LoadNoConfig")
-    @ArgumentNames({"scenarioContent"})
+    @RobotKeywordOverload
     public ScenarioBindingsDescription scenSimloadNoConfig(String scenarioContent)
             throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
-        log.info("loadNoConfig: scen=" + scenarioContent);
+        byte[] content = ScenarioCache.encode(scenarioContent);
+        String digest = ContentDigest.of(content);
+        if (keywordLog.isInfoEnabled()) {
+            keywordLog.info("loadNoConfig: scenario " + digest + " of " + content.length + " bytes");
+        }
+        ScenarioBindingsDescription cached = scenarioCache.lookup(digest);
+        if (cached != null) {
+            if (keywordLog.isDebugEnabled()) {
+                keywordLog.debug("loadNoConfig: cache hit " + digest);
+            }
+            return cached;
+        }
 
-        File tempFile = createTmpFile(scenarioContent, "scen");
+        return loadAndCache(digest, scenarioCache.stage(digest, content));
+    }
 
+    @RobotKeyword(LIB_PREFIX + "LoadNoConfig")
+    @ArgumentNames({"scenarioContent", "=encoding"})
+    public ScenarioBindingsDescription scenSimloadNoConfig(String scenarioContent, String encoding)
+            throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
+        if (Payloads.ENCODING_PLAIN.equalsIgnoreCase(encoding)) {
+            return scenSimloadNoConfig(scenarioContent);
+        }
+
+        File staged = scenarioCache.createStagingFile();
+        String digest;
         try {
-            return load(tempFile.getCanonicalPath(), null);
-        } finally {
-            removeTempFile(tempFile);
+            digest = Payloads.decode(scenarioContent, encoding, staged);
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(staged);
+            throw e;
         }
+        if (keywordLog.isInfoEnabled()) {
+            keywordLog.info("loadNoConfig: " + encoding + " scenario " + digest + " of " + staged.length() + " bytes");
+        }
+        ScenarioBindingsDescription cached = scenarioCache.lookup(digest);
+        if (cached != null) {
+            FileUtils.deleteQuietly(staged);
+            if (keywordLog.isDebugEnabled()) {
+                keywordLog.debug("loadNoConfig: cache hit " + digest);
+            }
+            return cached;
+        }
+
+        return loadAndCache(digest, scenarioCache.stage(digest, staged));
+    }
+
+    /**
+     * Loads a stored scenario and caches its bindings under the scenario name the load added, under the
+     * configuration lock so that no removal comes in between.
+     */
+    private ScenarioBindingsDescription loadAndCache(String digest, File scenarioFile)
+            throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
+        try (SimulatorLocks.Held held = locks.configuration("loadNoConfig")) {
+            Set<String> added = new HashSet<>();
+            ScenarioBindingsDescription description = load(scenarioFile.getCanonicalPath(), null, added);
+            scenarioCache.put(digest, description, added.size() == 1 ? added.iterator().next() : null);
+            return description;
+        }
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetScenarioCacheStats")
+    @ArgumentNames({})
+    public Map<String, Object> scenSimGetScenarioCacheStats() {
+        return scenarioCache.getStats();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetMetadataCacheStats")
+    @ArgumentNames({})
+    public Map<String, Object> scenSimGetMetadataCacheStats() {
+        return getMetadataCacheStats();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "ClearMetadataCache")
+    @ArgumentNames({})
+    public void scenSimClearMetadataCache() {
+        metadataCache.invalidateAll();
     }
 
     private void removeTempFile(File tempFile) {
-        FileUtils.deleteQuietly(tempFile);
+        journal.release(tempFile);
     }
 
 
-    private File createTmpFile(String fileContent, String fileExtension) throws IOException {
+    private File createTmpFile(String fileContent, String encoding, String fileExtension) throws IOException {
         File tempFile = File.createTempFile(fileExtension, null);
 
-        FileUtils.writeStringToFile(tempFile, fileContent, Charset.defaultCharset(), false);
+        try {
+            Payloads.decode(fileContent, encoding, tempFile);
+        } catch (IOException | RuntimeException e) {
+            removeTempFile(tempFile);
+            throw e;
+        }
         return tempFile;
     }
 
@@ -217,6 +406,30 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
         return getConfigurationNames();
     }
 
+    @RobotKeyword(LIB_PREFIX + "ApplyConfiguration")
+    @ArgumentNames({"document"})
+    public Map<String, Object> scenSimApplyConfiguration(String document) {
+        return applyConfiguration(document);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "SaveConfigurationSnapshot")
+    @ArgumentNames({"snapshotName"})
+    public Map<String, Object> scenSimSaveConfigurationSnapshot(String snapshotName) throws IOException {
+        return saveConfiguration(snapshotName);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "RestoreConfigurationSnapshot")
+    @ArgumentNames({"snapshotName"})
+    public Map<String, Object> scenSimRestoreConfigurationSnapshot(String snapshotName) throws Exception {
+        return restoreConfiguration(snapshotName);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetConfigurationSnapshotNames")
+    @ArgumentNames({})
+    public Collection<String> scenSimGetConfigurationSnapshotNames() {
+        return snapshots.getSnapshotNames();
+    }
+
     @RobotKeyword(LIB_PREFIX + "SetPreferredScenario")
     @ArgumentNames({"scenarios"})
     public void scenSimSetPreferredScenario(Map<String, Double> scenarios) throws SimulatorException {
@@ -229,10 +442,19 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
         setPreferredScenario(scenarioName);
     }
 
+    @Override
+    public boolean removeScenario(String scenarioName) {
+        boolean removed = super.removeScenario(scenarioName);
+        if (removed) {
+            scenarioGenerators.remove(scenarioName);
+        }
+        return removed;
+    }
+
     @RobotKeyword(LIB_PREFIX + "RemoveScenario")
     @ArgumentNames({"scenarioName"})
     public boolean scenSimRemoveScenario(String scenarioName) {
-        return simulatorFacade.removeScenario(scenarioName);
+        return removeScenario(scenarioName);
     }
 
     @RobotKeyword(LIB_PREFIX + "GetScenarioNames")
@@ -262,20 +484,199 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
     @RobotKeyword(LIB_PREFIX + "RunSession")
     @ArgumentNames({"scenarioName"})
     public SessionOutcome scenSimRunSession(String scenarioName) throws SimulatorException {
-        resetSessionAndDialogStats();
+        return scenSimRunSessionInScope(DEFAULT_STATS_SCOPE, scenarioName);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "RunSessionInScope")
+    @ArgumentNames({"scope", "scenarioName"})
+    public SessionOutcome scenSimRunSessionInScope(String scope, String scenarioName) throws SimulatorException {
+        statsScopes.reset(scope);
         return runSession(scenarioName, null);
     }
 
+    @RobotKeyword(LIB_PREFIX + "RunSessionAsync")
+    @ArgumentNames({"scenarioName"})
+    public String scenSimRunSessionAsync(final String scenarioName) {
+        return keywordJobs.submit("RunSession " + scenarioName, () -> scenSimRunSession(scenarioName));
+    }
+
+    @RobotKeyword(LIB_PREFIX + "RunSessions")
+    @ArgumentNames({"scenarioName", "count", "=concurrency"})
+    public Map<String, Object> scenSimRunSessions(String scenarioName, int count, int concurrency) throws InterruptedException {
+        return sessionBatchRunner.run(scenarioName, count, concurrency);
+    }
+
+    @RobotKeywordOverload
+    public Map<String, Object> scenSimRunSessions(String scenarioName, int count) throws InterruptedException {
+        return sessionBatchRunner.run(scenarioName, count, 1);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "RunSessionsAsync")
+    @ArgumentNames({"scenarioName", "count", "=concurrency"})
+    public String scenSimRunSessionsAsync(final String scenarioName, final int count, final int concurrency) {
+        return keywordJobs.submit("RunSessions " + scenarioName, () -> scenSimRunSessions(scenarioName, count, concurrency));
+    }
+
+    @RobotKeywordOverload
+    public String scenSimRunSessionsAsync(String scenarioName, int count) {
+        return scenSimRunSessionsAsync(scenarioName, count, 1);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetSessionLatency")
+    @ArgumentNames({"scenarioName"})
+    public Map<String, Map<String, Object>> scenSimGetSessionLatency(String scenarioName) {
+        return sessionLatencyRecorder.getLatency(scenarioName);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "ResetSessionLatency")
+    @ArgumentNames({"scenarioName"})
+    public Map<String, Map<String, Object>> scenSimResetSessionLatency(String scenarioName) {
+        return sessionLatencyRecorder.resetLatency(scenarioName);
+    }
+
+    /**
+     * @return the journal directory, to be read by SessionJournalReader
+     */
+    @RobotKeyword(LIB_PREFIX + "FlushSessionJournal")
+    @ArgumentNames({})
+    public String scenSimFlushSessionJournal() {
+        if (sessionJournal == null) {
+            throw new IllegalStateException("Session journal not enabled, set " + SessionJournal.DIR_PROPERTY);
+        }
+        sessionJournal.flush();
+        return sessionJournal.getDirectory().getAbsolutePath();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StartMessageCapture")
+    @ArgumentNames({"=capacity"})
+    public synchronized void scenSimStartMessageCapture(int capacity) {
+        if (!sessionMessageCaptureRegistered) {
+            addGlobalSessionMessageListener(sessionMessageCapture.asListener());
+            sessionMessageCaptureRegistered = true;
+        }
+        sessionMessageCapture.start(capacity, FAILED_SESSION_CAPTURE_CAPACITY);
+    }
+
+    @RobotKeywordOverload
+    public void scenSimStartMessageCapture() {
+        scenSimStartMessageCapture(65536);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StopMessageCapture")
+    @ArgumentNames({})
+    public void scenSimStopMessageCapture() {
+        sessionMessageCapture.stop();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetFailedSessionTraces")
+    @ArgumentNames({"count"})
+    public List<Map<String, Object>> scenSimGetFailedSessionTraces(int count) {
+        return sessionMessageCapture.getFailedSessionTraces(count);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetSessionTrace")
+    @ArgumentNames({"sessionId"})
+    public Map<String, Object> scenSimGetSessionTrace(String sessionId) {
+        return sessionMessageCapture.getSessionTrace(sessionId);
+    }
+
     @RobotKeyword(LIB_PREFIX + "VerifyStatus")
     public boolean scenSimVerifyStatus() throws SimulatorException {
-        SessionStatusSnapshot sessionStatusSnapshot = getSessionStatsSnapshot();
-        DialogStatsSnapshot dialogStatsSnapshot = getDialogStatsSnapshot();
-        if (sessionStatusSnapshot.getNonMatchingSessionsCount() > 0 || dialogStatsSnapshot.getDialogsRejected() > 0) {
+        return scenSimVerifyStatusInScope(DEFAULT_STATS_SCOPE);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "VerifyStatusInScope")
+    @ArgumentNames({"scope"})
+    public boolean scenSimVerifyStatusInScope(String scope) {
+        Map<String, Number> sessionStats = statsScopes.getSessionStats(scope);
+        Map<String, Number> dialogStats = statsScopes.getDialogStats(scope);
+        if (SnapshotCounters.get(sessionStats, SnapshotCounters.NON_MATCHING_SESSIONS) > 0 || SnapshotCounters.get(dialogStats, SnapshotCounters.DIALOGS_REJECTED) > 0) {
             return false;
         }
         return true;
     }
 
+    @RobotKeyword(LIB_PREFIX + "GetSessionStats")
+    @ArgumentNames({})
+    public Map<String, Number> scenSimGetSessionStats() {
+        return statsScopes.getSessionStats(DEFAULT_STATS_SCOPE);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetSessionStatsInScope")
+    @ArgumentNames({"scope"})
+    public Map<String, Number> scenSimGetSessionStatsInScope(String scope) {
+        return statsScopes.getSessionStats(scope);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetDialogStats")
+    @ArgumentNames({})
+    public Map<String, Number> scenSimGetDialogStats() {
+        return statsScopes.getDialogStats(DEFAULT_STATS_SCOPE);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetDialogStatsInScope")
+    @ArgumentNames({"scope"})
+    public Map<String, Number> scenSimGetDialogStatsInScope(String scope) {
+        return statsScopes.getDialogStats(scope);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "ResetStatsScope")
+    @ArgumentNames({"scope"})
+    public void scenSimResetStatsScope(String scope) {
+        statsScopes.reset(scope);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "CloseStatsScope")
+    @ArgumentNames({"scope"})
+    public void scenSimCloseStatsScope(String scope) {
+        statsScopes.close(scope);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StartStatsSampler")
+    @ArgumentNames({"=intervalMillis", "=capacity"})
+    public void scenSimStartStatsSampler(long intervalMillis, int capacity) {
+        statsSampler.start(intervalMillis, capacity);
+    }
+
+    @RobotKeywordOverload
+    public void scenSimStartStatsSampler(long intervalMillis) {
+        statsSampler.start(intervalMillis, 3600);
+    }
+
+    @RobotKeywordOverload
+    public void scenSimStartStatsSampler() {
+        statsSampler.start(1000, 3600);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StopStatsSampler")
+    @ArgumentNames({})
+    public void scenSimStopStatsSampler() {
+        statsSampler.stop();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetStatsSamples")
+    @ArgumentNames({"=sinceTimestamp"})
+    public Map<String, Object> scenSimGetStatsSamples(long sinceTimestamp) {
+        return statsSampler.getSamples(sinceTimestamp);
+    }
+
+    @RobotKeywordOverload
+    public Map<String, Object> scenSimGetStatsSamples() {
+        return statsSampler.getSamples(0);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetKeywordStats")
+    @ArgumentNames({})
+    public Map<String, Map<String, Object>> scenSimGetKeywordStats() {
+        return keywordStats.getStats();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "ResetKeywordStats")
+    @ArgumentNames({})
+    public void scenSimResetKeywordStats() {
+        keywordStats.reset();
+    }
+
     @RobotKeyword(LIB_PREFIX + "StartGeneratingSessions")
     @ArgumentNames({})
     public boolean scenSimStartGeneratingSessions() {
@@ -300,22 +701,214 @@ public class SimulatorFacadeRemoteDecorator extends BaseSimulatorFacadeRemoteDec
         rampUpSessionRate(initialRate, targetRate, period);
     }
 
+    @RobotKeyword(LIB_PREFIX + "RampUpSessionRateAsync")
+    @ArgumentNames({"initialRate", "targetRate", "period"})
+    public String scenSimRampUpSessionRateAsync(final double initialRate, final double targetRate, final int period) {
+        return keywordJobs.submit("RampUpSessionRate", () -> {
+            rampUpSessionRate(initialRate, targetRate, period);
+            return null;
+        });
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StartTrafficProfile")
+    @ArgumentNames({"profile"})
+    public Map<String, Object> scenSimStartTrafficProfile(String profile) throws IOException {
+        return trafficProfileScheduler.start(TrafficProfile.parse(profile));
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetTrafficProfileProgress")
+    @ArgumentNames({})
+    public Map<String, Object> scenSimGetTrafficProfileProgress() {
+        return trafficProfileScheduler.getProgress();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "PauseTrafficProfile")
+    @ArgumentNames({})
+    public void scenSimPauseTrafficProfile() {
+        trafficProfileScheduler.pause();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "ResumeTrafficProfile")
+    @ArgumentNames({})
+    public void scenSimResumeTrafficProfile() {
+        trafficProfileScheduler.resume();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "AbortTrafficProfile")
+    @ArgumentNames({})
+    public boolean scenSimAbortTrafficProfile() {
+        return trafficProfileScheduler.abort();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "SetScenarioRate")
+    @ArgumentNames({"scenarioName", "sessionsPerSecond"})
+    public void scenSimSetScenarioRate(String scenarioName, double sessionsPerSecond) {
+        scenarioGenerators.setRate(scenarioName, sessionsPerSecond);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "RampUpScenarioRate")
+    @ArgumentNames({"scenarioName", "initialRate", "targetRate", "period"})
+    public void scenSimRampUpScenarioRate(String scenarioName, double initialRate, double targetRate, int period) {
+        scenarioGenerators.rampRate(scenarioName, initialRate, targetRate, period);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StartScenarioGenerator")
+    @ArgumentNames({"scenarioName"})
+    public void scenSimStartScenarioGenerator(String scenarioName) {
+        scenarioGenerators.start(scenarioName);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StopScenarioGenerator")
+    @ArgumentNames({"scenarioName"})
+    public void scenSimStopScenarioGenerator(String scenarioName) {
+        scenarioGenerators.stop(scenarioName);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StopScenarioGenerators")
+    @ArgumentNames({})
+    public void scenSimStopScenarioGenerators() {
+        scenarioGenerators.stopAll();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetScenarioRates")
+    @ArgumentNames({})
+    public Map<String, Map<String, Object>> scenSimGetScenarioRates() {
+        return scenarioGenerators.getRates();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetScenarioGeneratorStats")
+    @ArgumentNames({"=scenarioName"})
+    public Map<String, Map<String, Object>> scenSimGetScenarioGeneratorStats(String scenarioName) {
+        return scenarioGenerators.getStats(scenarioName);
+    }
+
+    @RobotKeywordOverload
+    public Map<String, Map<String, Object>> scenSimGetScenarioGeneratorStats() {
+        return scenarioGenerators.getStats(null);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "ResetScenarioGeneratorStats")
+    @ArgumentNames({"=scenarioName"})
+    public void scenSimResetScenarioGeneratorStats(String scenarioName) {
+        scenarioGenerators.resetStats(scenarioName);
+    }
+
+    @RobotKeywordOverload
+    public void scenSimResetScenarioGeneratorStats() {
+        scenarioGenerators.resetStats(null);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "FindSustainableRate")
+    @ArgumentNames({"settings"})
+    public Map<String, Object> scenSimFindSustainableRate(String settings) throws IOException, InterruptedException {
+        Properties props = new Properties();
+        props.load(new StringReader(settings));
+
+        return new CapacitySearch(this, sessionLifecycleBridge, props, log).run();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StartSlaMonitor")
+    @ArgumentNames({})
+    public void scenSimStartSlaMonitor() {
+        slaMonitor.start();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "StopSlaMonitor")
+    @ArgumentNames({})
+    public void scenSimStopSlaMonitor() {
+        slaMonitor.stop();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "CheckSla")
+    @ArgumentNames({"rules"})
+    public Map<String, Object> scenSimCheckSla(String rules) throws IOException {
+        Properties props = new Properties();
+        props.load(new StringReader(rules));
+
+        return slaMonitor.evaluate(props);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "VerifySla")
+    @ArgumentNames({"rules"})
+    public boolean scenSimVerifySla(String rules) throws IOException {
+        Map<String, Object> result = scenSimCheckSla(rules);
+        if (SlaMonitor.FAIL.equals(result.get("status"))) {
+            log.warn("SLA violated: " + result.get("violations") + ", measured " + result.get("measurements"));
+            return false;
+        }
+        return true;
+    }
+
     @RobotKeyword(LIB_PREFIX + "WaitUntilOperational")
     @ArgumentNames({"timeout"})
     public void scenSimWaitUntilOperational(int timeout) throws SimulatorException {
         waitUntilOperational(timeout);
     }
 
+    @RobotKeyword(LIB_PREFIX + "WaitUntilOperationalAsync")
+    @ArgumentNames({"timeout"})
+    public String scenSimWaitUntilOperationalAsync(final int timeout) {
+        return keywordJobs.submit("WaitUntilOperational", () -> {
+            waitUntilOperational(timeout);
+            return null;
+        });
+    }
+
+    @Override
+    public void quit(long timeout) {
+        scenarioGenerators.shutdown();
+        super.quit(timeout);
+    }
+
+    @Override
+    public void quit() {
+        scenarioGenerators.shutdown();
+        super.quit();
+    }
+
     @RobotKeyword(LIB_PREFIX + "QuitWithTimeout")
     @ArgumentNames({"timeout"})
     public void scenSimQuit(long timeout) {
         quit(timeout);
     }
 
+    @RobotKeyword(LIB_PREFIX + "QuitAsync")
+    @ArgumentNames({"timeout"})
+    public String scenSimQuitAsync(final long timeout) {
+        return keywordJobs.submit("Quit", () -> {
+            quit(timeout);
+            return null;
+        });
+    }
+
     @RobotKeyword(LIB_PREFIX + "Quit")
     @ArgumentNames({})
     public void scenSimQuit() {
         quit();
     }
 
+    @RobotKeyword(LIB_PREFIX + "PollJob")
+    @ArgumentNames({"jobId"})
+    public Map<String, Object> scenSimPollJob(String jobId) {
+        return keywordJobs.poll(jobId);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "GetJobs")
+    @ArgumentNames({})
+    public List<Map<String, Object>> scenSimGetJobs() {
+        return keywordJobs.list();
+    }
+
+    @RobotKeyword(LIB_PREFIX + "AwaitJob")
+    @ArgumentNames({"jobId", "timeoutMillis"})
+    public Object scenSimAwaitJob(String jobId, long timeoutMillis) throws Exception {
+        return keywordJobs.await(jobId, timeoutMillis);
+    }
+
+    @RobotKeyword(LIB_PREFIX + "CancelJob")
+    @ArgumentNames({"jobId"})
+    public boolean scenSimCancelJob(String jobId) {
+        return keywordJobs.cancel(jobId);
+    }
+
 }
@@ -0,0 +1,160 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of the read only metadata calls of the simulator (schemas, adaptor types, endpoint, data set, scenario and
+ * configuration names, configuration description, scenario bindings and descriptions), kept until a configuration
+ * call invalidates them.
+ * <p>
+ * Collections and maps are cached as unmodifiable copies, so every hit returns the same instance. A result loaded
+ * while an invalidation runs is not kept, whatever the order of the two. Disabled by setting
+ * "com.computaris.robotremote.metadata-cache" to false.
+ */
+public class MetadataCache {
+    public static final String ENABLED_PROPERTY = "com.computaris.robotremote.metadata-cache";
+
+    public static final String ENDPOINT_NAMES = "endpointNames";
+    public static final String SCHEMA_NAMES = "schemaNames";
+    public static final String SCHEMA_INFOS = "schemaInfos";
+    public static final String PROTOCOL_ADAPTOR_TYPES = "protocolAdaptorTypes";
+    public static final String PROTOCOL_ADAPTOR_TYPE_INFOS = "protocolAdaptorTypeInfos";
+    public static final String PROTOCOL_ADAPTOR_TYPE_FOR_SCHEMA = "protocolAdaptorTypeForSchema:";
+    public static final String DATASET_NAMES = "dataSetNames";
+    public static final String CONFIGURATION_DESCRIPTION = "configurationDescription";
+    public static final String CONFIGURATION_NAMES = "configurationNames";
+    public static final String SCENARIO_NAMES = "scenarioNames";
+    public static final String INITIATING_SCENARIO_NAMES = "initiatingScenarioNames";
+    public static final String SCENARIO_DESCRIPTION = "scenarioDescription:";
+    public static final String SCENARIO_BINDINGS = "scenarioBindings:";
+
+    private static final Object NULL = new Object();
+
+    private final boolean enabled;
+    private final ConcurrentMap<String, Object> entries = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    public MetadataCache(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static MetadataCache fromSystemProperties() {
+        return new MetadataCache(Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true")));
+    }
+
+    /**
+     * @return the cached result of the key, loading it on a miss
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T get(String key, Loader<T, E> loader) throws E {
+        if (!enabled) {
+            return loader.load();
+        }
+        Object cached = entries.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached == NULL ? null : (T) cached;
+        }
+        misses.increment();
+        long loadEpoch = epoch.get();
+        T value = (T) snapshot(loader.load());
+        if (epoch.get() == loadEpoch) {
+            Object entry = value == null ? NULL : value;
+            entries.put(key, entry);
+            // an invalidation may have started after the check, it removes the entry unless it is already done
+            if (epoch.get() != loadEpoch) {
+                entries.remove(key, entry);
+            }
+        }
+        return value;
+    }
+
+    private static Object snapshot(Object value) {
+        if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+            for (Object item : (Collection<?>) value) {
+                copy.add(snapshot(item));
+            }
+            return Collections.unmodifiableList(copy);
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), snapshot(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        return value;
+    }
+
+    /**
+     * Drops the keys, and every key starting with one of the keys ending with ':' (e.g. {@link #SCENARIO_BINDINGS}).
+     */
+    public void invalidate(String... keys) {
+        if (!enabled) {
+            return;
+        }
+        epoch.incrementAndGet();
+        invalidations.increment();
+        for (String key : keys) {
+            if (key.endsWith(":")) {
+                entries.keySet().removeIf(entry -> entry.startsWith(key));
+            } else {
+                entries.remove(key);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        epoch.incrementAndGet();
+        invalidations.increment();
+        entries.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : hitCount / (double) (hitCount + missCount));
+        stats.put("invalidations", invalidations.sum());
+        stats.put("size", entries.size());
+        return stats;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescription;
+
+/**
+ * Content addressed cache of scenarios loaded through LoadNoConfig.
+ * <p>
+ * Scenario text is keyed by its SHA-256 digest. The in-memory index remembers which digests are already loaded
+ * into the simulator (LRU, bounded) and under which scenario name, so that loading other content for a name drops
+ * the digest it replaced. The on-disk store keeps the scenario files under the cache directory so a
+ * payload seen before a restart does not have to be written again.
+ */
+public class ScenarioCache {
+    public static final String CACHE_SIZE_PROPERTY = "com.computaris.robotremote.scenario-cache.size";
+    public static final String CACHE_DIR_PROPERTY = "com.computaris.robotremote.scenario-cache.dir";
+    private static final String SCENARIO_FILE_EXTENSION = ".scen";
+
+    private final int capacity;
+    private final File storeDirectory;
+    private final Map<String, ScenarioBindingsDescription> index;
+    private final Map<String, String> scenarioDigests = new HashMap<>();
+    private final Map<String, String> digestScenarios = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long replacements;
+
+    public ScenarioCache(int capacity, File storeDirectory) {
+        this.capacity = capacity;
+        this.storeDirectory = storeDirectory;
+        this.index = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Creates the cache configured by system properties. The store defaults to $SIMULATOR_HOME/cache/scenarios.
+     */
+    public static ScenarioCache fromSystemProperties() {
+        int capacity = Integer.parseInt(System.getProperty(CACHE_SIZE_PROPERTY, "64"));
+        String home = System.getenv("SIMULATOR_HOME");
+        String defaultDir = new File(home != null ? home : System.getProperty("java.io.tmpdir"), "cache" + File.separator + "scenarios").getPath();
+        return new ScenarioCache(capacity, new File(System.getProperty(CACHE_DIR_PROPERTY, defaultDir)));
+    }
+
+    /**
+     * Encodes the scenario the same way it is written to disk.
+     */
+    public static byte[] encode(String scenarioContent) {
+        return scenarioContent.getBytes(Charset.defaultCharset());
+    }
+
+    /**
+     * @return the bindings of an already loaded scenario with the given digest, or null on a miss
+     */
+    public synchronized ScenarioBindingsDescription lookup(String digest) {
+        ScenarioBindingsDescription description = index.get(digest);
+        if (description != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return description;
+    }
+
+    /**
+     * Returns the store file for the digest, writing the content only if it is not already stored.
+     */
+    public File stage(String digest, byte[] content) throws IOException {
+        File file = new File(storeDirectory, digest + SCENARIO_FILE_EXTENSION);
+        if (!file.isFile() || file.length() != content.length) {
+            FileUtils.forceMkdir(storeDirectory);
+            File partial = File.createTempFile(digest, null, storeDirectory);
+            FileUtils.writeByteArrayToFile(partial, content);
+            if (!partial.renameTo(file)) {
+                FileUtils.deleteQuietly(partial);
+                throw new IOException("Cannot store scenario " + file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * @return a new file in the store directory, for a scenario to be staged by {@link #stage(String, File)}
+     */
+    public File createStagingFile() throws IOException {
+        FileUtils.forceMkdir(storeDirectory);
+        return File.createTempFile("staging", null, storeDirectory);
+    }
+
+    /**
+     * Moves a staging file holding the content of the digest to the store, unless it is already stored.
+     */
+    public File stage(String digest, File staged) throws IOException {
+        File file = new File(storeDirectory, digest + SCENARIO_FILE_EXTENSION);
+        if (file.isFile() && file.length() == staged.length()) {
+            FileUtils.deleteQuietly(staged);
+        } else if (!staged.renameTo(file)) {
+            FileUtils.deleteQuietly(staged);
+            throw new IOException("Cannot store scenario " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Records a successfully loaded scenario, evicting the least recently used entries above capacity. The digest
+     * previously loaded under the same scenario name is forgotten, the simulator no longer runs it. When the name is
+     * not known, because the load replaced a scenario of a name already loaded, every other digest is forgotten.
+     *
+     * @param scenarioName the name the load added, null if it added none
+     */
+    public synchronized void put(String digest, ScenarioBindingsDescription description, String scenarioName) {
+        if (scenarioName == null) {
+            replacements += index.size() - (index.containsKey(digest) ? 1 : 0);
+            index.keySet().retainAll(Collections.singleton(digest));
+            scenarioDigests.clear();
+            digestScenarios.clear();
+        } else {
+            String replaced = scenarioDigests.put(scenarioName, digest);
+            if (replaced != null && !replaced.equals(digest) && index.remove(replaced) != null) {
+                digestScenarios.remove(replaced);
+                replacements++;
+            }
+            digestScenarios.put(digest, scenarioName);
+        }
+        index.put(digest, description);
+        Iterator<String> eldest = index.keySet().iterator();
+        while (index.size() > capacity && eldest.hasNext()) {
+            String evicted = eldest.next();
+            eldest.remove();
+            evictions++;
+            String evictedScenario = digestScenarios.remove(evicted);
+            if (evictedScenario != null) {
+                scenarioDigests.remove(evictedScenario);
+            }
+            FileUtils.deleteQuietly(new File(storeDirectory, evicted + SCENARIO_FILE_EXTENSION));
+        }
+    }
+
+    /**
+     * Forgets the digest loaded under the scenario name and the digests whose scenario name is not known, one of
+     * which may be the scenario. Stored files are kept.
+     */
+    public synchronized void invalidateScenario(String scenarioName) {
+        String digest = scenarioDigests.remove(scenarioName);
+        if (digest != null) {
+            digestScenarios.remove(digest);
+            index.remove(digest);
+        }
+        index.keySet().retainAll(digestScenarios.keySet());
+    }
+
+    /**
+     * Forgets every loaded scenario. Stored files are kept, they are still valid for their digest.
+     */
+    public synchronized void invalidateAll() {
+        index.clear();
+        scenarioDigests.clear();
+        digestScenarios.clear();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("replacements", replacements);
+        stats.put("size", index.size());
+        stats.put("capacity", capacity);
+        return stats;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Concurrency policy of the decorator for several clients sharing one simulator.
+ * <p>
+ * Configuration (load, data sets, bindings, preferred scenario) takes the global lock exclusively. Everything else
+ * shares it: sessions run under their scenario's read stripe, so removing a scenario waits for its running sessions
+ * only, and endpoint changes are serialized per endpoint stripe. Reads of the simulator state take no lock.
+ * <p>
+ * A lock not acquired within "com.computaris.robotremote.lock-timeout" milliseconds (default 300000) fails the call.
+ */
+public class SimulatorLocks {
+    public static final String LOCK_TIMEOUT_PROPERTY = "com.computaris.robotremote.lock-timeout";
+    private static final int STRIPES = 64;
+
+    private final ReadWriteLock configuration = new ReentrantReadWriteLock();
+    private final ReadWriteLock[] scenarios = stripes();
+    private final ReadWriteLock[] endpoints = stripes();
+    private final long timeoutMillis;
+
+    public SimulatorLocks(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static SimulatorLocks fromSystemProperties() {
+        return new SimulatorLocks(Long.parseLong(System.getProperty(LOCK_TIMEOUT_PROPERTY, "300000")));
+    }
+
+    private static ReadWriteLock[] stripes() {
+        ReadWriteLock[] stripes = new ReadWriteLock[STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        return stripes;
+    }
+
+    private static ReadWriteLock stripe(ReadWriteLock[] stripes, String name) {
+        return stripes[(String.valueOf(name).hashCode() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * Excludes every other locked call.
+     */
+    public Held configuration(String operation) {
+        return acquire(operation, configuration.writeLock());
+    }
+
+    /**
+     * Runs alongside other executions and scenario or endpoint changes.
+     */
+    public Held execution(String operation) {
+        return acquire(operation, configuration.readLock());
+    }
+
+    public Held scenarioExecution(String operation, String scenarioName) {
+        return acquire(operation, configuration.readLock(), stripe(scenarios, scenarioName).readLock());
+    }
+
+    public Held scenarioChange(String operation, String scenarioName) {
+        return acquire(operation, configuration.readLock(), stripe(scenarios, scenarioName).writeLock());
+    }
+
+    public Held endpointChange(String operation, String endpointName) {
+        return acquire(operation, configuration.readLock(), stripe(endpoints, endpointName).writeLock());
+    }
+
+    private Held acquire(String operation, Lock... locks) {
+        int acquired = 0;
+        try {
+            for (; acquired < locks.length; acquired++) {
+                if (!locks[acquired].tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException(operation + " timed out after " + timeoutMillis + " ms waiting for other clients");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(operation + " interrupted waiting for other clients", e);
+        } finally {
+            if (acquired < locks.length) {
+                release(locks, acquired);
+            }
+        }
+        return new Held(locks);
+    }
+
+    private static void release(Lock[] locks, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * Locks of one call, released by close.
+     */
+    public static final class Held implements AutoCloseable {
+        private final Lock[] locks;
+
+        private Held(Lock[] locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            release(locks, locks.length);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.cache.ContentDigest;
+
+/**
+ * Configuration operations applied to the simulator, in order, so that they can be saved as a snapshot.
+ * <p>
+ * Operations only keep the path of the files they read (scenarios, data sets, endpoint properties and configuration
+ * files); the files are copied into a content addressed blob store when a snapshot is saved. Blobs are hard links
+ * where the file system allows it. Temporary files handed back with {@link #release(File)} are kept until then.
+ * <p>
+ * An operation replaces the earlier ones it supersedes: the load of the same data set, the address of the same
+ * endpoint, the load of the same scenario, the binding of the same role or table in the same configuration and the
+ * preferred scenario setting. Removing a scenario loaded in the journal drops its load instead.
+ */
+public class ConfigurationJournal {
+    private final File blobDirectory;
+    private final Logger log;
+    private final List<Operation> operations = new ArrayList<>();
+    private final Set<String> released = new HashSet<>();
+
+    public ConfigurationJournal(File blobDirectory, Logger log) {
+        this.blobDirectory = blobDirectory;
+        this.log = log;
+    }
+
+    public File getBlobDirectory() {
+        return blobDirectory;
+    }
+
+    public void recordEndpointAddress(String endpointName, String address) {
+        append(new Operation(Operation.ENDPOINT_ADDRESS, endpointName, address));
+    }
+
+    public void recordCreateLocalEndpoint(String endpointName, String protocolAdaptorType, String propertiesFile, Collection<String> schemas) {
+        Operation operation = new Operation(Operation.CREATE_ENDPOINT_FILE, endpointName, protocolAdaptorType);
+        operation.source = propertiesFile;
+        operation.schemas = schemas == null ? null : new ArrayList<>(schemas);
+        append(operation);
+    }
+
+    /**
+     * Property values naming an existing file are captured as well, to be replaced by the blob on restore.
+     */
+    public void recordCreateLocalEndpoint(String endpointName, String protocolAdaptorType, Map<String, String> properties, Collection<String> schemas) {
+        Operation operation = new Operation(Operation.CREATE_ENDPOINT, endpointName, protocolAdaptorType);
+        operation.properties = properties == null ? null : new LinkedHashMap<>(properties);
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                if (property.getValue() != null && new File(property.getValue()).isAbsolute() && new File(property.getValue()).isFile()) {
+                    if (operation.propertySources == null) {
+                        operation.propertySources = new LinkedHashMap<>();
+                    }
+                    operation.propertySources.put(property.getKey(), property.getValue());
+                }
+            }
+        }
+        operation.schemas = schemas == null ? null : new ArrayList<>(schemas);
+        append(operation);
+    }
+
+    public void recordBindRole(String roleName, String endpointName, String dialogName, String configName) {
+        append(new Operation(Operation.BIND_ROLE, roleName, endpointName, dialogName, configName));
+    }
+
+    public void recordLoadDataSet(String dataSetName, String csvFilePath) {
+        Operation operation = new Operation(Operation.LOAD_DATASET, dataSetName);
+        operation.source = csvFilePath;
+        append(operation);
+    }
+
+    public void recordBindTable(String tableName, String dataSetName, String configName) {
+        append(new Operation(Operation.BIND_TABLE, tableName, dataSetName, configName));
+    }
+
+    /**
+     * @param scenarioName name of the scenario the load added, null if not known
+     */
+    public void recordLoad(String scenarioFile, String configName, String scenarioName) {
+        Operation operation = new Operation(Operation.LOAD_SCENARIO, configName, scenarioName);
+        operation.source = scenarioFile;
+        append(operation);
+    }
+
+    public void recordRemoveScenario(String scenarioName) {
+        append(new Operation(Operation.REMOVE_SCENARIO, scenarioName));
+    }
+
+    public void recordPreferredScenario(String scenarioName) {
+        append(new Operation(Operation.PREFERRED_SCENARIO, scenarioName));
+    }
+
+    public void recordPreferredScenarios(Map<String, Double> scenarios) {
+        Operation operation = new Operation(Operation.PREFERRED_SCENARIOS);
+        operation.weights = new LinkedHashMap<>(scenarios);
+        append(operation);
+    }
+
+    synchronized void append(Operation operation) {
+        String key = overrideKey(operation);
+        boolean removedLoad = false;
+        List<Operation> superseded = new ArrayList<>();
+        for (Iterator<Operation> it = operations.iterator(); it.hasNext(); ) {
+            Operation earlier = it.next();
+            if (key != null && key.equals(overrideKey(earlier))) {
+                superseded.add(earlier);
+                it.remove();
+            } else if (Operation.REMOVE_SCENARIO.equals(operation.type) && Operation.LOAD_SCENARIO.equals(earlier.type)
+                    && operation.arg(0) != null && operation.arg(0).equals(earlier.arg(1))) {
+                superseded.add(earlier);
+                it.remove();
+                removedLoad = true;
+            }
+        }
+        if (!removedLoad) {
+            operations.add(operation);
+        }
+        for (Operation earlier : superseded) {
+            for (String source : earlier.sources()) {
+                deleteIfReleased(source);
+            }
+        }
+    }
+
+    private static String overrideKey(Operation operation) {
+        switch (operation.type) {
+            case Operation.LOAD_DATASET:
+            case Operation.ENDPOINT_ADDRESS:
+                return operation.type + ":" + operation.arg(0);
+            case Operation.LOAD_SCENARIO:
+                return operation.arg(1) == null ? null : operation.type + ":" + operation.arg(1);
+            case Operation.BIND_ROLE:
+                return operation.type + ":" + operation.arg(0) + ":" + operation.arg(3);
+            case Operation.BIND_TABLE:
+                return operation.type + ":" + operation.arg(0) + ":" + operation.arg(2);
+            case Operation.PREFERRED_SCENARIO:
+            case Operation.PREFERRED_SCENARIOS:
+                return Operation.PREFERRED_SCENARIO;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Hands back a temporary file the caller is done with: it is deleted now if no operation reads it, otherwise once
+     * the operations reading it are superseded or captured.
+     */
+    public synchronized void release(File file) {
+        String path = file.getAbsolutePath();
+        if (isRead(path)) {
+            released.add(path);
+        } else if (!file.delete() && file.exists()) {
+            log.warn("Cannot delete " + path);
+        }
+    }
+
+    private boolean isRead(String path) {
+        for (Operation operation : operations) {
+            for (String source : operation.sources()) {
+                if (path.equals(new File(source).getAbsolutePath())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void deleteIfReleased(String source) {
+        String path = new File(source).getAbsolutePath();
+        if (released.contains(path) && !isRead(path)) {
+            released.remove(path);
+            if (!new File(path).delete()) {
+                log.warn("Cannot delete " + path);
+            }
+        }
+    }
+
+    /**
+     * Copies the files the operations read into the blob store.
+     *
+     * @return the operations so far, referencing their files by blob
+     * @throws IOException if a file of an operation cannot be captured
+     */
+    synchronized List<Operation> capture() throws IOException {
+        List<String> captured = new ArrayList<>();
+        for (Operation operation : operations) {
+            if (operation.source != null) {
+                operation.blob = capture(operation.source);
+                captured.add(operation.source);
+                operation.source = null;
+            }
+            if (operation.propertySources != null) {
+                if (operation.propertyBlobs == null) {
+                    operation.propertyBlobs = new LinkedHashMap<>();
+                }
+                for (Map.Entry<String, String> property : operation.propertySources.entrySet()) {
+                    operation.propertyBlobs.put(property.getKey(), capture(property.getValue()));
+                    captured.add(property.getValue());
+                }
+                operation.propertySources = null;
+            }
+        }
+        for (String source : captured) {
+            deleteIfReleased(source);
+        }
+        return new ArrayList<>(operations);
+    }
+
+    /**
+     * @return the blob file, null if it is not in the store
+     */
+    File blobFile(String blob) {
+        File file = new File(blobDirectory, blob);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * @return blob name of the file: its SHA-256 with the file extension kept
+     */
+    private String capture(String path) throws IOException {
+        File file = new File(path);
+        try {
+            if (blobDirectory.getCanonicalFile().equals(file.getCanonicalFile().getParentFile())) {
+                return file.getName();
+            }
+            String blob = digest(file) + extension(file);
+            File blobFile = new File(blobDirectory, blob);
+            if (!blobFile.isFile()) {
+                Files.createDirectories(blobDirectory.toPath());
+                File temp = File.createTempFile("blob", null, blobDirectory);
+                try {
+                    Files.delete(temp.toPath());
+                    try {
+                        Files.createLink(temp.toPath(), file.toPath());
+                    } catch (IOException | UnsupportedOperationException e) {
+                        Files.copy(file.toPath(), temp.toPath());
+                    }
+                    Files.move(temp.toPath(), blobFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp.toPath());
+                }
+            }
+            return blob;
+        } catch (IOException e) {
+            throw new IOException("Configuration cannot be saved: cannot capture " + path + ": " + e, e);
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        MessageDigest digest = ContentDigest.newDigest();
+        byte[] buffer = new byte[65536];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            while (in.read(buffer) >= 0) {
+                // digest only
+            }
+        }
+        return ContentDigest.toHex(digest.digest());
+    }
+
+    private static String extension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && name.length() - dot <= 8 ? name.substring(dot) : "";
+    }
+
+    /**
+     * One applied operation, serialized as is into snapshots once its files are captured.
+     */
+    static final class Operation {
+        static final String ENDPOINT_ADDRESS = "endpointAddress";
+        static final String CREATE_ENDPOINT = "createLocalEndpoint";
+        static final String CREATE_ENDPOINT_FILE = "createLocalEndpointFromFile";
+        static final String BIND_ROLE = "bindRole";
+        static final String LOAD_DATASET = "loadDataSet";
+        static final String BIND_TABLE = "bindTable";
+        static final String LOAD_SCENARIO = "load";
+        static final String REMOVE_SCENARIO = "removeScenario";
+        static final String PREFERRED_SCENARIO = "setPreferredScenario";
+        static final String PREFERRED_SCENARIOS = "setPreferredScenarios";
+
+        String type;
+        List<String> args;
+        String blob;
+        Map<String, String> properties;
+        Map<String, String> propertyBlobs;
+        List<String> schemas;
+        Map<String, Double> weights;
+        // files read by the operation until they are captured
+        transient String source;
+        transient Map<String, String> propertySources;
+
+        Operation(String type, String... args) {
+            this.type = type;
+            this.args = new ArrayList<>(Arrays.asList(args));
+        }
+
+        String arg(int index) {
+            return args != null && index < args.size() ? args.get(index) : null;
+        }
+
+        List<String> sources() {
+            List<String> sources = new ArrayList<>();
+            if (source != null) {
+                sources.add(source);
+            }
+            if (propertySources != null) {
+                sources.addAll(propertySources.values());
+            }
+            return sources;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+/**
+ * A whole configuration applied in one call, from a JSON document:
+ * <pre>
+ * {"endpoints": [{"name": "diameter", "protocolAdaptorType": "diameter", "properties": {...}, "schemas": [...]},
+ *                {"name": "remote", "address": "host:3868"}],
+ *  "dataSets": [{"name": "subscribers", "file": "/data/subscribers.csv"}, {"name": "cells", "content": "id,..."}],
+ *  "roles": [{"role": "client", "endpoint": "diameter", "dialog": "...", "config": "default"}],
+ *  "tables": [{"table": "subscribers", "dataSet": "subscribers", "config": "default"}],
+ *  "scenarios": [{"file": "/scenarios/call.scen", "config": "default"}, {"content": "...", "config": "default"}],
+ *  "preferredScenario": "call"}
+ * </pre>
+ * The steps form a graph: a role waits for its endpoint and a table for its data set, scenarios are loaded one after
+ * the other once all bindings are done and the preferred scenario is set last. Independent steps run in parallel. A
+ * failed step skips the steps depending on it, the others still run.
+ */
+public class ConfigurationPlan {
+    public static final String PASS = "PASS";
+    public static final String FAIL = "FAIL";
+    public static final String SKIPPED = "SKIPPED";
+
+    private final List<Step> steps = new ArrayList<>();
+
+    private ConfigurationPlan() {
+    }
+
+    public static ConfigurationPlan parse(String json) {
+        Document document;
+        try {
+            document = new Gson().fromJson(json, Document.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Invalid configuration document: " + e.getMessage(), e);
+        }
+        if (document == null) {
+            throw new IllegalArgumentException("Empty configuration document");
+        }
+        ConfigurationPlan plan = new ConfigurationPlan();
+        Map<String, Step> endpoints = new HashMap<>();
+        Map<String, Step> dataSets = new HashMap<>();
+        List<Step> bindings = new ArrayList<>();
+        for (EndpointSpec endpoint : nonNull(document.endpoints)) {
+            required(endpoint.name, "endpoint name");
+            if (endpoint.protocolAdaptorType == null) {
+                required(endpoint.address, "endpoint address or protocolAdaptorType of " + endpoint.name);
+            }
+            endpoints.put(endpoint.name, plan.add(new Step("endpoint " + endpoint.name, endpoint), endpoints.get(endpoint.name)));
+        }
+        for (DataSetSpec dataSet : nonNull(document.dataSets)) {
+            required(dataSet.name, "data set name");
+            if (dataSet.file == null) {
+                required(dataSet.content, "data set file or content of " + dataSet.name);
+            }
+            dataSets.put(dataSet.name, plan.add(new Step("dataSet " + dataSet.name, dataSet), dataSets.get(dataSet.name)));
+        }
+        for (RoleSpec role : nonNull(document.roles)) {
+            required(role.role, "role name");
+            bindings.add(plan.add(new Step("role " + role.role, role), endpoints.get(role.endpoint)));
+        }
+        for (TableSpec table : nonNull(document.tables)) {
+            required(table.table, "table name");
+            bindings.add(plan.add(new Step("table " + table.table, table), dataSets.get(table.dataSet)));
+        }
+        Step previous = null;
+        int scenarioIndex = 0;
+        for (ScenarioSpec scenario : nonNull(document.scenarios)) {
+            if (scenario.file == null) {
+                required(scenario.content, "scenario file or content");
+            }
+            scenarioIndex++;
+            Step step = new Step("scenario " + (scenario.file != null ? scenario.file : "#" + scenarioIndex), scenario);
+            step.dependencies.addAll(bindings);
+            previous = plan.add(step, previous);
+        }
+        if (document.preferredScenario != null || document.preferredScenarios != null) {
+            Step step = new Step("preferredScenario", document);
+            for (Step other : plan.steps) {
+                step.dependencies.add(other);
+            }
+            plan.steps.add(step);
+        }
+        return plan;
+    }
+
+    private Step add(Step step, Step dependency) {
+        if (dependency != null) {
+            step.dependencies.add(dependency);
+        }
+        steps.add(step);
+        return step;
+    }
+
+    private static <T> List<T> nonNull(List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+
+    private static void required(String value, String what) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + what + " in configuration document");
+        }
+    }
+
+    /**
+     * Runs the steps on threads threads, recording what succeeds in the journal. The caller keeps other calls out of
+     * the simulator meanwhile.
+     *
+     * @return status ({@value #PASS} if every step passed, {@value #FAIL} otherwise), elapsedMillis and steps with
+     *         step, state, elapsedMillis and error of each step in document order
+     */
+    public Map<String, Object> apply(final SimulatorFacade simulatorFacade, final ConfigurationJournal journal, int threads, Logger log) {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), SessionExecutors.daemonThreadFactory("configuration-apply"));
+        try {
+            Map<Step, CompletableFuture<String>> futures = new HashMap<>();
+            for (final Step step : steps) {
+                CompletableFuture<?>[] dependencies = new CompletableFuture<?>[step.dependencies.size()];
+                for (int i = 0; i < dependencies.length; i++) {
+                    dependencies[i] = futures.get(step.dependencies.get(i));
+                }
+                futures.put(step, CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+                    for (Step dependency : step.dependencies) {
+                        if (!PASS.equals(dependency.state)) {
+                            step.error = dependency.name + " did not pass";
+                            return step.state = SKIPPED;
+                        }
+                    }
+                    return step.run(simulatorFacade, journal);
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String status = PASS;
+        List<Map<String, Object>> results = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            if (!PASS.equals(step.state)) {
+                status = FAIL;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("step", step.name);
+            result.put("state", step.state);
+            result.put("elapsedMillis", step.elapsedMillis);
+            if (step.error != null) {
+                result.put("error", step.error);
+            }
+            results.add(result);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        log.info("Applied configuration of " + steps.size() + " steps in " + elapsedMillis + " ms: " + status);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", status);
+        result.put("elapsedMillis", elapsedMillis);
+        result.put("steps", results);
+        return result;
+    }
+
+    private static final class Step {
+        private final String name;
+        private final Object spec;
+        private final List<Step> dependencies = new ArrayList<>();
+        private volatile String state;
+        private volatile String error;
+        private volatile long elapsedMillis;
+
+        Step(String name, Object spec) {
+            this.name = name;
+            this.spec = spec;
+        }
+
+        String run(SimulatorFacade simulatorFacade, ConfigurationJournal journal) {
+            long start = System.nanoTime();
+            try {
+                ((Action) spec).apply(simulatorFacade, journal);
+                state = PASS;
+            } catch (Exception e) {
+                error = String.valueOf(e);
+                state = FAIL;
+            } finally {
+                elapsedMillis = (System.nanoTime() - start) / 1000000;
+            }
+            return state;
+        }
+    }
+
+    private interface Action {
+        void apply(SimulatorFacade simulatorFacade, ConfigurationJournal journal) throws Exception;
+    }
+
+    /**
+     * Writes content given inline to a temporary file for the call, released to the journal afterwards.
+     */
+    private static void withFile(String file, String content, String suffix, ConfigurationJournal journal, FileCall call) throws Exception {
+        if (file != null) {
+            call.apply(file);
+            return;
+        }
+        File temp = File.createTempFile("apply", suffix);
+        try {
+            Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            call.apply(temp.getAbsolutePath());
+        } finally {
+            journal.release(temp);
+        }
+    }
+
+    private interface FileCall {
+        void apply(String path) throws Exception;
+    }
+
+    private static final class Document implements Action {
+        private List<EndpointSpec> endpoints;
+        private List<DataSetSpec> dataSets;
+        private List<RoleSpec> roles;
+        private List<TableSpec> tables;
+        private List<ScenarioSpec> scenarios;
+        private String preferredScenario;
+        private Map<String, Double> preferredScenarios;
+
+        @Override
+        public void apply(SimulatorFacade simulatorFacade, ConfigurationJournal journal) throws Exception {
+            if (preferredScenarios != null) {
+                simulatorFacade.setPreferredScenario(preferredScenarios);
+                journal.recordPreferredScenarios(preferredScenarios);
+            } else {
+                simulatorFacade.setPreferredScenario(preferredScenario);
+                journal.recordPreferredScenario(preferredScenario);
+            }
+        }
+    }
+
+    private static final class EndpointSpec implements Action {
+        private String name;
+        private String address;
+        private String protocolAdaptorType;
+        private Map<String, String> properties;
+        private List<String> schemas;
+
+        @Override
+        public void apply(SimulatorFacade simulatorFacade, ConfigurationJournal journal) throws Exception {
+            if (protocolAdaptorType != null) {
+                simulatorFacade.createLocalEndpoint(name, protocolAdaptorType, properties, schemas);
+                journal.recordCreateLocalEndpoint(name, protocolAdaptorType, properties, schemas);
+            }
+            if (address != null) {
+                simulatorFacade.setEndpointAddress(name, address);
+                journal.recordEndpointAddress(name, address);
+            }
+        }
+    }
+
+    private static final class DataSetSpec implements Action {
+        private String name;
+        private String file;
+        private String content;
+
+        @Override
+        public void apply(final SimulatorFacade simulatorFacade, final ConfigurationJournal journal) throws Exception {
+            withFile(file, content, ".csv", journal, path -> {
+                simulatorFacade.loadDataSet(name, path);
+                journal.recordLoadDataSet(name, path);
+            });
+        }
+    }
+
+    private static final class RoleSpec implements Action {
+        private String role;
+        private String endpoint;
+        private String dialog;
+        private String config;
+
+        @Override
+        public void apply(SimulatorFacade simulatorFacade, ConfigurationJournal journal) throws Exception {
+            simulatorFacade.bindRole(role, endpoint, dialog, config);
+            journal.recordBindRole(role, endpoint, dialog, config);
+        }
+    }
+
+    private static final class TableSpec implements Action {
+        private String table;
+        private String dataSet;
+        private String config;
+
+        @Override
+        public void apply(SimulatorFacade simulatorFacade, ConfigurationJournal journal) throws Exception {
+            simulatorFacade.bindTable(table, dataSet, config);
+            journal.recordBindTable(table, dataSet, config);
+        }
+    }
+
+    private static final class ScenarioSpec implements Action {
+        private String file;
+        private String content;
+        private String config;
+
+        @Override
+        public void apply(final SimulatorFacade simulatorFacade, final ConfigurationJournal journal) throws Exception {
+            withFile(file, content, ".scen", journal, path -> {
+                Set<String> before = new HashSet<>(simulatorFacade.getScenarioNames());
+                simulatorFacade.load(path, config);
+                Set<String> added = new HashSet<>(simulatorFacade.getScenarioNames());
+                added.removeAll(before);
+                journal.recordLoad(path, config, added.size() == 1 ? added.iterator().next() : null);
+            });
+        }
+    }
+}
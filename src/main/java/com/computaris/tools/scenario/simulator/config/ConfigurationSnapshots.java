@@ -0,0 +1,315 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.config.ConfigurationJournal.Operation;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+/**
+ * Named configuration snapshots on disk, as gzipped JSON lists of the journal operations referencing the journal's
+ * blobs by content hash.
+ * <p>
+ * Saving captures the files of the journal operations, which the journal keeps compacted. Restoring applies
+ * endpoints and data sets first, independent ones in parallel on
+ * "com.computaris.robotremote.snapshot.restore-threads" threads (default 4), then scenario loads and removals, then
+ * role and table bindings, then the preferred scenario, each group in snapshot order.
+ * <p>
+ * Snapshots are stored in "com.computaris.robotremote.snapshot.dir" (default $SIMULATOR_HOME/snapshots), blobs in
+ * its blobs subdirectory.
+ */
+public class ConfigurationSnapshots {
+    public static final String SNAPSHOT_DIR_PROPERTY = "com.computaris.robotremote.snapshot.dir";
+    public static final String RESTORE_THREADS_PROPERTY = "com.computaris.robotremote.snapshot.restore-threads";
+    private static final String SNAPSHOT_FILE_EXTENSION = ".snapshot.json.gz";
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final int VERSION = 1;
+
+    private final File snapshotDirectory;
+    private final int restoreThreads;
+    private final Logger log;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    public ConfigurationSnapshots(File snapshotDirectory, int restoreThreads, Logger log) {
+        this.snapshotDirectory = snapshotDirectory;
+        this.restoreThreads = Math.max(1, restoreThreads);
+        this.log = log;
+    }
+
+    public static ConfigurationSnapshots fromSystemProperties(Logger log) {
+        String home = System.getenv("SIMULATOR_HOME");
+        String defaultDir = new File(home != null ? home : System.getProperty("java.io.tmpdir"), "snapshots").getPath();
+        return new ConfigurationSnapshots(new File(System.getProperty(SNAPSHOT_DIR_PROPERTY, defaultDir)),
+                Integer.parseInt(System.getProperty(RESTORE_THREADS_PROPERTY, "4")), log);
+    }
+
+    public ConfigurationJournal newJournal() {
+        return new ConfigurationJournal(new File(snapshotDirectory, "blobs"), log);
+    }
+
+    public Set<String> getSnapshotNames() {
+        Set<String> names = new TreeSet<>();
+        String[] files = snapshotDirectory.list();
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(SNAPSHOT_FILE_EXTENSION)) {
+                    names.add(file.substring(0, file.length() - SNAPSHOT_FILE_EXTENSION.length()));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return name, operations and file of the saved snapshot
+     */
+    public Map<String, Object> save(String name, ConfigurationJournal journal) throws IOException {
+        List<Operation> operations = journal.capture();
+        File file = snapshotFile(name);
+        Files.createDirectories(snapshotDirectory.toPath());
+        File temp = File.createTempFile("snapshot", null, snapshotDirectory);
+        try {
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temp.toPath())), StandardCharsets.UTF_8)) {
+                gson.toJson(new Snapshot(operations), writer);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        log.info("Saved configuration snapshot " + name + " with " + operations.size() + " operations");
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("operations", operations.size());
+        result.put("file", file.getPath());
+        return result;
+    }
+
+    /**
+     * Applies the snapshot to the simulator, appending the applied operations to the journal. The caller keeps other
+     * calls out of the simulator meanwhile.
+     *
+     * @return name, operations and elapsedMillis of the restore
+     */
+    public Map<String, Object> restore(String name, final SimulatorFacade simulatorFacade, final ConfigurationJournal journal) throws Exception {
+        long start = System.nanoTime();
+        Snapshot snapshot;
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(snapshotFile(name).toPath())), StandardCharsets.UTF_8)) {
+            snapshot = gson.fromJson(reader, Snapshot.class);
+        }
+        if (snapshot == null || snapshot.version != VERSION) {
+            throw new IOException("Unsupported configuration snapshot " + name);
+        }
+        for (Operation operation : snapshot.operations) {
+            checkBlob(journal, operation.blob);
+            if (operation.propertyBlobs != null) {
+                for (String blob : operation.propertyBlobs.values()) {
+                    checkBlob(journal, blob);
+                }
+            }
+        }
+
+        Map<String, List<Operation>> endpoints = new LinkedHashMap<>();
+        List<List<Operation>> independent = new ArrayList<>();
+        List<Operation> scenarios = new ArrayList<>();
+        List<Operation> bindings = new ArrayList<>();
+        List<Operation> preferred = new ArrayList<>();
+        for (Operation operation : snapshot.operations) {
+            switch (operation.type) {
+                case Operation.ENDPOINT_ADDRESS:
+                case Operation.CREATE_ENDPOINT:
+                case Operation.CREATE_ENDPOINT_FILE:
+                    List<Operation> endpoint = endpoints.get(operation.arg(0));
+                    if (endpoint == null) {
+                        endpoint = new ArrayList<>();
+                        endpoints.put(operation.arg(0), endpoint);
+                        independent.add(endpoint);
+                    }
+                    endpoint.add(operation);
+                    break;
+                case Operation.LOAD_DATASET:
+                    List<Operation> dataSet = new ArrayList<>();
+                    dataSet.add(operation);
+                    independent.add(dataSet);
+                    break;
+                case Operation.LOAD_SCENARIO:
+                case Operation.REMOVE_SCENARIO:
+                    scenarios.add(operation);
+                    break;
+                case Operation.BIND_ROLE:
+                case Operation.BIND_TABLE:
+                    bindings.add(operation);
+                    break;
+                case Operation.PREFERRED_SCENARIO:
+                case Operation.PREFERRED_SCENARIOS:
+                    preferred.add(operation);
+                    break;
+                default:
+                    throw new IOException("Unknown operation " + operation.type + " in configuration snapshot " + name);
+            }
+        }
+
+        log.info("Restoring configuration snapshot " + name + ": " + endpoints.size() + " endpoints, "
+                + (independent.size() - endpoints.size()) + " data sets, " + scenarios.size() + " scenario operations, "
+                + bindings.size() + " bindings");
+        ExecutorService executor = Executors.newFixedThreadPool(restoreThreads, SessionExecutors.daemonThreadFactory("snapshot-restore"));
+        try {
+            List<Future<Void>> futures = new ArrayList<>(independent.size());
+            for (final List<Operation> group : independent) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (Operation operation : group) {
+                            apply(operation, simulatorFacade, journal);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    for (Future<Void> other : futures) {
+                        other.cancel(true);
+                    }
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (List<Operation> group : Arrays.asList(scenarios, bindings, preferred)) {
+            for (Operation operation : group) {
+                apply(operation, simulatorFacade, journal);
+            }
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        log.info("Restored configuration snapshot " + name + " in " + elapsedMillis + " ms");
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("operations", snapshot.operations.size());
+        result.put("elapsedMillis", elapsedMillis);
+        return result;
+    }
+
+    private static void apply(Operation operation, SimulatorFacade simulatorFacade, ConfigurationJournal journal) throws Exception {
+        switch (operation.type) {
+            case Operation.ENDPOINT_ADDRESS:
+                simulatorFacade.setEndpointAddress(operation.arg(0), operation.arg(1));
+                break;
+            case Operation.CREATE_ENDPOINT:
+                Map<String, String> properties = operation.properties == null ? null : new LinkedHashMap<>(operation.properties);
+                if (operation.propertyBlobs != null) {
+                    for (Map.Entry<String, String> property : operation.propertyBlobs.entrySet()) {
+                        properties.put(property.getKey(), blobPath(journal, property.getValue()));
+                    }
+                }
+                simulatorFacade.createLocalEndpoint(operation.arg(0), operation.arg(1), properties, operation.schemas);
+                break;
+            case Operation.CREATE_ENDPOINT_FILE:
+                createLocalEndpointFromFile(simulatorFacade, operation.arg(0), operation.arg(1), blobPath(journal, operation.blob), operation.schemas);
+                break;
+            case Operation.LOAD_DATASET:
+                simulatorFacade.loadDataSet(operation.arg(0), blobPath(journal, operation.blob));
+                break;
+            case Operation.LOAD_SCENARIO:
+                simulatorFacade.load(blobPath(journal, operation.blob), operation.arg(0));
+                break;
+            case Operation.REMOVE_SCENARIO:
+                simulatorFacade.removeScenario(operation.arg(0));
+                break;
+            case Operation.BIND_ROLE:
+                simulatorFacade.bindRole(operation.arg(0), operation.arg(1), operation.arg(2), operation.arg(3));
+                break;
+            case Operation.BIND_TABLE:
+                simulatorFacade.bindTable(operation.arg(0), operation.arg(1), operation.arg(2));
+                break;
+            case Operation.PREFERRED_SCENARIO:
+                simulatorFacade.setPreferredScenario(operation.arg(0));
+                break;
+            case Operation.PREFERRED_SCENARIOS:
+                simulatorFacade.setPreferredScenario(operation.weights);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation.type);
+        }
+        journal.append(operation);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void createLocalEndpointFromFile(SimulatorFacade simulatorFacade, String endpointName, String protocolAdaptorType,
+                                                    String propertiesFile, List<String> schemas) throws Exception {
+        simulatorFacade.createLocalEndpoint(endpointName, protocolAdaptorType, propertiesFile, schemas);
+    }
+
+    private static void checkBlob(ConfigurationJournal journal, String blob) throws IOException {
+        if (blob != null && journal.blobFile(blob) == null) {
+            throw new IOException("Missing " + blob + " in " + journal.getBlobDirectory());
+        }
+    }
+
+    private static String blobPath(ConfigurationJournal journal, String blob) throws IOException {
+        return blob == null ? null : journal.blobFile(blob).getCanonicalPath();
+    }
+
+    private File snapshotFile(String name) {
+        if (name == null || !SNAPSHOT_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid snapshot name: " + name);
+        }
+        return new File(snapshotDirectory, name + SNAPSHOT_FILE_EXTENSION);
+    }
+
+    private static final class Snapshot {
+        private final int version;
+        private final List<Operation> operations;
+
+        Snapshot(List<Operation> operations) {
+            this.version = VERSION;
+            this.operations = operations;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.control;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.metrics.LatencyHistogram;
+import com.computaris.tools.scenario.simulator.metrics.SnapshotCounters;
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Closed loop search of the highest session rate the system under test sustains.
+ * <p>
+ * Each probe sets the rate, lets it settle, then measures one window: the error ratio (non-matching sessions over
+ * ended sessions), rejected dialogs per second and the p99 session latency. The rate is binary searched between
+ * minRate and maxRate until the interval is below tolerance, then held at the best healthy rate for holdSeconds.
+ * <p>
+ * Settings (Properties format): maxRate (required), minRate (1), windowSeconds (10), settleSeconds (2),
+ * tolerance (1% of maxRate), maxErrorRatio (0), maxRejectedPerSecond (0), maxLatencyP99Millis (0 = not checked),
+ * holdSeconds (0).
+ */
+public class CapacitySearch implements SessionLifecycleBridge.Sink {
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private final SessionLifecycleBridge sessionLifecycleBridge;
+    private final Logger log;
+
+    private final double minRate;
+    private final double maxRate;
+    private final long windowMillis;
+    private final long settleMillis;
+    private final double tolerance;
+    private final double maxErrorRatio;
+    private final double maxRejectedPerSecond;
+    private final double maxLatencyP99Millis;
+    private final long holdMillis;
+
+    private final AtomicLong endedSessions = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public CapacitySearch(BaseSimulatorFacadeRemoteDecorator simulatorFacade, SessionLifecycleBridge sessionLifecycleBridge, Properties settings, Logger log) {
+        this.simulatorFacade = simulatorFacade;
+        this.sessionLifecycleBridge = sessionLifecycleBridge;
+        this.log = log;
+        String max = settings.getProperty("maxRate");
+        if (max == null) {
+            throw new IllegalArgumentException("maxRate is required");
+        }
+        this.maxRate = Double.parseDouble(max);
+        this.minRate = Double.parseDouble(settings.getProperty("minRate", "1"));
+        this.windowMillis = (long) (Double.parseDouble(settings.getProperty("windowSeconds", "10")) * 1000);
+        this.settleMillis = (long) (Double.parseDouble(settings.getProperty("settleSeconds", "2")) * 1000);
+        this.tolerance = Double.parseDouble(settings.getProperty("tolerance", String.valueOf(maxRate / 100)));
+        this.maxErrorRatio = Double.parseDouble(settings.getProperty("maxErrorRatio", "0"));
+        this.maxRejectedPerSecond = Double.parseDouble(settings.getProperty("maxRejectedPerSecond", "0"));
+        this.maxLatencyP99Millis = Double.parseDouble(settings.getProperty("maxLatencyP99Millis", "0"));
+        this.holdMillis = (long) (Double.parseDouble(settings.getProperty("holdSeconds", "0")) * 1000);
+        if (minRate <= 0 || maxRate < minRate || tolerance <= 0) {
+            throw new IllegalArgumentException("Expected 0 < minRate <= maxRate and tolerance > 0");
+        }
+    }
+
+    @Override
+    public void sessionEnded(Object session, String scenarioName, SessionOutcome outcome, long durationNanos) {
+        endedSessions.incrementAndGet();
+        if (durationNanos >= 0) {
+            latency.record(durationNanos);
+        }
+    }
+
+    /**
+     * Runs the search, leaving the simulator generating at the sustainable rate (or minRate if even that fails).
+     *
+     * @return "sustainableRate" (0 if minRate is not sustainable), "probes" and, when holding, "hold"
+     */
+    public Map<String, Object> run() throws InterruptedException {
+        List<Map<String, Object>> probes = new ArrayList<>();
+        Map<String, Object> result = new LinkedHashMap<>();
+        sessionLifecycleBridge.addSink(this);
+        try {
+            simulatorFacade.startGeneratingSessions();
+            double sustainable = 0;
+            Map<String, Object> probe = probe(minRate);
+            probes.add(probe);
+            if (isHealthy(probe)) {
+                sustainable = minRate;
+                probe = probe(maxRate);
+                probes.add(probe);
+                if (isHealthy(probe)) {
+                    sustainable = maxRate;
+                } else {
+                    double low = minRate;
+                    double high = maxRate;
+                    while (high - low > tolerance) {
+                        double rate = (low + high) / 2;
+                        probe = probe(rate);
+                        probes.add(probe);
+                        if (isHealthy(probe)) {
+                            low = rate;
+                        } else {
+                            high = rate;
+                        }
+                    }
+                    sustainable = low;
+                }
+            }
+            log.info("Capacity search: sustainable rate=" + sustainable + " after " + probes.size() + " probes");
+
+            result.put("sustainableRate", sustainable);
+            result.put("probes", probes);
+            simulatorFacade.setSessionRate(sustainable > 0 ? sustainable : minRate);
+            if (sustainable > 0 && holdMillis > 0) {
+                result.put("hold", measure(sustainable, holdMillis));
+            }
+            return result;
+        } finally {
+            sessionLifecycleBridge.removeSink(this);
+        }
+    }
+
+    private Map<String, Object> probe(double rate) throws InterruptedException {
+        simulatorFacade.setSessionRate(rate);
+        Thread.sleep(settleMillis);
+        Map<String, Object> probe = measure(rate, windowMillis);
+        log.info("Capacity search probe: " + probe);
+        return probe;
+    }
+
+    private Map<String, Object> measure(double rate, long millis) throws InterruptedException {
+        long nonMatchingBefore = SnapshotCounters.get(simulatorFacade.getSessionStatsCounters(), SnapshotCounters.NON_MATCHING_SESSIONS);
+        long rejectedBefore = SnapshotCounters.get(simulatorFacade.getDialogStatsCounters(), SnapshotCounters.DIALOGS_REJECTED);
+        long endedBefore = endedSessions.get();
+        latency.reset();
+        long start = System.nanoTime();
+
+        Thread.sleep(millis);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long ended = endedSessions.get() - endedBefore;
+        long nonMatching = SnapshotCounters.get(simulatorFacade.getSessionStatsCounters(), SnapshotCounters.NON_MATCHING_SESSIONS) - nonMatchingBefore;
+        long rejected = SnapshotCounters.get(simulatorFacade.getDialogStatsCounters(), SnapshotCounters.DIALOGS_REJECTED) - rejectedBefore;
+        Map<String, Object> window = latency.reset();
+
+        Map<String, Object> measurement = new LinkedHashMap<>();
+        measurement.put("rate", rate);
+        measurement.put("achievedRate", ended / seconds);
+        measurement.put("errorRatio", ended == 0 ? (nonMatching == 0 ? 0.0 : 1.0) : nonMatching / (double) ended);
+        measurement.put("rejectedPerSecond", rejected / seconds);
+        measurement.put("latencyP99Millis", window.get("p99"));
+        measurement.put("healthy", isHealthy(measurement));
+        return measurement;
+    }
+
+    private boolean isHealthy(Map<String, Object> measurement) {
+        Object healthy = measurement.get("healthy");
+        if (healthy != null) {
+            return (Boolean) healthy;
+        }
+        return (Double) measurement.get("errorRatio") <= maxErrorRatio
+                && (Double) measurement.get("rejectedPerSecond") <= maxRejectedPerSecond
+                && (maxLatencyP99Millis <= 0 || (Double) measurement.get("latencyP99Millis") <= maxLatencyP99Millis);
+    }
+}
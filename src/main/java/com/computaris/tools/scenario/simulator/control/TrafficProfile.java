@@ -0,0 +1,245 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.control;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Session rate as a function of time, made of segments played one after the other, from a JSON document:
+ * <pre>
+ * {"tickMillis": 100, "scale": 1, "repeat": false,
+ *  "segments": [{"type": "step", "rate": 10, "seconds": 30},
+ *               {"type": "linear", "from": 10, "to": 100, "seconds": 60},
+ *               {"type": "sine", "rate": 50, "amplitude": 20, "periodSeconds": 60, "seconds": 300},
+ *               {"type": "spike", "rate": 50, "spikeRate": 200, "spikeSeconds": 5, "everySeconds": 60, "seconds": 600},
+ *               {"type": "replay", "csv": "0,10\n30,25\n60,5", "seconds": 90}]}
+ * </pre>
+ * A step holds its rate, linear interpolates from/to, sine oscillates around rate, spike holds rate with spikeRate
+ * for the first spikeSeconds of every everySeconds, and replay holds the rate of each "offsetSeconds,rate" row of
+ * the CSV until the next row (its seconds default to the last offset). Rates are multiplied by scale; with repeat
+ * the segments start over after the last one. tickMillis (default 100, at least 10) is the rate update period.
+ */
+public class TrafficProfile {
+    public static final String STEP = "step";
+    public static final String LINEAR = "linear";
+    public static final String SINE = "sine";
+    public static final String SPIKE = "spike";
+    public static final String REPLAY = "replay";
+    private static final long MIN_TICK_MILLIS = 10;
+
+    private final List<Segment> segments;
+    private final long tickMillis;
+    private final double scale;
+    private final boolean repeat;
+    private final double durationSeconds;
+
+    private TrafficProfile(Document document) throws IOException {
+        if (document.segments == null || document.segments.isEmpty()) {
+            throw new IllegalArgumentException("A traffic profile needs at least one segment");
+        }
+        this.segments = Collections.unmodifiableList(new ArrayList<>(document.segments));
+        this.tickMillis = Math.max(MIN_TICK_MILLIS, document.tickMillis == null ? 100 : document.tickMillis);
+        this.scale = document.scale == null ? 1 : document.scale;
+        this.repeat = document.repeat != null && document.repeat;
+        double duration = 0;
+        for (Segment segment : segments) {
+            segment.prepare();
+            duration += segment.seconds;
+        }
+        this.durationSeconds = duration;
+        if (durationSeconds <= 0) {
+            throw new IllegalArgumentException("A traffic profile must last longer than 0 seconds");
+        }
+    }
+
+    public static TrafficProfile parse(String json) throws IOException {
+        Document document;
+        try {
+            document = new Gson().fromJson(json, Document.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Invalid traffic profile: " + e.getMessage(), e);
+        }
+        if (document == null) {
+            throw new IllegalArgumentException("Empty traffic profile");
+        }
+        return new TrafficProfile(document);
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public boolean isRepeat() {
+        return repeat;
+    }
+
+    /**
+     * @return duration of one pass over the segments
+     */
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return index of the segment playing at the time, counted in the current pass
+     */
+    public int segmentAt(double seconds) {
+        double offset = offsetInPass(seconds);
+        for (int i = 0; i < segments.size(); i++) {
+            if (offset < segments.get(i).seconds) {
+                return i;
+            }
+            offset -= segments.get(i).seconds;
+        }
+        return segments.size() - 1;
+    }
+
+    public String segmentType(int index) {
+        return segments.get(index).type;
+    }
+
+    /**
+     * @return the session rate at the time from the start of the profile, the end rate past its end
+     */
+    public double rateAt(double seconds) {
+        double offset = offsetInPass(seconds);
+        for (Segment segment : segments) {
+            if (offset < segment.seconds) {
+                return Math.max(0, segment.rateAt(offset) * scale);
+            }
+            offset -= segment.seconds;
+        }
+        Segment last = segments.get(segments.size() - 1);
+        return Math.max(0, last.rateAt(last.seconds) * scale);
+    }
+
+    private double offsetInPass(double seconds) {
+        return repeat ? seconds % durationSeconds : seconds;
+    }
+
+    private static final class Document {
+        private Long tickMillis;
+        private Double scale;
+        private Boolean repeat;
+        private List<Segment> segments;
+    }
+
+    private static final class Segment {
+        private String type;
+        private double seconds;
+        private double rate;
+        private double from;
+        private double to;
+        private double amplitude;
+        private double periodSeconds;
+        private double spikeRate;
+        private double spikeSeconds;
+        private double everySeconds;
+        private String csv;
+        private transient double[] replayOffsets;
+        private transient double[] replayRates;
+
+        void prepare() throws IOException {
+            if (type == null) {
+                throw new IllegalArgumentException("Traffic profile segment without type");
+            }
+            switch (type) {
+                case STEP:
+                case LINEAR:
+                    break;
+                case SINE:
+                    require(periodSeconds > 0, "periodSeconds > 0");
+                    break;
+                case SPIKE:
+                    require(everySeconds > 0, "everySeconds > 0");
+                    break;
+                case REPLAY:
+                    require(csv != null, "csv");
+                    parseCsv();
+                    if (seconds <= 0) {
+                        seconds = replayOffsets[replayOffsets.length - 1];
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown traffic profile segment type: " + type);
+            }
+            require(seconds > 0, "seconds > 0");
+        }
+
+        private void require(boolean condition, String what) {
+            if (!condition) {
+                throw new IllegalArgumentException("Traffic profile " + type + " segment needs " + what);
+            }
+        }
+
+        private void parseCsv() throws IOException {
+            List<double[]> rows = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new StringReader(csv))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] columns = line.trim().split("\\s*[,;]\\s*");
+                    if (columns.length < 2 || line.trim().startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        rows.add(new double[]{Double.parseDouble(columns[0]), Double.parseDouble(columns[1])});
+                    } catch (NumberFormatException e) {
+                        // header row
+                    }
+                }
+            }
+            require(!rows.isEmpty(), "csv rows of offsetSeconds,rate");
+            Collections.sort(rows, (a, b) -> Double.compare(a[0], b[0]));
+            replayOffsets = new double[rows.size()];
+            replayRates = new double[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                replayOffsets[i] = rows.get(i)[0];
+                replayRates[i] = rows.get(i)[1];
+            }
+        }
+
+        double rateAt(double offset) {
+            switch (type) {
+                case LINEAR:
+                    return from + (to - from) * Math.min(1, offset / seconds);
+                case SINE:
+                    return rate + amplitude * Math.sin(2 * Math.PI * offset / periodSeconds);
+                case SPIKE:
+                    return offset % everySeconds < spikeSeconds ? spikeRate : rate;
+                case REPLAY:
+                    int row = 0;
+                    while (row + 1 < replayOffsets.length && replayOffsets[row + 1] <= offset) {
+                        row++;
+                    }
+                    return replayRates[row];
+                default:
+                    return rate;
+            }
+        }
+    }
+}
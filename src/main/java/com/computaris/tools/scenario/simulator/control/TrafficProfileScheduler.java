@@ -0,0 +1,195 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.control;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+
+/**
+ * Plays a {@link TrafficProfile} by setting the session rate from a fixed rate timer in the simulator JVM.
+ * <p>
+ * The profile time is measured with {@link System#nanoTime()} from its start, minus the time spent paused, so late
+ * ticks do not shift the rest of the profile. The rate is only set when it changed. One profile plays at a time; the
+ * rate is left as last set when it completes or is aborted.
+ */
+public class TrafficProfileScheduler {
+    public static final String IDLE = "IDLE";
+    public static final String RUNNING = "RUNNING";
+    public static final String PAUSED = "PAUSED";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String ABORTED = "ABORTED";
+    public static final String FAILED = "FAILED";
+
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private final Logger log;
+    private final ScheduledExecutorService timer;
+    private ScheduledFuture<?> ticks;
+    private TrafficProfile profile;
+    private String state = IDLE;
+    private long startNanos;
+    private long pausedNanos;
+    private long pauseStartNanos;
+    private long endNanos;
+    private double rate = -1;
+    private long rateChanges;
+    private String error;
+
+    public TrafficProfileScheduler(BaseSimulatorFacadeRemoteDecorator simulatorFacade, Logger log) {
+        this.simulatorFacade = simulatorFacade;
+        this.log = log;
+        this.timer = Executors.newSingleThreadScheduledExecutor(SessionExecutors.daemonThreadFactory("traffic-profile"));
+    }
+
+    /**
+     * @return segments, durationSeconds (of one pass) and repeat of the started profile
+     */
+    public synchronized Map<String, Object> start(TrafficProfile profile) {
+        if (RUNNING.equals(state) || PAUSED.equals(state)) {
+            throw new IllegalStateException("A traffic profile is already playing, abort it first");
+        }
+        this.profile = profile;
+        this.state = RUNNING;
+        this.startNanos = System.nanoTime();
+        this.pausedNanos = 0;
+        this.endNanos = 0;
+        this.rate = -1;
+        this.rateChanges = 0;
+        this.error = null;
+        ticks = timer.scheduleAtFixedRate(this::tick, 0, profile.getTickMillis(), TimeUnit.MILLISECONDS);
+        log.info("Started traffic profile of " + profile.getSegmentCount() + " segments, " + profile.getDurationSeconds()
+                + " s" + (profile.isRepeat() ? " repeated" : ""));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("segments", profile.getSegmentCount());
+        result.put("durationSeconds", profile.getDurationSeconds());
+        result.put("repeat", profile.isRepeat());
+        return result;
+    }
+
+    private synchronized void tick() {
+        if (!RUNNING.equals(state)) {
+            return;
+        }
+        double seconds = elapsedSeconds(System.nanoTime());
+        boolean last = !profile.isRepeat() && seconds >= profile.getDurationSeconds();
+        double target = profile.rateAt(seconds);
+        try {
+            if (target != rate) {
+                simulatorFacade.setSessionRate(target);
+                rate = target;
+                rateChanges++;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Traffic profile stopped, cannot set the session rate to " + target, e);
+            error = String.valueOf(e);
+            finish(FAILED);
+            return;
+        }
+        if (last) {
+            log.info("Traffic profile completed at " + rate + " sessions per second");
+            finish(COMPLETED);
+        }
+    }
+
+    private double elapsedSeconds(long now) {
+        if (endNanos != 0) {
+            now = endNanos;
+        }
+        long paused = pausedNanos + (PAUSED.equals(state) ? now - pauseStartNanos : 0);
+        return (now - startNanos - paused) / 1e9;
+    }
+
+    private void finish(String finalState) {
+        endNanos = System.nanoTime();
+        state = finalState;
+        if (ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+        }
+    }
+
+    /**
+     * Holds the current rate until resumed.
+     */
+    public synchronized void pause() {
+        if (!RUNNING.equals(state)) {
+            throw new IllegalStateException("No traffic profile running, state is " + state);
+        }
+        pauseStartNanos = System.nanoTime();
+        state = PAUSED;
+        log.info("Paused traffic profile at " + rate + " sessions per second");
+    }
+
+    public synchronized void resume() {
+        if (!PAUSED.equals(state)) {
+            throw new IllegalStateException("No traffic profile paused, state is " + state);
+        }
+        pausedNanos += System.nanoTime() - pauseStartNanos;
+        state = RUNNING;
+        log.info("Resumed traffic profile");
+    }
+
+    /**
+     * @return false if no profile was playing
+     */
+    public synchronized boolean abort() {
+        if (!RUNNING.equals(state) && !PAUSED.equals(state)) {
+            return false;
+        }
+        if (PAUSED.equals(state)) {
+            pausedNanos += System.nanoTime() - pauseStartNanos;
+            state = RUNNING;
+        }
+        finish(ABORTED);
+        log.info("Aborted traffic profile at " + rate + " sessions per second");
+        return true;
+    }
+
+    /**
+     * @return state, elapsedSeconds, durationSeconds, segment (index) and segmentType, rate last set, rateChanges and
+     *         the error of a failed profile
+     */
+    public synchronized Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("state", state);
+        if (profile != null) {
+            double seconds = elapsedSeconds(System.nanoTime());
+            if (!profile.isRepeat()) {
+                seconds = Math.min(seconds, profile.getDurationSeconds());
+            }
+            int segment = profile.segmentAt(seconds);
+            progress.put("elapsedSeconds", seconds);
+            progress.put("durationSeconds", profile.getDurationSeconds());
+            progress.put("segment", segment);
+            progress.put("segmentType", profile.segmentType(segment));
+            progress.put("rate", Math.max(rate, 0));
+            progress.put("rateChanges", rateChanges);
+        }
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.coordinator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.job.KeywordJobs;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Robot dynamic library exposing the ScenSim keywords of several remote simulator instances as one.
+ * <p>
+ * Arguments are forwarded as received, split values are sent as strings like Robot sends them.
+ * <p>
+ * By default a keyword is run on every node in parallel and the result of the first node is returned; read only
+ * keywords (ScenSimGet*) are answered by the first node. Session rates (global and per scenario), traffic profile
+ * scales and session counts are split evenly between the nodes, stats counters are summed, status checks pass only if
+ * they pass on every node, and keywords whose results cannot be merged return a map of results per node URL.
+ */
+public class CoordinatorLibrary {
+    private static final Set<String> SPLIT_RATE = keywords("ScenSimSetSessionRate", "ScenSimRampUpSessionRate");
+    private static final String RAMP_UP = normalize("ScenSimRampUpSessionRate");
+    private static final Set<String> SPLIT_SCENARIO_RATE = keywords("ScenSimSetScenarioRate", "ScenSimRampUpScenarioRate");
+    private static final String RAMP_UP_SCENARIO = normalize("ScenSimRampUpScenarioRate");
+    private static final Set<String> MERGE_COUNTERS = keywords("ScenSimGetSessionStats", "ScenSimGetDialogStats",
+            "ScenSimGetSessionStatsInScope", "ScenSimGetDialogStatsInScope");
+    private static final Set<String> ALL_TRUE = keywords("ScenSimVerifyStatus", "ScenSimVerifyStatusInScope",
+            "ScenSimStartGeneratingSessions", "ScenSimVerifySla");
+    private static final Set<String> PER_NODE = keywords("ScenSimGetConnectivityStatusSummary",
+            "ScenSimGetSessionLatency", "ScenSimResetSessionLatency", "ScenSimGetScenarioCacheStats",
+            "ScenSimGetFailedSessionTraces", "ScenSimGetSessionTrace", "ScenSimFindSustainableRate",
+            "ScenSimGetStatsSamples", "ScenSimSaveConfigurationSnapshot", "ScenSimRestoreConfigurationSnapshot",
+            "ScenSimApplyConfiguration", "ScenSimGetKeywordStats", "ScenSimGetTrafficProfileProgress",
+            "ScenSimGetScenarioRates", "ScenSimGetScenarioGeneratorStats", "ScenSimFlushSessionJournal",
+            "ScenSimGetMetadataCacheStats", "ScenSimCheckSla");
+    private static final Set<String> UPLOAD_STEPS = keywords("ScenSimAppendDataSetChunk",
+            "ScenSimCommitDataSetUpload", "ScenSimAbortDataSetUpload");
+    private static final String APPEND_CHUNK = normalize("ScenSimAppendDataSetChunk");
+    private static final Set<String> RUN_SESSION = keywords("ScenSimRunSession", "ScenSimRunSessionInScope");
+    private static final String RUN_SESSIONS = normalize("ScenSimRunSessions");
+    private static final String START_TRAFFIC_PROFILE = normalize("ScenSimStartTrafficProfile");
+    private static final String BEGIN_UPLOAD = normalize("ScenSimBeginDataSetUpload");
+    private static final String READ_ONLY_PREFIX = normalize("ScenSimGet");
+    private static final String ASYNC_SUFFIX = normalize("Async");
+    private static final String POLL_JOB = normalize("ScenSimPollJob");
+    private static final String GET_JOBS = normalize("ScenSimGetJobs");
+    private static final String AWAIT_JOB = normalize("ScenSimAwaitJob");
+    private static final String CANCEL_JOB = normalize("ScenSimCancelJob");
+    private static final int MAX_FAILURE_SAMPLES = 10;
+
+    private final List<RemotePeer> peers;
+    private final ExecutorService executor;
+    private final Logger log;
+    private final AtomicInteger nextSessionPeer = new AtomicInteger();
+    private final Map<String, List<Object>> uploadIds = new ConcurrentHashMap<>();
+    private final KeywordJobs keywordJobs;
+
+    public CoordinatorLibrary(List<RemotePeer> peers, Logger log) {
+        if (peers.isEmpty()) {
+            throw new IllegalArgumentException("At least one peer is required");
+        }
+        this.peers = new ArrayList<>(peers);
+        this.executor = Executors.newFixedThreadPool(peers.size(), SessionExecutors.daemonThreadFactory("coordinator"));
+        this.log = log;
+        this.keywordJobs = new KeywordJobs(SessionExecutors.newTaskExecutor("coordinator-job"), log);
+    }
+
+    public List<String> getKeywordNames() throws Exception {
+        return peers.get(0).getKeywordNames();
+    }
+
+    public List<String> getKeywordArguments(String keyword) throws Exception {
+        return peers.get(0).getKeywordArguments(keyword);
+    }
+
+    public String getKeywordDocumentation(String keyword) throws Exception {
+        return peers.get(0).getKeywordDocumentation(keyword);
+    }
+
+    /**
+     * Keyword names are matched like Robot does, ignoring case, spaces and underscores.
+     */
+    static String normalize(String keyword) {
+        return keyword.replace(" ", "").replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> keywords(String... keywords) {
+        Set<String> normalized = new HashSet<>();
+        for (String keyword : keywords) {
+            normalized.add(normalize(keyword));
+        }
+        return normalized;
+    }
+
+    public Object runKeyword(String keyword, List<Object> args, Map<String, Object> kwargs) throws Exception {
+        if (kwargs != null && !kwargs.isEmpty()) {
+            throw new IllegalArgumentException("Keyword arguments are not supported by the coordinator");
+        }
+        String name = normalize(keyword);
+        if (name.endsWith(ASYNC_SUFFIX)) {
+            return submitJob(keyword.substring(0, keyword.length() - "Async".length()), args);
+        } else if (name.equals(POLL_JOB)) {
+            return keywordJobs.poll(String.valueOf(args.get(0)));
+        } else if (name.equals(GET_JOBS)) {
+            return keywordJobs.list();
+        } else if (name.equals(AWAIT_JOB)) {
+            return keywordJobs.await(String.valueOf(args.get(0)), Long.parseLong(String.valueOf(args.get(1))));
+        } else if (name.equals(CANCEL_JOB)) {
+            return keywordJobs.cancel(String.valueOf(args.get(0)));
+        } else if (SPLIT_RATE.contains(name)) {
+            return broadcast(keyword, splitArguments(args, 0, name.equals(RAMP_UP) ? 2 : 1)).get(0);
+        } else if (SPLIT_SCENARIO_RATE.contains(name)) {
+            return broadcast(keyword, splitArguments(args, 1, name.equals(RAMP_UP_SCENARIO) ? 2 : 1)).get(0);
+        } else if (MERGE_COUNTERS.contains(name)) {
+            return mergeCounters(broadcast(keyword, sameArguments(args)));
+        } else if (ALL_TRUE.contains(name)) {
+            boolean result = true;
+            for (Object nodeResult : broadcast(keyword, sameArguments(args))) {
+                result &= Boolean.parseBoolean(String.valueOf(nodeResult));
+            }
+            return result;
+        } else if (PER_NODE.contains(name)) {
+            return perNode(broadcast(keyword, sameArguments(args)));
+        } else if (RUN_SESSION.contains(name)) {
+            RemotePeer peer = peers.get((nextSessionPeer.getAndIncrement() & Integer.MAX_VALUE) % peers.size());
+            return peer.runKeyword(keyword, args);
+        } else if (name.equals(START_TRAFFIC_PROFILE)) {
+            return broadcast(keyword, scaledProfile(args)).get(0);
+        } else if (name.equals(RUN_SESSIONS)) {
+            return mergeSessionBatches(broadcast(keyword, splitCount(args)));
+        } else if (name.equals(BEGIN_UPLOAD)) {
+            return beginUpload(broadcast(keyword, sameArguments(args)));
+        } else if (UPLOAD_STEPS.contains(name)) {
+            return broadcast(keyword, uploadArguments(args, !name.equals(APPEND_CHUNK))).get(0);
+        } else if (name.startsWith(READ_ONLY_PREFIX)) {
+            return peers.get(0).runKeyword(keyword, args);
+        }
+        return broadcast(keyword, sameArguments(args)).get(0);
+    }
+
+    /**
+     * Async keywords are jobs of the coordinator running the synchronous keyword on all peers, cancelling one stops
+     * waiting for the peers but does not interrupt them.
+     */
+    private String submitJob(final String keyword, final List<Object> args) {
+        return keywordJobs.submit(keyword, () -> runKeyword(keyword, args, null));
+    }
+
+    private List<List<Object>> sameArguments(List<Object> args) {
+        List<List<Object>> perPeer = new ArrayList<>(peers.size());
+        for (int i = 0; i < peers.size(); i++) {
+            perPeer.add(args);
+        }
+        return perPeer;
+    }
+
+    /**
+     * Divides count arguments (rates) from index first by the number of peers.
+     */
+    private List<List<Object>> splitArguments(List<Object> args, int first, int count) {
+        List<Object> split = new ArrayList<>(args);
+        for (int i = first; i < first + count && i < split.size(); i++) {
+            split.set(i, String.valueOf(Double.parseDouble(String.valueOf(split.get(i))) / peers.size()));
+        }
+        return sameArguments(split);
+    }
+
+    /**
+     * Divides the scale of the traffic profile (first argument) by the number of peers.
+     */
+    private List<List<Object>> scaledProfile(List<Object> args) {
+        JsonObject profile = JsonParser.parseString(String.valueOf(args.get(0))).getAsJsonObject();
+        double scale = profile.has("scale") ? profile.get("scale").getAsDouble() : 1;
+        profile.addProperty("scale", scale / peers.size());
+        List<Object> scaled = new ArrayList<>(args);
+        scaled.set(0, profile.toString());
+        return sameArguments(scaled);
+    }
+
+    /**
+     * Spreads the session count (second argument) over the peers, the first peers taking the remainder.
+     */
+    private List<List<Object>> splitCount(List<Object> args) {
+        int count = Integer.parseInt(String.valueOf(args.get(1)));
+        List<List<Object>> perPeer = new ArrayList<>(peers.size());
+        for (int i = 0; i < peers.size(); i++) {
+            List<Object> peerArgs = new ArrayList<>(args);
+            peerArgs.set(1, String.valueOf(count / peers.size() + (i < count % peers.size() ? 1 : 0)));
+            perPeer.add(peerArgs);
+        }
+        return perPeer;
+    }
+
+    private List<List<Object>> uploadArguments(List<Object> args, boolean forget) {
+        String uploadId = String.valueOf(args.get(0));
+        List<Object> nodeIds = forget ? uploadIds.remove(uploadId) : uploadIds.get(uploadId);
+        if (nodeIds == null) {
+            throw new IllegalArgumentException("Unknown upload: " + uploadId);
+        }
+        List<List<Object>> perPeer = new ArrayList<>(peers.size());
+        for (Object nodeId : nodeIds) {
+            List<Object> peerArgs = new ArrayList<>(args);
+            peerArgs.set(0, nodeId);
+            perPeer.add(peerArgs);
+        }
+        return perPeer;
+    }
+
+    private Map<String, Object> beginUpload(List<Object> results) {
+        String uploadId = UUID.randomUUID().toString();
+        List<Object> nodeIds = new ArrayList<>(results.size());
+        boolean present = true;
+        for (Object result : results) {
+            Map<?, ?> begin = (Map<?, ?>) result;
+            nodeIds.add(begin.get("uploadId"));
+            present &= Boolean.parseBoolean(String.valueOf(begin.get("present")));
+        }
+        uploadIds.put(uploadId, nodeIds);
+        Map<String, Object> merged = new LinkedHashMap<>();
+        merged.put("uploadId", uploadId);
+        merged.put("present", present);
+        return merged;
+    }
+
+    private List<Object> broadcast(final String keyword, List<List<Object>> perPeerArgs) throws Exception {
+        List<Future<Object>> futures = new ArrayList<>(peers.size());
+        for (int i = 0; i < peers.size(); i++) {
+            final RemotePeer peer = peers.get(i);
+            final List<Object> args = perPeerArgs.get(i);
+            futures.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return peer.runKeyword(keyword, args);
+                }
+            }));
+        }
+        List<Object> results = new ArrayList<>(futures.size());
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                errors.append(errors.length() == 0 ? "" : "; ").append(e.getCause().getMessage());
+            }
+        }
+        if (errors.length() > 0) {
+            log.warn(keyword + " failed: " + errors);
+            throw new RemotePeer.KeywordFailedException(errors.toString());
+        }
+        return results;
+    }
+
+    private Map<String, Object> perNode(List<Object> results) {
+        Map<String, Object> perNode = new LinkedHashMap<>();
+        for (int i = 0; i < peers.size(); i++) {
+            perNode.put(peers.get(i).getUrl(), results.get(i));
+        }
+        return perNode;
+    }
+
+    private static Map<String, Number> mergeCounters(List<Object> results) {
+        Map<String, Number> merged = new TreeMap<>();
+        for (Object result : results) {
+            for (Map.Entry<?, ?> counter : ((Map<?, ?>) result).entrySet()) {
+                String name = String.valueOf(counter.getKey());
+                merged.put(name, add(merged.get(name), toNumber(counter.getValue())));
+            }
+        }
+        return merged;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> mergeSessionBatches(List<Object> results) {
+        long count = 0;
+        long successful = 0;
+        double elapsedMillis = 0;
+        double sessionsPerSecond = 0;
+        Map<String, Number> outcomes = new TreeMap<>();
+        List<Object> failureSamples = new ArrayList<>();
+        Map<String, Object> latency = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> batch = (Map<String, Object>) results.get(i);
+            count += toNumber(batch.get("count")).longValue();
+            successful += toNumber(batch.get("successful")).longValue();
+            elapsedMillis = Math.max(elapsedMillis, toNumber(batch.get("elapsedMillis")).doubleValue());
+            sessionsPerSecond += toNumber(batch.get("sessionsPerSecond")).doubleValue();
+            for (Map.Entry<?, ?> outcome : ((Map<?, ?>) batch.get("outcomes")).entrySet()) {
+                String label = String.valueOf(outcome.getKey());
+                outcomes.put(label, add(outcomes.get(label), toNumber(outcome.getValue())));
+            }
+            for (Object sample : (Object[]) batch.get("failureSamples")) {
+                if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                    failureSamples.add(peers.get(i).getUrl() + " " + sample);
+                }
+            }
+            latency.put(peers.get(i).getUrl(), batch.get("latencyMillis"));
+        }
+        Map<String, Object> merged = new LinkedHashMap<>();
+        merged.put("count", count);
+        merged.put("elapsedMillis", elapsedMillis);
+        merged.put("sessionsPerSecond", sessionsPerSecond);
+        merged.put("successful", successful);
+        merged.put("failed", count - successful);
+        merged.put("outcomes", outcomes);
+        merged.put("failureSamples", failureSamples);
+        merged.put("latencyMillis", latency);
+        return merged;
+    }
+
+    /**
+     * The remote server marshals numbers other than int and double as strings.
+     */
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        String text = String.valueOf(value);
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(text);
+        }
+    }
+
+    private static Number add(Number a, Number b) {
+        if (a == null) {
+            return b;
+        }
+        if ((a instanceof Long || a instanceof Integer) && (b instanceof Long || b instanceof Integer)) {
+            return a.longValue() + b.longValue();
+        }
+        return a.doubleValue() + b.doubleValue();
+    }
+}
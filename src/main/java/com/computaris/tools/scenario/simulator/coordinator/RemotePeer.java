@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.coordinator;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+
+/**
+ * Robot remote library of another simulator instance, called over XML-RPC.
+ * <p>
+ * Replies of the cheap read only keywords (ScenSimGet*, status and SLA checks, job polls) are awaited for
+ * timeoutMillis. Every other keyword gets longTimeoutMillis, as configuration, data set and session keywords can take
+ * minutes and giving up on them while the peer carries on would leave the nodes configured differently.
+ */
+public class RemotePeer {
+    private static final String READ_ONLY_PREFIX = CoordinatorLibrary.normalize("ScenSimGet");
+    private static final Set<String> READ_ONLY = new HashSet<>();
+
+    static {
+        for (String keyword : new String[]{"ScenSimVerifyStatus", "ScenSimVerifyStatusInScope", "ScenSimCheckSla",
+                "ScenSimVerifySla", "ScenSimPollJob"}) {
+            READ_ONLY.add(CoordinatorLibrary.normalize(keyword));
+        }
+    }
+
+    private final String url;
+    private final XmlRpcClient client;
+    private final XmlRpcClient longRunningClient;
+
+    public RemotePeer(String url, int timeoutMillis, int longTimeoutMillis) throws MalformedURLException {
+        this.url = url;
+        client = newClient(url, timeoutMillis, timeoutMillis);
+        longRunningClient = newClient(url, timeoutMillis, longTimeoutMillis);
+    }
+
+    private static XmlRpcClient newClient(String url, int connectionTimeoutMillis, int replyTimeoutMillis) throws MalformedURLException {
+        XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+        config.setServerURL(new URL(url));
+        config.setEnabledForExtensions(false);
+        config.setConnectionTimeout(connectionTimeoutMillis);
+        config.setReplyTimeout(replyTimeoutMillis);
+        XmlRpcClient client = new XmlRpcClient();
+        client.setConfig(config);
+        return client;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the keyword return value
+     * @throws KeywordFailedException if the keyword failed on the peer
+     */
+    public Object runKeyword(String keyword, List<Object> args) throws XmlRpcException {
+        XmlRpcClient keywordClient = isReadOnly(keyword) ? client : longRunningClient;
+        Map<?, ?> result = (Map<?, ?>) keywordClient.execute("run_keyword", new Object[]{keyword, args.toArray()});
+        if (!"PASS".equals(result.get("status"))) {
+            throw new KeywordFailedException(url + ": " + result.get("error"));
+        }
+        return result.get("return");
+    }
+
+    /**
+     * @return whether the keyword gets the short reply timeout
+     */
+    static boolean isReadOnly(String keyword) {
+        String name = CoordinatorLibrary.normalize(keyword);
+        return name.startsWith(READ_ONLY_PREFIX) || READ_ONLY.contains(name);
+    }
+
+    public List<String> getKeywordNames() throws XmlRpcException {
+        return strings(client.execute("get_keyword_names", new Object[0]));
+    }
+
+    public List<String> getKeywordArguments(String keyword) throws XmlRpcException {
+        return strings(client.execute("get_keyword_arguments", new Object[]{keyword}));
+    }
+
+    public String getKeywordDocumentation(String keyword) throws XmlRpcException {
+        return String.valueOf(client.execute("get_keyword_documentation", new Object[]{keyword}));
+    }
+
+    private static List<String> strings(Object array) {
+        List<String> strings = new ArrayList<>();
+        for (Object item : (Object[]) array) {
+            strings.add(String.valueOf(item));
+        }
+        return strings;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    /**
+     * A keyword run on a peer did not pass.
+     */
+    public static class KeywordFailedException extends RuntimeException {
+        public KeywordFailedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import com.computaris.tools.scenario.simulator.cache.ContentDigest;
+import com.computaris.tools.scenario.simulator.payload.Payloads;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+
+/**
+ * Chunked dataset uploads. Chunks are streamed into a file channel as they arrive, the finished file is stored
+ * under its SHA-256 digest so an identical dataset announced by digest does not have to be uploaded again.
+ * <p>
+ * Uploads without a call for "com.computaris.robotremote.dataset-store.upload-idle-seconds" (default 600) are
+ * discarded with their partial file. Committing an upload removes the least recently used datasets of the store
+ * above "com.computaris.robotremote.dataset-store.max-megabytes" (default 4096).
+ */
+public class DataSetUploads {
+    public static final String STORE_DIR_PROPERTY = "com.computaris.robotremote.dataset-store.dir";
+    public static final String UPLOAD_IDLE_SECONDS_PROPERTY = "com.computaris.robotremote.dataset-store.upload-idle-seconds";
+    public static final String MAX_MEGABYTES_PROPERTY = "com.computaris.robotremote.dataset-store.max-megabytes";
+    public static final String ENCODING_PLAIN = Payloads.ENCODING_PLAIN;
+    public static final String ENCODING_GZIP = Payloads.ENCODING_GZIP;
+    private static final String DATASET_FILE_EXTENSION = ".csv";
+    private static final String UPLOAD_FILE_PREFIX = "upload";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final File storeDirectory;
+    private final long idleMillis;
+    private final long maxStoreBytes;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    public DataSetUploads(File storeDirectory, long idleMillis, long maxStoreBytes) {
+        this.storeDirectory = storeDirectory;
+        this.idleMillis = idleMillis;
+        this.maxStoreBytes = maxStoreBytes;
+    }
+
+    /**
+     * Creates the uploads configured by system properties. The store defaults to $SIMULATOR_HOME/cache/datasets.
+     */
+    public static DataSetUploads fromSystemProperties() {
+        String home = System.getenv("SIMULATOR_HOME");
+        String defaultDir = new File(home != null ? home : System.getProperty("java.io.tmpdir"), "cache" + File.separator + "datasets").getPath();
+        return new DataSetUploads(new File(System.getProperty(STORE_DIR_PROPERTY, defaultDir)),
+                TimeUnit.SECONDS.toMillis(Long.getLong(UPLOAD_IDLE_SECONDS_PROPERTY, 600L)),
+                Long.getLong(MAX_MEGABYTES_PROPERTY, 4096L) * 1024 * 1024);
+    }
+
+    /**
+     * Starts an upload. If the digest of an already stored dataset is given no chunks are expected.
+     *
+     * @param expectedSize size in bytes used to preallocate the file, 0 if unknown
+     * @param digest       hex SHA-256 of the dataset, empty if unknown
+     * @return "uploadId" and "present", the latter telling whether the dataset is already stored
+     */
+    public Map<String, Object> begin(String dataSetName, long expectedSize, String digest) throws IOException {
+        if (!digest.isEmpty() && !digest.matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("Not a SHA-256 digest: " + digest);
+        }
+        String uploadId = UUID.randomUUID().toString();
+        Upload upload;
+        File stored = digest.isEmpty() ? null : storedFile(digest);
+        if (stored != null && stored.isFile()) {
+            stored.setLastModified(System.currentTimeMillis());
+            upload = new Upload(dataSetName, stored);
+        } else {
+            FileUtils.forceMkdir(storeDirectory);
+            upload = new Upload(dataSetName, File.createTempFile(UPLOAD_FILE_PREFIX, null, storeDirectory), expectedSize);
+        }
+        uploads.put(uploadId, upload);
+        startSweeper();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("uploadId", uploadId);
+        result.put("present", upload.channel == null);
+        return result;
+    }
+
+    /**
+     * Appends a chunk. Plain chunks are text, others are decoded as described in {@link Payloads}, gzip chunks being
+     * complete gzip members.
+     *
+     * @return number of bytes written so far
+     */
+    public long append(String uploadId, String chunk, String encoding) throws IOException {
+        Upload upload = get(uploadId);
+        synchronized (upload) {
+            checkNotDiscarded(uploadId, upload);
+            if (upload.channel == null) {
+                throw new IllegalStateException("Upload " + uploadId + " does not accept chunks");
+            }
+            upload.lastUsedMillis = System.currentTimeMillis();
+            if (ENCODING_PLAIN.equalsIgnoreCase(encoding)) {
+                upload.write(ByteBuffer.wrap(chunk.getBytes(Charset.defaultCharset())));
+            } else {
+                try (InputStream in = Payloads.open(chunk, encoding)) {
+                    upload.copy(in);
+                }
+            }
+            return upload.position;
+        }
+    }
+
+    /**
+     * Finishes the upload and moves the file to the store.
+     *
+     * @return the stored dataset file
+     */
+    public File commit(String uploadId) throws IOException {
+        Upload upload = get(uploadId);
+        synchronized (upload) {
+            checkNotDiscarded(uploadId, upload);
+            uploads.remove(uploadId);
+            if (upload.channel == null) {
+                return upload.file;
+            }
+            try {
+                upload.channel.truncate(upload.position);
+            } finally {
+                upload.close();
+            }
+            File stored = storedFile(ContentDigest.toHex(upload.digest.digest()));
+            if (stored.isFile()) {
+                FileUtils.deleteQuietly(upload.file);
+                stored.setLastModified(System.currentTimeMillis());
+            } else if (!upload.file.renameTo(stored)) {
+                FileUtils.deleteQuietly(upload.file);
+                throw new IOException("Cannot store dataset " + stored);
+            }
+            pruneStore(stored);
+            return stored;
+        }
+    }
+
+    public void abort(String uploadId) throws IOException {
+        Upload upload = uploads.remove(uploadId);
+        if (upload != null) {
+            synchronized (upload) {
+                upload.discard();
+            }
+        }
+    }
+
+    /**
+     * Discards the uploads idle for longer than the idle time, and upload files no upload owns any more, left by an
+     * earlier run.
+     */
+    public void expireIdle() {
+        long now = System.currentTimeMillis();
+        Set<File> active = new HashSet<>();
+        for (Map.Entry<String, Upload> entry : uploads.entrySet()) {
+            Upload upload = entry.getValue();
+            if (now - upload.lastUsedMillis >= idleMillis && uploads.remove(entry.getKey(), upload)) {
+                synchronized (upload) {
+                    try {
+                        upload.discard();
+                    } catch (IOException e) {
+                        // the file is deleted anyway
+                    }
+                }
+            } else {
+                active.add(upload.file);
+            }
+        }
+        File[] files = storeDirectory.listFiles((dir, name) -> name.startsWith(UPLOAD_FILE_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                if (!active.contains(file) && now - file.lastModified() >= idleMillis) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently stored or used datasets while the store is above its size, except the one given.
+     */
+    private void pruneStore(File keep) {
+        File[] files = storeDirectory.listFiles((dir, name) -> name.endsWith(DATASET_FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && size > maxStoreBytes; i++) {
+            if (!files[i].equals(keep)) {
+                size -= files[i].length();
+                FileUtils.deleteQuietly(files[i]);
+            }
+        }
+    }
+
+    private synchronized void startSweeper() {
+        if (sweeper == null) {
+            long period = Math.max(1000, Math.min(idleMillis / 2, 60000));
+            sweeper = Executors.newSingleThreadScheduledExecutor(SessionExecutors.daemonThreadFactory("dataset-uploads"));
+            sweeper.scheduleWithFixedDelay(this::expireIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void checkNotDiscarded(String uploadId, Upload upload) {
+        if (upload.discarded) {
+            throw new IllegalStateException("Upload " + uploadId + " expired or was aborted");
+        }
+    }
+
+    public String getDataSetName(String uploadId) {
+        return get(uploadId).dataSetName;
+    }
+
+    private Upload get(String uploadId) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new IllegalArgumentException("Unknown upload: " + uploadId);
+        }
+        return upload;
+    }
+
+    private File storedFile(String digest) {
+        return new File(storeDirectory, digest.toLowerCase() + DATASET_FILE_EXTENSION);
+    }
+
+    private static final class Upload {
+        private final String dataSetName;
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private byte[] copyBuffer;
+        private long position;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+        private boolean discarded;
+
+        /**
+         * Upload of a dataset which is already stored.
+         */
+        Upload(String dataSetName, File stored) {
+            this.dataSetName = dataSetName;
+            this.file = stored;
+            this.randomAccessFile = null;
+            this.channel = null;
+            this.digest = null;
+        }
+
+        Upload(String dataSetName, File file, long expectedSize) throws IOException {
+            this.dataSetName = dataSetName;
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            if (expectedSize > 0) {
+                randomAccessFile.setLength(expectedSize);
+            }
+            this.channel = randomAccessFile.getChannel();
+            this.digest = ContentDigest.newDigest();
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            buffer.mark();
+            digest.update(buffer);
+            buffer.reset();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        void copy(InputStream in) throws IOException {
+            if (copyBuffer == null) {
+                copyBuffer = new byte[COPY_BUFFER_SIZE];
+            }
+            int read;
+            while ((read = in.read(copyBuffer)) != -1) {
+                write(ByteBuffer.wrap(copyBuffer, 0, read));
+            }
+        }
+
+        void close() throws IOException {
+            randomAccessFile.close();
+        }
+
+        /**
+         * Closes and deletes the partial file, a stored dataset is kept.
+         */
+        void discard() throws IOException {
+            discarded = true;
+            if (channel != null) {
+                try {
+                    close();
+                } finally {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+        }
+    }
+}
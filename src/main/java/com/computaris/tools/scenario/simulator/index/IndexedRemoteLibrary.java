@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.index;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+/**
+ * Remote library serving the keywords of an implementation from its generated {@link KeywordIndex}, which both answers
+ * keyword name, argument and documentation queries and runs the keywords, so the implementation is never reflected
+ * over.
+ */
+public class IndexedRemoteLibrary implements RemoteLibrary {
+    private final Object implementation;
+    private final KeywordIndex index;
+
+    public IndexedRemoteLibrary(Object implementation, KeywordIndex index) {
+        this.implementation = implementation;
+        this.index = index;
+    }
+
+    @Override
+    public List<String> getKeywordNames() {
+        return index.getKeywordNames();
+    }
+
+    @Override
+    public Object runKeyword(String keyword, List<String> args, Map<String, Object> kwargs) throws Throwable {
+        if (kwargs != null && !kwargs.isEmpty()) {
+            throw new IllegalArgumentException("Keyword '" + keyword + "' does not accept named arguments");
+        }
+        return index.runKeyword(implementation, keyword, args);
+    }
+
+    @Override
+    public List<String> getKeywordArguments(String keyword) {
+        return index.getKeywordArguments(keyword);
+    }
+
+    @Override
+    public String getKeywordDocumentation(String keyword) {
+        return index.getKeywordDocumentation(keyword);
+    }
+
+    @Override
+    public List<String> getKeywordTags(String keyword) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getKeywordTypes(String keyword) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getName() {
+        return implementation.getClass().getName();
+    }
+
+    @Override
+    public Object getImplementation() {
+        return implementation;
+    }
+}
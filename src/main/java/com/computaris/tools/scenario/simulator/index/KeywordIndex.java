@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keywords of a {@code @RobotKeywords} class, generated at build time by {@link KeywordIndexProcessor} as
+ * {@code <class name>KeywordIndex}.
+ * <p>
+ * Keyword names are the public method names, like the remote server names keywords of a plain object, so the index
+ * answers keyword name, argument and documentation queries without reflecting over the class. Keywords are run by
+ * generated code calling the methods directly: the overload is picked by argument count, then by argument type when
+ * overloads have the same count, and arguments are converted to numbers and booleans from strings.
+ */
+public abstract class KeywordIndex {
+    public static final String CLASS_NAME_SUFFIX = "KeywordIndex";
+    /**
+     * Returned by {@link #invoke} when no overload accepts the arguments.
+     */
+    protected static final Object NO_OVERLOAD = new Object();
+
+    private final List<String> keywordNames;
+    private final Map<String, Entry> entries;
+
+    protected KeywordIndex(Entry... entries) {
+        List<String> names = new ArrayList<>(entries.length);
+        this.entries = new HashMap<>(entries.length * 2);
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[i];
+            entry.id = i;
+            names.add(entry.name);
+            this.entries.put(normalize(entry.name), entry);
+        }
+        this.keywordNames = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return generated index of the class, null if the class was not compiled with the processor
+     */
+    public static KeywordIndex forClass(Class<?> type) {
+        try {
+            Class<?> indexClass = Class.forName(type.getName() + CLASS_NAME_SUFFIX, true, type.getClassLoader());
+            return (KeywordIndex) indexClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load keyword index of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * @return the keyword as matched: without spaces and underscores, in lower case
+     */
+    public static String normalize(String keyword) {
+        return keyword.replace(" ", "").replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    public List<String> getKeywordNames() {
+        return keywordNames;
+    }
+
+    public boolean hasKeyword(String keyword) {
+        return entries.containsKey(normalize(keyword));
+    }
+
+    public List<String> getKeywordArguments(String keyword) {
+        Entry entry = entries.get(normalize(keyword));
+        return entry == null ? Collections.<String>emptyList() : Arrays.asList(entry.arguments);
+    }
+
+    public String getKeywordDocumentation(String keyword) {
+        Entry entry = entries.get(normalize(keyword));
+        return entry == null ? "" : entry.documentation;
+    }
+
+    /**
+     * Runs the keyword on the implementation.
+     *
+     * @throws IllegalArgumentException if there is no such keyword or no overload accepts the arguments
+     */
+    public Object runKeyword(Object implementation, String keyword, List<?> args) throws Throwable {
+        Entry entry = entries.get(normalize(keyword));
+        if (entry == null) {
+            throw new IllegalArgumentException("Failed to find keyword '" + keyword + "'");
+        }
+        Object[] arguments = args.toArray();
+        Object result = invoke(implementation, entry.id, arguments);
+        if (result == NO_OVERLOAD) {
+            throw new IllegalArgumentException("No overload of keyword '" + entry.name + "' accepts "
+                    + arguments.length + " arguments " + Arrays.toString(arguments));
+        }
+        return result;
+    }
+
+    /**
+     * Calls the overload of the keyword, numbered in constructor order, which accepts the arguments.
+     *
+     * @return the method result, null for void methods, {@link #NO_OVERLOAD} if no overload accepts the arguments
+     */
+    protected abstract Object invoke(Object implementation, int keyword, Object[] args) throws Throwable;
+
+    /**
+     * @return whether the argument converts to the parameter type, as checked between overloads of the same count
+     */
+    protected static boolean accepts(Object arg, Class<?> type) {
+        if (type == String.class) {
+            return !(arg instanceof Map || arg instanceof Collection || arg instanceof Object[]);
+        } else if (type == int.class || type == long.class) {
+            return arg instanceof Integer || arg instanceof Long || arg instanceof String && isInteger((String) arg);
+        } else if (type == double.class) {
+            return arg instanceof Number || arg instanceof String && isNumber((String) arg);
+        } else if (type == boolean.class) {
+            return arg instanceof Boolean || "true".equalsIgnoreCase(String.valueOf(arg))
+                    || "false".equalsIgnoreCase(String.valueOf(arg));
+        } else if (type.isPrimitive()) {
+            return false;
+        }
+        return arg == null || type.isInstance(arg) || arg instanceof Object[] && type.isAssignableFrom(List.class);
+    }
+
+    protected static String toStringArgument(Object arg) {
+        return arg == null ? null : arg.toString();
+    }
+
+    protected static int toIntArgument(Object arg) {
+        return arg instanceof Number ? ((Number) arg).intValue() : Integer.parseInt(arg.toString().trim());
+    }
+
+    protected static long toLongArgument(Object arg) {
+        return arg instanceof Number ? ((Number) arg).longValue() : Long.parseLong(arg.toString().trim());
+    }
+
+    protected static double toDoubleArgument(Object arg) {
+        return arg instanceof Number ? ((Number) arg).doubleValue() : Double.parseDouble(arg.toString().trim());
+    }
+
+    protected static boolean toBooleanArgument(Object arg) {
+        return arg instanceof Boolean ? (Boolean) arg : Boolean.parseBoolean(arg.toString().trim());
+    }
+
+    /**
+     * @return the argument cast to the parameter type, arrays converted to lists
+     */
+    protected static Object toArgument(Object arg, Class<?> type) {
+        if (arg instanceof Object[] && !type.isInstance(arg)) {
+            return type.cast(Arrays.asList((Object[]) arg));
+        }
+        return type.cast(arg);
+    }
+
+    private static boolean isInteger(String value) {
+        try {
+            Long.parseLong(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static final class Entry {
+        private final String name;
+        private final String[] arguments;
+        private final String documentation;
+        private int id;
+
+        public Entry(String name, String[] arguments, String documentation) {
+            this.name = name;
+            this.arguments = arguments;
+            this.documentation = documentation;
+        }
+    }
+}
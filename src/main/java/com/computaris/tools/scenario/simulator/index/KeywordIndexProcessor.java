@@ -0,0 +1,258 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.index;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import org.robotframework.javalib.annotation.ArgumentNames;
+import org.robotframework.javalib.annotation.RobotKeyword;
+
+/**
+ * Generates a {@link KeywordIndex} for every {@code @RobotKeywords} class.
+ * <p>
+ * Every public method of the class, inherited ones included and {@link Object} ones excluded, is a keyword named
+ * after the method; overloads are one keyword. Documentation is the {@code @RobotKeyword} value, arguments are the
+ * {@code @ArgumentNames} of the documented overload or else the parameter names of the longest overload, those
+ * missing from the shortest one marked optional. The index runs keywords by calling the methods directly, varargs
+ * methods are therefore rejected.
+ */
+@SupportedAnnotationTypes("org.robotframework.javalib.annotation.RobotKeywords")
+public class KeywordIndexProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    try {
+                        writeIndex((TypeElement) element);
+                    } catch (IOException e) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write keyword index: " + e, element);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeIndex(TypeElement type) throws IOException {
+        Map<String, List<ExecutableElement>> overloads = new TreeMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            Element owner = method.getEnclosingElement();
+            if (method.getModifiers().contains(Modifier.PUBLIC)
+                    && !((TypeElement) owner).getQualifiedName().contentEquals(Object.class.getName())) {
+                if (method.isVarArgs()) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Varargs keywords are not supported", method);
+                    return;
+                }
+                overloads.computeIfAbsent(method.getSimpleName().toString(), k -> new ArrayList<>()).add(method);
+            }
+        }
+
+        String packageName = ((PackageElement) processingEnv.getElementUtils().getPackageOf(type)).getQualifiedName().toString();
+        String indexName = type.getSimpleName() + KeywordIndex.CLASS_NAME_SUFFIX;
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ").append(KeywordIndexProcessor.class.getSimpleName())
+                .append(" from ").append(type.getQualifiedName()).append(".\n */\n");
+        source.append("public final class ").append(indexName).append(" extends ")
+                .append(KeywordIndex.class.getName()).append(" {\n");
+        source.append("    public ").append(indexName).append("() {\n        super(");
+        String separator = "\n";
+        for (Map.Entry<String, List<ExecutableElement>> keyword : overloads.entrySet()) {
+            source.append(separator).append("            new Entry(").append(literal(keyword.getKey())).append(", new String[] {");
+            String argumentSeparator = "";
+            for (String argument : arguments(keyword.getValue())) {
+                source.append(argumentSeparator).append(literal(argument));
+                argumentSeparator = ", ";
+            }
+            source.append("}, ").append(literal(documentation(keyword.getValue()))).append(")");
+            separator = ",\n";
+        }
+        source.append(");\n    }\n\n");
+        writeInvoke(source, type, overloads);
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? indexName : packageName + "." + indexName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private void writeInvoke(StringBuilder source, TypeElement type, Map<String, List<ExecutableElement>> overloads) {
+        String typeName = type.getQualifiedName().toString();
+        source.append("    @Override\n    @SuppressWarnings(\"unchecked\")\n")
+                .append("    protected Object invoke(Object implementation, int keyword, Object[] args) throws Throwable {\n")
+                .append("        ").append(typeName).append(" target = (").append(typeName).append(") implementation;\n")
+                .append("        switch (keyword) {\n");
+        int id = 0;
+        for (List<ExecutableElement> methods : overloads.values()) {
+            source.append("            case ").append(id++).append(":\n");
+            for (ExecutableElement method : methods) {
+                List<? extends VariableElement> parameters = method.getParameters();
+                boolean sameCount = false;
+                for (ExecutableElement other : methods) {
+                    sameCount |= other != method && other.getParameters().size() == parameters.size();
+                }
+                source.append("                if (args.length == ").append(parameters.size());
+                if (sameCount) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        source.append("\n                        && accepts(args[").append(i).append("], ")
+                                .append(erasure(parameters.get(i).asType())).append(".class)");
+                    }
+                }
+                source.append(") {\n                    ");
+                boolean returnsValue = method.getReturnType().getKind() != TypeKind.VOID;
+                if (returnsValue) {
+                    source.append("return ");
+                }
+                source.append(method.getModifiers().contains(Modifier.STATIC) ? typeName : "target")
+                        .append('.').append(method.getSimpleName()).append('(');
+                for (int i = 0; i < parameters.size(); i++) {
+                    source.append(i == 0 ? "" : ", ").append(argument(parameters.get(i).asType(), "args[" + i + "]"));
+                }
+                source.append(");\n");
+                if (!returnsValue) {
+                    source.append("                    return null;\n");
+                }
+                source.append("                }\n");
+            }
+            source.append("                break;\n");
+        }
+        source.append("            default:\n                break;\n        }\n        return NO_OVERLOAD;\n    }\n");
+    }
+
+    private String argument(TypeMirror type, String arg) {
+        switch (type.getKind()) {
+            case INT:
+                return "toIntArgument(" + arg + ")";
+            case LONG:
+                return "toLongArgument(" + arg + ")";
+            case DOUBLE:
+                return "toDoubleArgument(" + arg + ")";
+            case BOOLEAN:
+                return "toBooleanArgument(" + arg + ")";
+            default:
+                String erasure = erasure(type);
+                if (erasure.equals(String.class.getName())) {
+                    return "toStringArgument(" + arg + ")";
+                } else if (type.getKind().isPrimitive()) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unsupported keyword argument type " + type);
+                }
+                return "(" + type + ") toArgument(" + arg + ", " + erasure + ".class)";
+        }
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static String documentation(List<ExecutableElement> overloads) {
+        for (ExecutableElement method : overloads) {
+            RobotKeyword keyword = method.getAnnotation(RobotKeyword.class);
+            if (keyword != null) {
+                return keyword.value();
+            }
+        }
+        return "";
+    }
+
+    private static List<String> arguments(List<ExecutableElement> overloads) {
+        List<String> arguments = new ArrayList<>();
+        for (ExecutableElement method : overloads) {
+            ArgumentNames names = method.getAnnotation(ArgumentNames.class);
+            if (names != null && method.getAnnotation(RobotKeyword.class) != null) {
+                for (String name : names.value()) {
+                    arguments.add(name);
+                }
+                return arguments;
+            }
+        }
+        ExecutableElement longest = overloads.get(0);
+        int shortest = Integer.MAX_VALUE;
+        for (ExecutableElement method : overloads) {
+            if (method.getParameters().size() > longest.getParameters().size()) {
+                longest = method;
+            }
+            shortest = Math.min(shortest, method.getParameters().size());
+        }
+        List<? extends VariableElement> parameters = longest.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            arguments.add(parameters.get(i).getSimpleName() + (i < shortest ? "" : "="));
+        }
+        return arguments;
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.job;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keywords running in the background, so that long keywords hold neither a remote server thread nor the client.
+ * <p>
+ * A job is started with an id returned right away, then polled, awaited or cancelled by that id. Finished jobs are
+ * kept for later polls, the oldest finished ones are dropped past {@value #MAX_FINISHED_JOBS}.
+ */
+public class KeywordJobs {
+    public static final String RUNNING = "RUNNING";
+    public static final String PASS = "PASS";
+    public static final String FAIL = "FAIL";
+    public static final String CANCELLED = "CANCELLED";
+
+    private static final int MAX_FINISHED_JOBS = 1000;
+
+    private final ExecutorService executor;
+    private final Logger log;
+    private final AtomicLong nextJobId = new AtomicLong();
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public KeywordJobs(ExecutorService executor, Logger log) {
+        this.executor = executor;
+        this.log = log;
+    }
+
+    /**
+     * @return id of the job running work
+     */
+    public String submit(String keyword, final Callable<?> work) {
+        final Job job = new Job("job-" + nextJobId.incrementAndGet(), keyword, work);
+        // published with its future set, so that it can be awaited or cancelled before it is scheduled
+        synchronized (jobs) {
+            evictFinished();
+            jobs.put(job.id, job);
+        }
+        try {
+            executor.execute(job.future);
+        } catch (RejectedExecutionException e) {
+            synchronized (jobs) {
+                jobs.remove(job.id);
+            }
+            throw e;
+        }
+        log.info("Started " + job.id + " running " + keyword);
+        return job.id;
+    }
+
+    private void evictFinished() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.isDone()) {
+                finished++;
+            }
+        }
+        for (Iterator<Job> it = jobs.values().iterator(); it.hasNext() && finished >= MAX_FINISHED_JOBS; ) {
+            if (it.next().isDone()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * @return id, keyword, state ({@value #RUNNING}, {@value #PASS}, {@value #FAIL} or {@value #CANCELLED}),
+     *         elapsedMillis and the result or error of a finished job
+     */
+    public Map<String, Object> poll(String jobId) {
+        return job(jobId).status();
+    }
+
+    /**
+     * @return states of all known jobs, oldest first
+     */
+    public List<Map<String, Object>> list() {
+        List<Job> known;
+        synchronized (jobs) {
+            known = new ArrayList<>(jobs.values());
+        }
+        List<Map<String, Object>> states = new ArrayList<>(known.size());
+        for (Job job : known) {
+            states.add(job.status());
+        }
+        return states;
+    }
+
+    /**
+     * Waits for the job to finish.
+     *
+     * @return the job result
+     * @throws Exception the job failure, {@link TimeoutException} if the job is still running after timeoutMillis,
+     *                   {@link CancellationException} if it was cancelled
+     */
+    public Object await(String jobId, long timeoutMillis) throws Exception {
+        Job job = job(jobId);
+        try {
+            return job.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new TimeoutException(jobId + " (" + job.keyword + ") still running after " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            throw cause(e);
+        }
+    }
+
+    /**
+     * Interrupts a running job.
+     *
+     * @return false if the job had already finished
+     */
+    public boolean cancel(String jobId) {
+        Job job = job(jobId);
+        boolean cancelled = job.future.cancel(true);
+        if (cancelled) {
+            if (job.endNanos == 0) {
+                job.endNanos = System.nanoTime();
+            }
+            log.info("Cancelled " + jobId + " running " + job.keyword);
+        }
+        return cancelled;
+    }
+
+    private Job job(String jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown job: " + jobId);
+        }
+        return job;
+    }
+
+    private static Exception cause(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return e;
+    }
+
+    private static final class Job {
+        private final String id;
+        private final String keyword;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        private final FutureTask<Object> future;
+
+        Job(String id, String keyword, final Callable<?> work) {
+            this.id = id;
+            this.keyword = keyword;
+            this.future = new FutureTask<>(() -> {
+                try {
+                    return work.call();
+                } finally {
+                    endNanos = System.nanoTime();
+                }
+            });
+        }
+
+        boolean isDone() {
+            return future.isDone();
+        }
+
+        Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("id", id);
+            status.put("keyword", keyword);
+            long end = endNanos;
+            status.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis((end == 0 ? System.nanoTime() : end) - startNanos));
+            if (!isDone()) {
+                status.put("state", RUNNING);
+            } else if (future.isCancelled()) {
+                status.put("state", CANCELLED);
+            } else {
+                try {
+                    Object result = future.get();
+                    status.put("state", PASS);
+                    if (result != null) {
+                        status.put("result", result);
+                    }
+                } catch (ExecutionException e) {
+                    status.put("state", FAIL);
+                    status.put("error", String.valueOf(e.getCause()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    status.put("state", RUNNING);
+                }
+            }
+            return status;
+        }
+    }
+}
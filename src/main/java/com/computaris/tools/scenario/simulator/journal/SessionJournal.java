@@ -0,0 +1,265 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.journal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+import com.computaris.tools.scenario.simulator.session.SessionOutcomes;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Append only journal of session ends, for reconstructing a long run afterwards with {@link SessionJournalReader}.
+ * <p>
+ * Each session is a fixed size record (end time, duration, scenario id, outcome id, successful flag) written into a
+ * memory mapped segment file: a writer claims its slot with an atomic increment and writes into the mapping, with no
+ * allocation, lock or system call. When a segment is full the next one is created; beyond the maximum number of
+ * segments the oldest is deleted. Scenario names and outcome labels are numbered on first use and the numbers
+ * appended to the names file, the only write that goes through a stream.
+ * <p>
+ * Enabled when "com.computaris.robotremote.session-journal.dir" is set. Segments hold
+ * "com.computaris.robotremote.session-journal.segment-records" records (default 1048576, 32 MB) and at most
+ * "com.computaris.robotremote.session-journal.max-segments" (default 64) are kept.
+ */
+public class SessionJournal implements SessionLifecycleBridge.Sink {
+    public static final String DIR_PROPERTY = "com.computaris.robotremote.session-journal.dir";
+    public static final String SEGMENT_RECORDS_PROPERTY = "com.computaris.robotremote.session-journal.segment-records";
+    public static final String MAX_SEGMENTS_PROPERTY = "com.computaris.robotremote.session-journal.max-segments";
+
+    static final int MAGIC = 0x53534a31; // "SSJ1"
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 32;
+    static final int HEADER_SIZE = RECORD_SIZE;
+    static final String SEGMENT_PREFIX = "session-journal-";
+    static final String SEGMENT_SUFFIX = ".bin";
+    static final String NAMES_FILE = "session-journal.names";
+    static final char SCENARIO = 'S';
+    static final char OUTCOME = 'O';
+    static final char RUN = 'R';
+
+    // record layout
+    static final int END_MILLIS = 0;
+    static final int DURATION_NANOS = 8;
+    static final int SCENARIO_ID = 16;
+    static final int OUTCOME_ID = 20;
+    static final int FLAGS = 24;
+    static final int FLAG_SUCCESSFUL = 1;
+
+    private final File directory;
+    private final int segmentRecords;
+    private final int maxSegments;
+    private final Logger log;
+    private final ConcurrentMap<String, Integer> scenarioIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, Integer> outcomeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextScenarioId = new AtomicInteger();
+    private final AtomicInteger nextOutcomeId = new AtomicInteger();
+    private final Deque<File> segmentFiles = new ArrayDeque<>();
+    private final Writer names;
+    private volatile Segment segment;
+    private long nextSegmentNumber;
+    private volatile boolean failed;
+
+    public SessionJournal(File directory, int segmentRecords, int maxSegments, Logger log) throws IOException {
+        if (segmentRecords < 1) {
+            throw new IllegalArgumentException("Invalid session journal segment size: " + segmentRecords);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.log = log;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create session journal directory " + directory);
+        }
+        for (File file : SessionJournalReader.segmentFiles(directory)) {
+            segmentFiles.add(file);
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(file) + 1);
+        }
+        // ids restart with every run, the names file tells the reader from which segment a new numbering applies
+        this.names = new OutputStreamWriter(new FileOutputStream(new File(directory, NAMES_FILE), true), StandardCharsets.UTF_8);
+        writeNames(RUN + "\t" + nextSegmentNumber + "\n");
+        this.segment = newSegment();
+    }
+
+    /**
+     * @return the journal configured by the system properties, null if it is not enabled or cannot be opened
+     */
+    public static SessionJournal fromSystemProperties(Logger log) {
+        String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        try {
+            SessionJournal journal = new SessionJournal(new File(dir), Integer.getInteger(SEGMENT_RECORDS_PROPERTY, 1 << 20),
+                    Integer.getInteger(MAX_SEGMENTS_PROPERTY, 64), log);
+            log.info("Journaling session outcomes to " + dir);
+            return journal;
+        } catch (IOException e) {
+            log.error("Cannot open the session journal in " + dir + ", sessions are not journaled", e);
+            return null;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void sessionEnded(Object session, String scenarioName, SessionOutcome outcome, long durationNanos) {
+        if (failed) {
+            return;
+        }
+        int scenarioId = scenarioId(scenarioName);
+        int outcomeId = outcomeId(outcome);
+        int flags = SessionOutcomes.isSuccessful(outcome) ? FLAG_SUCCESSFUL : 0;
+        long endMillis = System.currentTimeMillis();
+        Segment current = segment;
+        while (current != null) {
+            int index = current.next.getAndIncrement();
+            if (index < segmentRecords) {
+                int offset = HEADER_SIZE + index * RECORD_SIZE;
+                MappedByteBuffer buffer = current.buffer;
+                buffer.putLong(offset + DURATION_NANOS, durationNanos);
+                buffer.putInt(offset + SCENARIO_ID, scenarioId);
+                buffer.putInt(offset + OUTCOME_ID, outcomeId);
+                buffer.putInt(offset + FLAGS, flags);
+                // written last: a record with an end time is complete
+                buffer.putLong(offset + END_MILLIS, endMillis);
+                return;
+            }
+            current = roll(current);
+        }
+    }
+
+    private int scenarioId(String scenarioName) {
+        Integer id = scenarioIds.get(scenarioName);
+        return id != null ? id : register(scenarioIds, scenarioName, scenarioName, nextScenarioId, SCENARIO);
+    }
+
+    private int outcomeId(SessionOutcome outcome) {
+        Object key = outcome == null ? SessionOutcomes.NO_OUTCOME : outcome;
+        Integer id = outcomeIds.get(key);
+        return id != null ? id : register(outcomeIds, key, SessionOutcomes.label(outcome), nextOutcomeId, OUTCOME);
+    }
+
+    private synchronized <K> int register(ConcurrentMap<K, Integer> ids, K key, String name, AtomicInteger next, char kind) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = next.getAndIncrement();
+            writeNames(kind + "\t" + id + "\t" + name.replace('\t', ' ').replace('\n', ' ') + "\n");
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    private synchronized void writeNames(String line) {
+        try {
+            names.write(line);
+            names.flush();
+        } catch (IOException e) {
+            fail("Cannot write session journal names", e);
+        }
+    }
+
+    /**
+     * @return the segment following full, null if the journal failed
+     */
+    private synchronized Segment roll(Segment full) {
+        if (segment == full && !failed) {
+            full.buffer.force();
+            try {
+                segment = newSegment();
+            } catch (IOException e) {
+                fail("Cannot create session journal segment", e);
+            }
+        }
+        return failed ? null : segment;
+    }
+
+    private Segment newSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "%s%010d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) segmentRecords * RECORD_SIZE);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, segmentRecords);
+            buffer.putLong(16, System.currentTimeMillis());
+            segmentFiles.add(file);
+            while (segmentFiles.size() > maxSegments) {
+                File oldest = segmentFiles.removeFirst();
+                if (!oldest.delete()) {
+                    log.warn("Cannot delete session journal segment " + oldest);
+                }
+            }
+            return new Segment(buffer);
+        }
+    }
+
+    private void fail(String message, IOException e) {
+        if (!failed) {
+            failed = true;
+            log.error(message + ", session journal stopped", e);
+        }
+    }
+
+    /**
+     * Flushes the current segment and the names, the journal can still be written afterwards.
+     */
+    public synchronized void flush() {
+        Segment current = segment;
+        if (current != null) {
+            current.buffer.force();
+        }
+        try {
+            names.flush();
+        } catch (IOException e) {
+            fail("Cannot write session journal names", e);
+        }
+    }
+
+    static long segmentNumber(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.journal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.computaris.tools.scenario.simulator.metrics.LatencyHistogram;
+
+/**
+ * Reads the segments written by {@link SessionJournal}, oldest first, as a stream of records. Also usable from the
+ * command line, on a live or a copied journal directory:
+ * <pre>
+ * java -cp "$SIMULATOR_HOME/lib/*" com.computaris.tools.scenario.simulator.journal.SessionJournalReader dir csv [scenario]
+ * java -cp "$SIMULATOR_HOME/lib/*" com.computaris.tools.scenario.simulator.journal.SessionJournalReader dir buckets seconds [scenario]
+ * </pre>
+ * The first prints every session as CSV, the second the sessions, outcomes, rate and latency percentiles per time
+ * bucket.
+ */
+public class SessionJournalReader {
+    public interface RecordHandler {
+        /**
+         * @param durationNanos session duration, -1 if its start was not seen
+         */
+        void record(long endMillis, String scenarioName, String outcome, boolean successful, long durationNanos) throws IOException;
+    }
+
+    private final File directory;
+
+    public SessionJournalReader(File directory) {
+        this.directory = directory;
+    }
+
+    static List<File> segmentFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SessionJournal.SEGMENT_PREFIX) && name.endsWith(SessionJournal.SEGMENT_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(SessionJournal.segmentNumber(a), SessionJournal.segmentNumber(b)));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Passes every record to the handler, in segment and slot order. Slots not written (yet) are skipped.
+     *
+     * @return number of records read
+     */
+    public long read(RecordHandler handler) throws IOException {
+        TreeMap<Long, Names> runs = readNames();
+        long count = 0;
+        for (File file : segmentFiles(directory)) {
+            Map.Entry<Long, Names> run = runs.floorEntry(SessionJournal.segmentNumber(file));
+            Names names = run == null ? new Names() : run.getValue();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                if (buffer.limit() < SessionJournal.HEADER_SIZE || buffer.getInt(0) != SessionJournal.MAGIC) {
+                    throw new IOException("Not a session journal segment: " + file);
+                }
+                if (buffer.getInt(4) != SessionJournal.VERSION || buffer.getInt(8) != SessionJournal.RECORD_SIZE) {
+                    throw new IOException("Unsupported session journal segment version: " + file);
+                }
+                for (int offset = SessionJournal.HEADER_SIZE; offset + SessionJournal.RECORD_SIZE <= buffer.limit(); offset += SessionJournal.RECORD_SIZE) {
+                    long endMillis = buffer.getLong(offset + SessionJournal.END_MILLIS);
+                    if (endMillis == 0) {
+                        continue;
+                    }
+                    handler.record(endMillis, names.scenario(buffer.getInt(offset + SessionJournal.SCENARIO_ID)),
+                            names.outcome(buffer.getInt(offset + SessionJournal.OUTCOME_ID)),
+                            (buffer.getInt(offset + SessionJournal.FLAGS) & SessionJournal.FLAG_SUCCESSFUL) != 0,
+                            buffer.getLong(offset + SessionJournal.DURATION_NANOS));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return names of each run by its first segment
+     */
+    private TreeMap<Long, Names> readNames() throws IOException {
+        TreeMap<Long, Names> runs = new TreeMap<>();
+        File file = new File(directory, SessionJournal.NAMES_FILE);
+        if (!file.isFile()) {
+            return runs;
+        }
+        Names names = new Names();
+        runs.put(Long.MIN_VALUE, names);
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 2 && fields[0].equals(String.valueOf(SessionJournal.RUN))) {
+                    names = new Names();
+                    runs.put(Long.parseLong(fields[1]), names);
+                } else if (fields.length == 3 && fields[0].equals(String.valueOf(SessionJournal.SCENARIO))) {
+                    names.scenarios.put(Integer.parseInt(fields[1]), fields[2]);
+                } else if (fields.length == 3 && fields[0].equals(String.valueOf(SessionJournal.OUTCOME))) {
+                    names.outcomes.put(Integer.parseInt(fields[1]), fields[2]);
+                }
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Writes endTime (ISO-8601), scenario, outcome, successful and durationMillis (empty if unknown) of the sessions
+     * of the scenario, or of all sessions if it is null.
+     */
+    public long exportCsv(final String scenarioName, final Writer out) throws IOException {
+        out.write("endTime,scenario,outcome,successful,durationMillis\n");
+        final long[] count = new long[1];
+        read((endMillis, scenario, outcome, successful, durationNanos) -> {
+            if (scenarioName == null || scenarioName.equals(scenario)) {
+                out.write(Instant.ofEpochMilli(endMillis) + "," + csv(scenario) + "," + csv(outcome) + "," + successful + ","
+                        + (durationNanos < 0 ? "" : String.valueOf(durationNanos / 1e6)) + "\n");
+                count[0]++;
+            }
+        });
+        out.flush();
+        return count[0];
+    }
+
+    private static String csv(String value) {
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0 ? value : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Aggregates the sessions of the scenario, or all sessions if it is null, into buckets of bucketMillis by end
+     * time. Sessions are journaled in about end time order; one that is later than its bucket by more than a bucket
+     * is counted in the oldest bucket still open.
+     *
+     * @return start, sessions, successful, failed, ratePerSecond, outcomes and latencyMillis of each bucket with sessions
+     */
+    public List<Map<String, Object>> aggregate(final long bucketMillis, final String scenarioName) throws IOException {
+        if (bucketMillis < 1) {
+            throw new IllegalArgumentException("Invalid bucket size: " + bucketMillis);
+        }
+        final List<Map<String, Object>> buckets = new ArrayList<>();
+        final Bucket[] open = {null, null};
+        read((endMillis, scenario, outcome, successful, durationNanos) -> {
+            if (scenarioName != null && !scenarioName.equals(scenario)) {
+                return;
+            }
+            long start = endMillis - Math.floorMod(endMillis, bucketMillis);
+            Bucket bucket = open[1];
+            if (bucket == null || start > bucket.start) {
+                if (open[0] != null) {
+                    buckets.add(open[0].close(bucketMillis));
+                }
+                if (bucket != null && start > bucket.start + bucketMillis) {
+                    buckets.add(bucket.close(bucketMillis));
+                    bucket = null;
+                }
+                open[0] = bucket;
+                open[1] = bucket = new Bucket(start);
+            } else if (start < bucket.start && open[0] != null) {
+                bucket = open[0];
+            }
+            bucket.add(outcome, successful, durationNanos);
+        });
+        for (Bucket bucket : open) {
+            if (bucket != null) {
+                buckets.add(bucket.close(bucketMillis));
+            }
+        }
+        return buckets;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[1].equals("csv") || args[1].equals("buckets") && args.length >= 3)) {
+            System.err.println("Usage: SessionJournalReader directory csv [scenario]");
+            System.err.println("       SessionJournalReader directory buckets seconds [scenario]");
+            System.exit(2);
+        }
+        SessionJournalReader reader = new SessionJournalReader(new File(args[0]));
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        if (args[1].equals("csv")) {
+            reader.exportCsv(args.length > 2 ? args[2] : null, out);
+            return;
+        }
+        long bucketMillis = Math.round(Double.parseDouble(args[2]) * 1000);
+        out.write("start,sessions,successful,failed,ratePerSecond,meanMillis,p50Millis,p90Millis,p99Millis,p99.9Millis,maxMillis\n");
+        for (Map<String, Object> bucket : reader.aggregate(bucketMillis, args.length > 3 ? args[3] : null)) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> latency = (Map<String, Object>) bucket.get("latencyMillis");
+            out.write(Instant.ofEpochMilli((Long) bucket.get("start")) + "," + bucket.get("sessions") + "," + bucket.get("successful") + ","
+                    + bucket.get("failed") + "," + bucket.get("ratePerSecond") + "," + latency.get("mean") + "," + latency.get("p50") + ","
+                    + latency.get("p90") + "," + latency.get("p99") + "," + latency.get("p99.9") + "," + latency.get("max") + "\n");
+        }
+        out.flush();
+    }
+
+    private static final class Names {
+        private final Map<Integer, String> scenarios = new HashMap<>();
+        private final Map<Integer, String> outcomes = new HashMap<>();
+
+        String scenario(int id) {
+            String name = scenarios.get(id);
+            return name != null ? name : "#" + id;
+        }
+
+        String outcome(int id) {
+            String label = outcomes.get(id);
+            return label != null ? label : "#" + id;
+        }
+    }
+
+    private static final class Bucket {
+        private final long start;
+        private long sessions;
+        private long successful;
+        private final Map<String, Long> outcomes = new TreeMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        void add(String outcome, boolean successful, long durationNanos) {
+            sessions++;
+            if (successful) {
+                this.successful++;
+            }
+            outcomes.merge(outcome, 1L, Long::sum);
+            if (durationNanos >= 0) {
+                latency.record(durationNanos);
+            }
+        }
+
+        Map<String, Object> close(long bucketMillis) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("start", start);
+            result.put("sessions", sessions);
+            result.put("successful", successful);
+            result.put("failed", sessions - successful);
+            result.put("ratePerSecond", sessions * 1000.0 / bucketMillis);
+            result.put("outcomes", outcomes);
+            result.put("latencyMillis", latency.summary());
+            return result;
+        }
+    }
+}
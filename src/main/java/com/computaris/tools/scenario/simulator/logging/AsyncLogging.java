@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.logging;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.Category;
+import org.apache.log4j.Logger;
+
+/**
+ * Loggers for keyword paths, which must not wait for the log output.
+ * <p>
+ * Events go through a bounded {@link AsyncAppender} of "com.computaris.robotremote.log-buffer" events (default 512)
+ * to the appenders the logger would have used. When the buffer is full events are dropped and counted rather than
+ * blocking the keyword. Logged values are cut to {@value #MAX_VALUE_LENGTH} characters by {@link #bounded(Object)}.
+ */
+public final class AsyncLogging {
+    public static final String LOG_BUFFER_PROPERTY = "com.computaris.robotremote.log-buffer";
+    private static final String ASYNC_APPENDER_NAME = "async";
+    private static final int MAX_VALUE_LENGTH = 256;
+
+    private AsyncLogging() {
+    }
+
+    /**
+     * @return the logger, logging asynchronously unless no appender is configured for it
+     */
+    public static synchronized Logger asyncLogger(String name) {
+        Logger logger = Logger.getLogger(name);
+        if (logger.getAppender(ASYNC_APPENDER_NAME) != null) {
+            return logger;
+        }
+        List<Appender> appenders = effectiveAppenders(logger);
+        if (appenders.isEmpty()) {
+            return logger;
+        }
+        final AsyncAppender async = new AsyncAppender();
+        async.setName(ASYNC_APPENDER_NAME);
+        async.setBlocking(false);
+        async.setBufferSize(Integer.getInteger(LOG_BUFFER_PROPERTY, 512));
+        for (Appender appender : appenders) {
+            async.addAppender(appender);
+        }
+        logger.addAppender(async);
+        logger.setAdditivity(false);
+        Runtime.getRuntime().addShutdownHook(new Thread(async::close, "async-log-flush"));
+        return logger;
+    }
+
+    private static List<Appender> effectiveAppenders(Logger logger) {
+        List<Appender> appenders = new ArrayList<>();
+        for (Category category = logger; category != null; category = category.getParent()) {
+            for (Enumeration<?> it = category.getAllAppenders(); it.hasMoreElements(); ) {
+                appenders.add((Appender) it.nextElement());
+            }
+            if (!category.getAdditivity()) {
+                break;
+            }
+        }
+        return appenders;
+    }
+
+    /**
+     * @return the value as text, cut with its length noted if longer than {@value #MAX_VALUE_LENGTH} characters
+     */
+    public static String bounded(Object value) {
+        String text = String.valueOf(value);
+        if (text.length() <= MAX_VALUE_LENGTH) {
+            return text;
+        }
+        return text.substring(0, MAX_VALUE_LENGTH) + "...(" + text.length() + " chars)";
+    }
+}
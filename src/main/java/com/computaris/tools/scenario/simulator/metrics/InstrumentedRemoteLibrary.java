@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+import com.computaris.tools.scenario.simulator.index.KeywordIndex;
+
+/**
+ * Remote library recording every keyword call of the library it wraps into {@link KeywordStats}, under the keyword
+ * name as the library lists it whichever spelling the client used. Calls of unknown keywords are not recorded.
+ */
+public class InstrumentedRemoteLibrary implements RemoteLibrary {
+    private final RemoteLibrary library;
+    private final KeywordStats stats;
+    private volatile Map<String, String> keywordNames;
+
+    public InstrumentedRemoteLibrary(RemoteLibrary library, KeywordStats stats) {
+        this.library = library;
+        this.stats = stats;
+    }
+
+    @Override
+    public Object runKeyword(String keyword, List<String> args, Map<String, Object> kwargs) throws Throwable {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = library.runKeyword(keyword, args, kwargs);
+            failed = false;
+            return result;
+        } finally {
+            String name = keywordName(keyword);
+            if (name != null) {
+                stats.record(name, System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    private String keywordName(String keyword) {
+        Map<String, String> names = keywordNames;
+        if (names == null) {
+            names = new HashMap<>();
+            for (String name : library.getKeywordNames()) {
+                names.put(KeywordIndex.normalize(name), name);
+            }
+            keywordNames = names;
+        }
+        return names.get(KeywordIndex.normalize(keyword));
+    }
+
+    @Override
+    public List<String> getKeywordNames() {
+        return library.getKeywordNames();
+    }
+
+    @Override
+    public List<String> getKeywordArguments(String keyword) {
+        return library.getKeywordArguments(keyword);
+    }
+
+    @Override
+    public String getKeywordDocumentation(String keyword) {
+        return library.getKeywordDocumentation(keyword);
+    }
+
+    @Override
+    public List<String> getKeywordTags(String keyword) {
+        return library.getKeywordTags(keyword);
+    }
+
+    @Override
+    public List<String> getKeywordTypes(String keyword) {
+        return library.getKeywordTypes(keyword);
+    }
+
+    @Override
+    public String getName() {
+        return library.getName();
+    }
+
+    @Override
+    public Object getImplementation() {
+        return library.getImplementation();
+    }
+}
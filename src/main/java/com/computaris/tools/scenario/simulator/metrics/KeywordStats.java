@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, error count and latency of every keyword called through the remote servers.
+ * <p>
+ * Recording is lock free: counters are {@link LongAdder}s and latencies go to a {@link LatencyHistogram} per keyword.
+ * Latency summaries cover the calls since the last reset.
+ */
+public class KeywordStats implements KeywordStatsMXBean {
+    public static final String OBJECT_NAME = "com.computaris.robotremote:type=KeywordStats";
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public void record(String keyword, long durationNanos, boolean failed) {
+        Entry entry = entries.get(keyword);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = entries.putIfAbsent(keyword, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        entry.calls.increment();
+        if (failed) {
+            entry.errors.increment();
+        }
+        entry.latency.record(durationNanos);
+    }
+
+    /**
+     * @return calls, errors and the latency summary in milliseconds of every keyword called
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Map<String, Object> keyword = new LinkedHashMap<>();
+            keyword.put("calls", entry.getValue().calls.sum());
+            keyword.put("errors", entry.getValue().errors.sum());
+            keyword.put("latency", entry.getValue().latency.summary());
+            stats.put(entry.getKey(), keyword);
+        }
+        return stats;
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> calls = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            calls.put(entry.getKey(), entry.getValue().calls.sum());
+        }
+        return calls;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> errors = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            errors.put(entry.getKey(), entry.getValue().errors.sum());
+        }
+        return errors;
+    }
+
+    @Override
+    public Map<String, Double> getMeanMillis() {
+        return latency("mean");
+    }
+
+    @Override
+    public Map<String, Double> getP99Millis() {
+        return latency("p99");
+    }
+
+    @Override
+    public Map<String, Double> getMaxMillis() {
+        return latency("max");
+    }
+
+    private Map<String, Double> latency(String statistic) {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            values.put(entry.getKey(), (Double) entry.getValue().latency.summary().get(statistic));
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
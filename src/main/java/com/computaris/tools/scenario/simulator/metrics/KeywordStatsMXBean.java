@@ -0,0 +1,36 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link KeywordStats}, keyed by keyword name.
+ */
+public interface KeywordStatsMXBean {
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getErrors();
+
+    Map<String, Double> getMeanMillis();
+
+    Map<String, Double> getP99Millis();
+
+    Map<String, Double> getMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free log-linear latency histogram.
+ * <p>
+ * Values are recorded in microseconds into buckets of 16 linear sub-buckets per power of two (values below 32 are
+ * exact), which bounds the relative error to about 6%. Counts are striped over several arrays selected by thread id
+ * so concurrent recorders rarely share a cache line; recording never allocates nor locks. {@link #reset()} swaps the
+ * active window for a cleared spare one, as described in {@link WindowSwap}; a record racing with the swap lands in
+ * the retired window before it is summarized.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int STRIPES = stripeCount();
+    // count, sum and max of a stripe are kept after its buckets
+    private static final int STRIPE_LENGTH = BUCKETS + 3;
+
+    private final WindowSwap<Window> windows = new WindowSwap<>(new Window(), new Window(), Window::clear);
+
+    private static int stripeCount() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        return Math.min(stripes, 16);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) Math.max(micros, 0);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    /**
+     * @return the highest value falling into the bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long top = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public void record(long durationNanos) {
+        long micros = durationNanos / 1000;
+        int bucket = bucketIndex(micros);
+        WindowSwap.Slot<Window> slot = windows.enter();
+        try {
+            slot.window.record(bucket, micros);
+        } finally {
+            windows.exit(slot);
+        }
+    }
+
+    /**
+     * @return summary of the active window
+     */
+    public Map<String, Object> summary() {
+        return windows.active().summary();
+    }
+
+    /**
+     * Starts a new window.
+     *
+     * @return summary of the window which was active until now
+     */
+    public Map<String, Object> reset() {
+        return windows.swap(Window::summary);
+    }
+
+    /**
+     * Clears the active window, for owners which keep writers out themselves.
+     */
+    void clear() {
+        windows.active().clear();
+    }
+
+    private static final class Window {
+        private final AtomicLongArray counts = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+        void record(int bucket, long micros) {
+            int base = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_LENGTH;
+            counts.incrementAndGet(base + bucket);
+            counts.incrementAndGet(base + BUCKETS);
+            counts.addAndGet(base + BUCKETS + 1, micros);
+            int maxIndex = base + BUCKETS + 2;
+            long max;
+            while (micros > (max = counts.get(maxIndex)) && !counts.compareAndSet(maxIndex, max, micros)) {
+                // retry until our value is stored or a larger one is seen
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+        }
+
+        Map<String, Object> summary() {
+            long[] merged = new long[BUCKETS];
+            long count = 0;
+            long sum = 0;
+            long max = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                int base = stripe * STRIPE_LENGTH;
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    merged[bucket] += counts.get(base + bucket);
+                }
+                count += counts.get(base + BUCKETS);
+                sum += counts.get(base + BUCKETS + 1);
+                max = Math.max(max, counts.get(base + BUCKETS + 2));
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count);
+            summary.put("mean", count == 0 ? 0.0 : sum / (double) count / 1000);
+            summary.put("p50", percentile(merged, count, 0.50, max));
+            summary.put("p90", percentile(merged, count, 0.90, max));
+            summary.put("p99", percentile(merged, count, 0.99, max));
+            summary.put("p99.9", percentile(merged, count, 0.999, max));
+            summary.put("max", max / 1000.0);
+            return summary;
+        }
+    }
+
+    /**
+     * @return the quantile in milliseconds of bucket counts in microseconds, never above the recorded max
+     */
+    static double percentile(long[] buckets, long count, double quantile, long max) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(bucket), max) / 1000.0;
+            }
+        }
+        return max / 1000.0;
+    }
+}
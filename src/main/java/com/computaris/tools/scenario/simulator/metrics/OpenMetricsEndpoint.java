@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * OpenMetrics text endpoint at /metrics: session and dialog stats counters, the configured session rate, endpoint
+ * connectivity, keyword call stats and JVM memory, thread and GC stats.
+ * <p>
+ * The exposition is rendered at most once per "com.computaris.robotremote.metrics.cache-millis" (default 1000), scrapes
+ * in between are answered from the last one so they do not reach the simulator.
+ */
+public class OpenMetricsEndpoint {
+    public static final String CACHE_MILLIS_PROPERTY = "com.computaris.robotremote.metrics.cache-millis";
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private final KeywordStats keywordStats;
+    private final long cacheNanos;
+    private final Logger log;
+    private final HttpServer server;
+    private byte[] exposition;
+    private long renderedNanos;
+
+    /**
+     * @param simulatorFacade the simulator to export, null to export keyword and JVM stats only
+     */
+    public OpenMetricsEndpoint(int port, BaseSimulatorFacadeRemoteDecorator simulatorFacade, KeywordStats keywordStats, Logger log) throws IOException {
+        this.simulatorFacade = simulatorFacade;
+        this.keywordStats = keywordStats;
+        this.cacheNanos = Long.getLong(CACHE_MILLIS_PROPERTY, 1000L) * 1000000;
+        this.log = log;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(SessionExecutors.daemonThreadFactory("metrics")));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getLocalPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body;
+            try {
+                body = exposition();
+            } catch (RuntimeException e) {
+                log.warn("Cannot render metrics", e);
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            boolean head = "HEAD".equalsIgnoreCase(exchange.getRequestMethod());
+            exchange.sendResponseHeaders(200, head ? -1 : body.length);
+            if (!head) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized byte[] exposition() {
+        long now = System.nanoTime();
+        if (exposition == null || now - renderedNanos >= cacheNanos) {
+            exposition = render().getBytes(StandardCharsets.UTF_8);
+            renderedNanos = now;
+        }
+        return exposition;
+    }
+
+    String render() {
+        Exposition out = new Exposition();
+        if (simulatorFacade != null) {
+            counters(out, "scensim_session_", "Session stats counter ", simulatorFacade.getSessionStatsCounters());
+            counters(out, "scensim_dialog_", "Dialog stats counter ", simulatorFacade.getDialogStatsCounters());
+            out.family("scensim_session_rate", "gauge", "Session rate last set, sessions per second");
+            out.sample("scensim_session_rate", "", simulatorFacade.getSessionRate());
+            out.family("scensim_generating_sessions", "gauge", "1 while sessions are generated");
+            out.sample("scensim_generating_sessions", "", simulatorFacade.isGeneratingSessions() ? 1 : 0);
+            connectivity(out, simulatorFacade.getConnectivityStatusSummary());
+            metadataCache(out, simulatorFacade.getMetadataCacheStats());
+        }
+        keywords(out);
+        jvm(out);
+        return out.end();
+    }
+
+    private static void counters(Exposition out, String prefix, String help, Map<String, Number> counters) {
+        for (Map.Entry<String, Number> counter : counters.entrySet()) {
+            String name = prefix + snakeCase(counter.getKey());
+            out.family(name, "gauge", help + counter.getKey());
+            out.sample(name, "", counter.getValue().doubleValue());
+        }
+    }
+
+    /**
+     * One info sample per line of the summary, with the endpoint named at the start of the line when there is one.
+     */
+    private void connectivity(Exposition out, String summary) {
+        out.family("scensim_endpoint_connectivity", "info", "Connectivity status summary of the simulator");
+        if (summary == null) {
+            return;
+        }
+        for (String line : summary.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String endpoint = "";
+            for (String name : simulatorFacade.getEndpointNames()) {
+                if (line.startsWith(name) && name.length() > endpoint.length()) {
+                    endpoint = name;
+                }
+            }
+            out.sample("scensim_endpoint_connectivity_info", "endpoint=\"" + escape(endpoint) + "\",status=\"" + escape(line) + "\"", 1);
+        }
+    }
+
+    private static void metadataCache(Exposition out, Map<String, Object> stats) {
+        out.family("scensim_metadata_cache_hits", "counter", "Metadata calls answered from the cache");
+        out.sample("scensim_metadata_cache_hits_total", "", ((Number) stats.get("hits")).doubleValue());
+        out.family("scensim_metadata_cache_misses", "counter", "Metadata calls passed to the simulator");
+        out.sample("scensim_metadata_cache_misses_total", "", ((Number) stats.get("misses")).doubleValue());
+        out.family("scensim_metadata_cache_invalidations", "counter", "Metadata cache invalidations by configuration calls");
+        out.sample("scensim_metadata_cache_invalidations_total", "", ((Number) stats.get("invalidations")).doubleValue());
+    }
+
+    private void keywords(Exposition out) {
+        Map<String, Long> calls = keywordStats.getCalls();
+        Map<String, Long> errors = keywordStats.getErrors();
+        out.family("scensim_keyword_calls", "counter", "Keyword calls");
+        for (Map.Entry<String, Long> keyword : calls.entrySet()) {
+            out.sample("scensim_keyword_calls_total", "keyword=\"" + escape(keyword.getKey()) + "\"", keyword.getValue());
+        }
+        out.family("scensim_keyword_errors", "counter", "Keyword calls failed");
+        for (Map.Entry<String, Long> keyword : errors.entrySet()) {
+            out.sample("scensim_keyword_errors_total", "keyword=\"" + escape(keyword.getKey()) + "\"", keyword.getValue());
+        }
+    }
+
+    private static void jvm(Exposition out) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        out.family("jvm_memory_used_bytes", "gauge", "Used memory");
+        out.sample("jvm_memory_used_bytes", "area=\"heap\"", heap.getUsed());
+        out.sample("jvm_memory_used_bytes", "area=\"nonheap\"", nonHeap.getUsed());
+        out.family("jvm_memory_committed_bytes", "gauge", "Committed memory");
+        out.sample("jvm_memory_committed_bytes", "area=\"heap\"", heap.getCommitted());
+        out.sample("jvm_memory_committed_bytes", "area=\"nonheap\"", nonHeap.getCommitted());
+        out.family("jvm_memory_max_bytes", "gauge", "Maximum heap memory, -1 if undefined");
+        out.sample("jvm_memory_max_bytes", "area=\"heap\"", heap.getMax());
+        out.family("jvm_threads", "gauge", "Live threads");
+        out.sample("jvm_threads", "", ManagementFactory.getThreadMXBean().getThreadCount());
+        out.family("jvm_gc_collections", "counter", "Garbage collections");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.sample("jvm_gc_collections_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionCount()));
+        }
+        out.family("jvm_gc_collection_seconds", "counter", "Time spent in garbage collections");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.sample("jvm_gc_collection_seconds_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionTime()) / 1000.0);
+        }
+        out.family("process_uptime_seconds", "gauge", "Time since JVM start");
+        out.sample("process_uptime_seconds", "", ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    static String snakeCase(String name) {
+        StringBuilder snake = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    snake.append('_');
+                }
+                snake.append(Character.toLowerCase(c));
+            } else if (Character.isLetterOrDigit(c)) {
+                snake.append(c);
+            } else {
+                snake.append('_');
+            }
+        }
+        return snake.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Exposition {
+        private final StringBuilder text = new StringBuilder(8192);
+
+        void family(String name, String type, String help) {
+            text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            text.append("# HELP ").append(name).append(' ').append(escape(help)).append('\n');
+        }
+
+        void sample(String name, String labels, double value) {
+            text.append(name);
+            if (!labels.isEmpty()) {
+                text.append('{').append(labels).append('}');
+            }
+            text.append(' ');
+            if (value == Math.rint(value) && !Double.isInfinite(value)) {
+                text.append((long) value);
+            } else {
+                text.append(String.format(Locale.ROOT, "%s", value));
+            }
+            text.append('\n');
+        }
+
+        String end() {
+            return text.append("# EOF\n").toString();
+        }
+    }
+}
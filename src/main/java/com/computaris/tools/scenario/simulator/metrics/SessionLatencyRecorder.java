@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+import com.computaris.tools.scenario.simulator.session.SessionOutcomes;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Session durations per scenario and outcome. Histograms are created on the first session of a scenario/outcome
+ * pair in each of the two windows of the scenario, after that recording is allocation and lock free. The windows of
+ * all outcomes of a scenario are swapped together as described in {@link WindowSwap}, so a session is in the same
+ * window for its outcome and for {@value #ALL_OUTCOMES}.
+ */
+public class SessionLatencyRecorder implements SessionLifecycleBridge.Sink {
+    public static final String ALL_OUTCOMES = "ALL";
+
+    private final ConcurrentMap<String, WindowSwap<ConcurrentMap<String, LatencyHistogram>>> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void sessionEnded(Object session, String scenarioName, SessionOutcome outcome, long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+        WindowSwap<ConcurrentMap<String, LatencyHistogram>> windows = histograms.get(scenarioName);
+        if (windows == null) {
+            windows = histograms.computeIfAbsent(scenarioName, k -> new WindowSwap<>(new ConcurrentHashMap<>(),
+                    new ConcurrentHashMap<>(), byOutcome -> byOutcome.values().forEach(LatencyHistogram::clear)));
+        }
+        WindowSwap.Slot<ConcurrentMap<String, LatencyHistogram>> slot = windows.enter();
+        try {
+            histogram(slot.window, ALL_OUTCOMES).record(durationNanos);
+            histogram(slot.window, SessionOutcomes.label(outcome)).record(durationNanos);
+        } finally {
+            windows.exit(slot);
+        }
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> byOutcome, String outcome) {
+        LatencyHistogram histogram = byOutcome.get(outcome);
+        return histogram != null ? histogram : byOutcome.computeIfAbsent(outcome, k -> new LatencyHistogram());
+    }
+
+    /**
+     * @return latency summary in milliseconds per outcome of the scenario, including {@value #ALL_OUTCOMES}
+     */
+    public Map<String, Map<String, Object>> getLatency(String scenarioName) {
+        WindowSwap<ConcurrentMap<String, LatencyHistogram>> windows = histograms.get(scenarioName);
+        return windows == null ? new TreeMap<>() : summaries(windows.active());
+    }
+
+    /**
+     * Starts a new window for all outcomes of the scenario at once.
+     *
+     * @return latency summary of the closed windows
+     */
+    public Map<String, Map<String, Object>> resetLatency(String scenarioName) {
+        WindowSwap<ConcurrentMap<String, LatencyHistogram>> windows = histograms.get(scenarioName);
+        return windows == null ? new TreeMap<>() : windows.swap(SessionLatencyRecorder::summaries);
+    }
+
+    private static Map<String, Map<String, Object>> summaries(Map<String, LatencyHistogram> byOutcome) {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : byOutcome.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().summary());
+        }
+        return result;
+    }
+
+    public Iterable<String> getScenarioNames() {
+        return histograms.keySet();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+import com.computaris.tools.scenario.simulator.session.SessionOutcomes;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * SLA rules evaluated over a sliding window of the session metrics, inside the simulator.
+ * <p>
+ * Once started, ended and failed sessions (see {@link SessionOutcomes}) and session latencies are recorded by a
+ * session sink into a ring of time slots of "com.computaris.robotremote.sla.slot-millis" (default 1000), and the
+ * rejected dialogs counter is sampled once per slot. A slot holds counters and latency buckets only, an evaluation
+ * merges the complete slots of its window, so checking often is cheap. Windows are limited to
+ * "com.computaris.robotremote.sla.max-window-seconds" (default 300).
+ * <p>
+ * Rules (Properties format, only the rules given are checked): windowSeconds (default 60), maxErrorRatio,
+ * maxRejectedPerSecond, minRate (sessions per second), minRateRatio (achieved over the session rate last set),
+ * maxLatencyP50Millis, maxLatencyP90Millis, maxLatencyP99Millis, maxLatencyP999Millis.
+ */
+public class SlaMonitor implements SessionLifecycleBridge.Sink {
+    public static final String SLOT_MILLIS_PROPERTY = "com.computaris.robotremote.sla.slot-millis";
+    public static final String MAX_WINDOW_SECONDS_PROPERTY = "com.computaris.robotremote.sla.max-window-seconds";
+    public static final String PASS = "PASS";
+    public static final String FAIL = "FAIL";
+    public static final String NO_DATA = "NO_DATA";
+
+    private static final Set<String> RULES = new LinkedHashSet<>(Arrays.asList("windowSeconds", "maxErrorRatio", "maxRejectedPerSecond",
+            "minRate", "minRateRatio", "maxLatencyP50Millis", "maxLatencyP90Millis", "maxLatencyP99Millis", "maxLatencyP999Millis"));
+
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private final SessionLifecycleBridge sessionLifecycleBridge;
+    private final Logger log;
+    private final long slotMillis;
+    private final Slot[] slots;
+    private ScheduledExecutorService sampler;
+    private volatile long startMillis;
+    private long lastRejected;
+
+    public SlaMonitor(BaseSimulatorFacadeRemoteDecorator simulatorFacade, SessionLifecycleBridge sessionLifecycleBridge, Logger log) {
+        this.simulatorFacade = simulatorFacade;
+        this.sessionLifecycleBridge = sessionLifecycleBridge;
+        this.log = log;
+        this.slotMillis = Math.max(1, Long.getLong(SLOT_MILLIS_PROPERTY, 1000L));
+        long maxWindowMillis = TimeUnit.SECONDS.toMillis(Long.getLong(MAX_WINDOW_SECONDS_PROPERTY, 300L));
+        this.slots = new Slot[(int) (maxWindowMillis / slotMillis) + 2];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Starts recording, unless already started.
+     */
+    public synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        lastRejected = SnapshotCounters.get(simulatorFacade.getDialogStatsCounters(), SnapshotCounters.DIALOGS_REJECTED);
+        startMillis = System.currentTimeMillis();
+        sessionLifecycleBridge.addSink(this);
+        sampler = Executors.newSingleThreadScheduledExecutor(SessionExecutors.daemonThreadFactory("sla-monitor"));
+        sampler.scheduleAtFixedRate(this::sampleRejected, slotMillis, slotMillis, TimeUnit.MILLISECONDS);
+        log.info("SLA monitor started, slots of " + slotMillis + " ms");
+    }
+
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+            sessionLifecycleBridge.removeSink(this);
+            log.info("SLA monitor stopped");
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return sampler != null;
+    }
+
+    @Override
+    public void sessionEnded(Object session, String scenarioName, SessionOutcome outcome, long durationNanos) {
+        Slot slot = slot(System.currentTimeMillis() / slotMillis);
+        if (slot == null) {
+            return;
+        }
+        slot.ended.incrementAndGet();
+        if (!SessionOutcomes.isSuccessful(outcome)) {
+            slot.failed.incrementAndGet();
+        }
+        if (durationNanos >= 0) {
+            long micros = durationNanos / 1000;
+            slot.buckets.incrementAndGet(LatencyHistogram.bucketIndex(micros));
+            slot.latencyCount.incrementAndGet();
+            slot.latencySumMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = slot.maxMicros.get()) && !slot.maxMicros.compareAndSet(max, micros)) {
+                // retry until our value is stored or a larger one is seen
+            }
+        }
+    }
+
+    private void sampleRejected() {
+        try {
+            long rejected = SnapshotCounters.get(simulatorFacade.getDialogStatsCounters(), SnapshotCounters.DIALOGS_REJECTED);
+            // stats reset in between: count what was rejected since
+            long delta = rejected >= lastRejected ? rejected - lastRejected : rejected;
+            lastRejected = rejected;
+            // the delta accumulated during the slot that just ended
+            Slot slot = slot(System.currentTimeMillis() / slotMillis - 1);
+            if (slot != null) {
+                slot.rejected.addAndGet(delta);
+            }
+        } catch (RuntimeException e) {
+            log.warn("SLA monitor cannot sample the dialog stats", e);
+        }
+    }
+
+    /**
+     * @return the slot of the period, cleared when first used for it, null if the period is no longer kept
+     */
+    private Slot slot(long period) {
+        Slot slot = slots[(int) (period % slots.length)];
+        if (slot.period != period) {
+            synchronized (slot) {
+                if (slot.period > period) {
+                    return null;
+                }
+                if (slot.period != period) {
+                    slot.clear();
+                    slot.period = period;
+                }
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Evaluates the rules over the complete slots of the window, starting the monitor if needed.
+     *
+     * @return status ({@value #PASS}, {@value #FAIL} or {@value #NO_DATA} before a complete slot was recorded),
+     *         coveredSeconds, measurements and the violations with rule, limit and measured value
+     */
+    public Map<String, Object> evaluate(Properties rules) {
+        for (String rule : rules.stringPropertyNames()) {
+            if (!RULES.contains(rule)) {
+                throw new IllegalArgumentException("Unknown SLA rule: " + rule + ", expected one of " + RULES);
+            }
+        }
+        long windowMillis = (long) (Double.parseDouble(rules.getProperty("windowSeconds", "60")) * 1000);
+        long windowSlots = Math.max(1, (windowMillis + slotMillis - 1) / slotMillis);
+        if (windowSlots > slots.length - 2) {
+            throw new IllegalArgumentException("SLA window above " + MAX_WINDOW_SECONDS_PROPERTY + ": " + rules.getProperty("windowSeconds"));
+        }
+        start();
+
+        long current = System.currentTimeMillis() / slotMillis;
+        long first = Math.max(current - windowSlots, startMillis / slotMillis);
+        long ended = 0;
+        long failed = 0;
+        long rejected = 0;
+        long latencyCount = 0;
+        long latencySum = 0;
+        long maxMicros = 0;
+        long[] buckets = new long[LatencyHistogram.BUCKETS];
+        for (long period = first; period < current; period++) {
+            Slot slot = slots[(int) (period % slots.length)];
+            synchronized (slot) {
+                if (slot.period != period) {
+                    continue;
+                }
+            }
+            ended += slot.ended.get();
+            failed += slot.failed.get();
+            rejected += slot.rejected.get();
+            latencyCount += slot.latencyCount.get();
+            latencySum += slot.latencySumMicros.get();
+            maxMicros = Math.max(maxMicros, slot.maxMicros.get());
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                buckets[bucket] += slot.buckets.get(bucket);
+            }
+        }
+        double seconds = Math.max(0, current * slotMillis - Math.max(first * slotMillis, startMillis)) / 1000.0;
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("count", latencyCount);
+        latency.put("mean", latencyCount == 0 ? 0.0 : latencySum / (double) latencyCount / 1000);
+        latency.put("p50", LatencyHistogram.percentile(buckets, latencyCount, 0.50, maxMicros));
+        latency.put("p90", LatencyHistogram.percentile(buckets, latencyCount, 0.90, maxMicros));
+        latency.put("p99", LatencyHistogram.percentile(buckets, latencyCount, 0.99, maxMicros));
+        latency.put("p99.9", LatencyHistogram.percentile(buckets, latencyCount, 0.999, maxMicros));
+        latency.put("max", maxMicros / 1000.0);
+
+        Map<String, Object> measurements = new LinkedHashMap<>();
+        double errorRatio = ended == 0 ? 0.0 : failed / (double) ended;
+        double achievedRate = seconds == 0 ? 0.0 : ended / seconds;
+        double targetRate = simulatorFacade.getSessionRate();
+        double rejectedPerSecond = seconds == 0 ? 0.0 : rejected / seconds;
+        measurements.put("sessions", ended);
+        measurements.put("failed", failed);
+        measurements.put("errorRatio", errorRatio);
+        measurements.put("achievedRate", achievedRate);
+        measurements.put("targetRate", targetRate);
+        measurements.put("rejectedDialogs", rejected);
+        measurements.put("rejectedPerSecond", rejectedPerSecond);
+        measurements.put("latencyMillis", latency);
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        checkMax(rules, "maxErrorRatio", errorRatio, violations);
+        checkMax(rules, "maxRejectedPerSecond", rejectedPerSecond, violations);
+        checkMin(rules, "minRate", achievedRate, violations);
+        if (rules.getProperty("minRateRatio") != null && targetRate > 0) {
+            checkMin(rules, "minRateRatio", achievedRate / targetRate, violations);
+        }
+        checkMax(rules, "maxLatencyP50Millis", (Double) latency.get("p50"), violations);
+        checkMax(rules, "maxLatencyP90Millis", (Double) latency.get("p90"), violations);
+        checkMax(rules, "maxLatencyP99Millis", (Double) latency.get("p99"), violations);
+        checkMax(rules, "maxLatencyP999Millis", (Double) latency.get("p99.9"), violations);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", seconds == 0 ? NO_DATA : violations.isEmpty() ? PASS : FAIL);
+        result.put("coveredSeconds", seconds);
+        result.put("measurements", measurements);
+        result.put("violations", violations);
+        return result;
+    }
+
+    private static void checkMax(Properties rules, String rule, double measured, List<Map<String, Object>> violations) {
+        String limit = rules.getProperty(rule);
+        if (limit != null && measured > Double.parseDouble(limit)) {
+            violations.add(violation(rule, Double.parseDouble(limit), measured));
+        }
+    }
+
+    private static void checkMin(Properties rules, String rule, double measured, List<Map<String, Object>> violations) {
+        String limit = rules.getProperty(rule);
+        if (limit != null && measured < Double.parseDouble(limit)) {
+            violations.add(violation(rule, Double.parseDouble(limit), measured));
+        }
+    }
+
+    private static Map<String, Object> violation(String rule, double limit, double measured) {
+        Map<String, Object> violation = new LinkedHashMap<>();
+        violation.put("rule", rule);
+        violation.put("limit", limit);
+        violation.put("measured", measured);
+        return violation;
+    }
+
+    private static final class Slot {
+        private volatile long period = -1;
+        private final AtomicLong ended = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong latencyCount = new AtomicLong();
+        private final AtomicLong latencySumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogram.BUCKETS);
+
+        void clear() {
+            ended.set(0);
+            failed.set(0);
+            rejected.set(0);
+            latencyCount.set(0);
+            latencySumMicros.set(0);
+            maxMicros.set(0);
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numeric view of the simulator stats snapshots.
+ * <p>
+ * Every public no-argument getter of a snapshot returning a number becomes a counter named after the getter without
+ * its "get" prefix, e.g. getNonMatchingSessionsCount() is "nonMatchingSessionsCount". Views of several snapshots
+ * (shards, nodes) are merged by summing counters of the same name.
+ * <p>
+ * Most values only grow until the stats are reset. Those measuring a current level (active sessions, rates) are
+ * gauges, recognized by a word of their name such as "active", "current" or "rate", or listed in
+ * {@value #GAUGES_PROPERTY}; differences between views are meaningless for them.
+ */
+public final class SnapshotCounters {
+    public static final String NON_MATCHING_SESSIONS = "nonMatchingSessionsCount";
+    public static final String DIALOGS_REJECTED = "dialogsRejected";
+    public static final String GAUGES_PROPERTY = "com.computaris.robotremote.gauge-counters";
+
+    private static final Set<String> GAUGE_WORDS = new HashSet<>(Arrays.asList("active", "current", "concurrent",
+            "running", "pending", "outstanding", "open", "progress", "rate", "size", "level"));
+    private static final Set<String> GAUGES = new HashSet<>();
+
+    static {
+        for (String name : System.getProperty(GAUGES_PROPERTY, "").split(",")) {
+            if (!name.trim().isEmpty()) {
+                GAUGES.add(name.trim());
+            }
+        }
+    }
+
+    private static final Map<Class<?>, List<Method>> GETTERS = new ConcurrentHashMap<>();
+
+    private SnapshotCounters() {
+    }
+
+    public static Map<String, Number> of(Object snapshot) {
+        if (snapshot == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Number> counters = new TreeMap<>();
+        for (Method getter : getters(snapshot.getClass())) {
+            try {
+                Object value = getter.invoke(snapshot);
+                if (value instanceof Number) {
+                    counters.put(counterName(getter), (Number) value);
+                }
+            } catch (ReflectiveOperationException e) {
+                // not readable, leave it out
+            }
+        }
+        return counters;
+    }
+
+    public static Map<String, Number> merge(Iterable<Map<String, Number>> views) {
+        Map<String, Number> merged = new TreeMap<>();
+        for (Map<String, Number> view : views) {
+            for (Map.Entry<String, Number> counter : view.entrySet()) {
+                merged.put(counter.getKey(), add(merged.get(counter.getKey()), counter.getValue()));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return counter of the view as a long, 0 if the view does not have it
+     */
+    public static long get(Map<String, Number> view, String name) {
+        Number value = view.get(name);
+        return value == null ? 0 : value.longValue();
+    }
+
+    /**
+     * @return whether the counter is a gauge rather than a count growing until reset
+     */
+    public static boolean isGauge(String name) {
+        if (GAUGES.contains(name)) {
+            return true;
+        }
+        for (String word : name.split("(?=\\p{Upper})|[^\\p{Alnum}]+")) {
+            if (GAUGE_WORDS.contains(word.toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return current minus previous for every counter of current
+     */
+    public static Map<String, Number> delta(Map<String, Number> current, Map<String, Number> previous) {
+        Map<String, Number> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, Number> counter : current.entrySet()) {
+            Number before = previous.get(counter.getKey());
+            delta.put(counter.getKey(), before == null ? counter.getValue() : subtract(counter.getValue(), before));
+        }
+        return delta;
+    }
+
+    private static Number add(Number a, Number b) {
+        if (a == null) {
+            return b;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            return a.longValue() + b.longValue();
+        }
+        return a.doubleValue() + b.doubleValue();
+    }
+
+    private static Number subtract(Number a, Number b) {
+        if (isIntegral(a) && isIntegral(b)) {
+            return a.longValue() - b.longValue();
+        }
+        return a.doubleValue() - b.doubleValue();
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    private static List<Method> getters(Class<?> type) {
+        List<Method> getters = GETTERS.get(type);
+        if (getters == null) {
+            getters = new ArrayList<>();
+            for (Method method : type.getMethods()) {
+                Class<?> returnType = method.getReturnType();
+                boolean numeric = (returnType.isPrimitive() && returnType != boolean.class && returnType != void.class && returnType != char.class)
+                        || Number.class.isAssignableFrom(returnType);
+                if (numeric && method.getParameterTypes().length == 0 && method.getName().startsWith("get")
+                        && !Modifier.isStatic(method.getModifiers()) && method.getDeclaringClass() != Object.class) {
+                    getters.add(method);
+                }
+            }
+            GETTERS.put(type, getters);
+        }
+        return getters;
+    }
+
+    private static String counterName(Method getter) {
+        String name = getter.getName().substring(3);
+        return name.isEmpty() ? name : Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
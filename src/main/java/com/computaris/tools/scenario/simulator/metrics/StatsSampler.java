@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+
+/**
+ * Samples the session and dialog stats at a fixed interval into a ring buffer of the last capacity intervals.
+ * <p>
+ * Every sample keeps the counter values, their delta against the previous sample and the delta per second. Clients
+ * watching a run ask for the samples after the last timestamp they have seen, so any number of them costs one pair
+ * of snapshots per interval. A counter going down (stats reset) counts from zero again.
+ */
+public class StatsSampler {
+    public static final String SESSION_STATS = "sessionStats";
+    public static final String DIALOG_STATS = "dialogStats";
+
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private final Logger log;
+
+    private ScheduledExecutorService scheduler;
+    private long intervalMillis;
+    private int capacity;
+    private long[] timestamps;
+    private long[] elapsedMillis;
+    private Series sessionSeries;
+    private Series dialogSeries;
+    private long written;
+    private long lastSampleNanos;
+    private int generation;
+
+    public StatsSampler(BaseSimulatorFacadeRemoteDecorator simulatorFacade, Logger log) {
+        this.simulatorFacade = simulatorFacade;
+        this.log = log;
+    }
+
+    /**
+     * Starts sampling, dropping the samples of a previous run.
+     */
+    public synchronized void start(long intervalMillis, int capacity) {
+        if (intervalMillis <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Interval and capacity must be positive");
+        }
+        stop();
+        this.intervalMillis = intervalMillis;
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.elapsedMillis = new long[capacity];
+        this.sessionSeries = new Series(capacity);
+        this.dialogSeries = new Series(capacity);
+        this.written = 0;
+        this.lastSampleNanos = 0;
+        scheduler = Executors.newSingleThreadScheduledExecutor(SessionExecutors.daemonThreadFactory("stats-sampler"));
+        final int sampling = ++generation;
+        scheduler.scheduleAtFixedRate(() -> sampleSafely(sampling), 0, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Sampling stats every " + intervalMillis + " ms, keeping " + capacity + " samples");
+    }
+
+    /**
+     * Stops sampling, the samples taken stay readable.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private void sampleSafely(int sampling) {
+        try {
+            sample(sampling);
+        } catch (RuntimeException e) {
+            log.warn("Stats sample failed", e);
+        }
+    }
+
+    private void sample(int sampling) {
+        Map<String, Number> session = simulatorFacade.getSessionStatsCounters();
+        Map<String, Number> dialog = simulatorFacade.getDialogStatsCounters();
+        long now = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        synchronized (this) {
+            if (scheduler == null || sampling != generation) {
+                return;
+            }
+            int slot = (int) (written % capacity);
+            long elapsed = lastSampleNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - lastSampleNanos);
+            int previous = written == 0 ? -1 : (int) ((written - 1) % capacity);
+            timestamps[slot] = timestamp;
+            elapsedMillis[slot] = elapsed;
+            sessionSeries.record(slot, previous, session, elapsed);
+            dialogSeries.record(slot, previous, dialog, elapsed);
+            lastSampleNanos = now;
+            written++;
+        }
+    }
+
+    /**
+     * @return samples taken after sinceTimestamp (epoch millis, 0 for all kept samples), oldest first, with
+     *         the sampler state; latestTimestamp is the value to pass on the next call
+     */
+    public synchronized Map<String, Object> getSamples(long sinceTimestamp) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Map<String, Object>> samples = new ArrayList<>();
+        long latest = sinceTimestamp;
+        for (long seq = Math.max(0, written - capacity); seq < written; seq++) {
+            int slot = (int) (seq % capacity);
+            if (timestamps[slot] <= sinceTimestamp) {
+                continue;
+            }
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("timestamp", timestamps[slot]);
+            sample.put("elapsedMillis", elapsedMillis[slot]);
+            sample.put(SESSION_STATS, sessionSeries.get(slot));
+            sample.put(DIALOG_STATS, dialogSeries.get(slot));
+            samples.add(sample);
+            latest = timestamps[slot];
+        }
+        result.put("running", scheduler != null);
+        result.put("intervalMillis", intervalMillis);
+        result.put("latestTimestamp", latest);
+        result.put("samples", samples);
+        return result;
+    }
+
+    /**
+     * Counter columns of one kind of stats. The column names are taken from the first sample, the arrays are
+     * allocated once so sampling only allocates the snapshots themselves.
+     */
+    private static final class Series {
+        private final int capacity;
+        private String[] names;
+        private double[][] values;
+        private double[][] deltas;
+        private double[][] rates;
+
+        Series(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void record(int slot, int previous, Map<String, Number> counters, long elapsedMillis) {
+            if (names == null) {
+                names = counters.keySet().toArray(new String[0]);
+                values = new double[capacity][names.length];
+                deltas = new double[capacity][names.length];
+                rates = new double[capacity][names.length];
+            }
+            for (int i = 0; i < names.length; i++) {
+                Number counter = counters.get(names[i]);
+                double value = counter == null ? 0 : counter.doubleValue();
+                double delta = 0;
+                if (previous >= 0) {
+                    double before = values[previous][i];
+                    delta = value >= before ? value - before : value;
+                }
+                values[slot][i] = value;
+                deltas[slot][i] = delta;
+                rates[slot][i] = elapsedMillis > 0 ? delta * 1000 / elapsedMillis : 0;
+            }
+        }
+
+        Map<String, Map<String, Double>> get(int slot) {
+            Map<String, Map<String, Double>> counters = new LinkedHashMap<>();
+            if (names == null) {
+                return counters;
+            }
+            for (int i = 0; i < names.length; i++) {
+                Map<String, Double> counter = new LinkedHashMap<>();
+                counter.put("value", values[slot][i]);
+                counter.put("delta", deltas[slot][i]);
+                counter.put("rate", rates[slot][i]);
+                counters.put(names[i], counter);
+            }
+            return counters;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+
+/**
+ * Stats resets per client. Resetting a scope records the current session and dialog counters as its baseline
+ * instead of resetting the simulator, and the scope's stats are the counters minus that baseline, so a client
+ * resetting its stats does not clear those of the others. Gauges (see {@link SnapshotCounters#isGauge(String)}) are
+ * reported as they are.
+ * <p>
+ * The counters stay those of the whole simulator: sessions of other clients running meanwhile are counted in every
+ * scope. A scope never reset has the simulator's counters.
+ */
+public class StatsScopes {
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private final ConcurrentMap<String, Baseline> baselines = new ConcurrentHashMap<>();
+
+    public StatsScopes(BaseSimulatorFacadeRemoteDecorator simulatorFacade) {
+        this.simulatorFacade = simulatorFacade;
+    }
+
+    public void reset(String scope) {
+        baselines.put(scope, new Baseline(simulatorFacade.getSessionStatsCounters(), simulatorFacade.getDialogStatsCounters()));
+    }
+
+    public void close(String scope) {
+        baselines.remove(scope);
+    }
+
+    public Map<String, Number> getSessionStats(String scope) {
+        Baseline baseline = baselines.get(scope);
+        return since(simulatorFacade.getSessionStatsCounters(), baseline == null ? null : baseline.sessionStats);
+    }
+
+    public Map<String, Number> getDialogStats(String scope) {
+        Baseline baseline = baselines.get(scope);
+        return since(simulatorFacade.getDialogStatsCounters(), baseline == null ? null : baseline.dialogStats);
+    }
+
+    /**
+     * A counter below its baseline was reset in the simulator since, it counts from zero again.
+     */
+    private static Map<String, Number> since(Map<String, Number> current, Map<String, Number> baseline) {
+        if (baseline == null) {
+            return current;
+        }
+        Map<String, Number> delta = SnapshotCounters.delta(current, baseline);
+        for (Map.Entry<String, Number> counter : delta.entrySet()) {
+            if (SnapshotCounters.isGauge(counter.getKey()) || counter.getValue().doubleValue() < 0) {
+                counter.setValue(current.get(counter.getKey()));
+            }
+        }
+        return delta;
+    }
+
+    private static final class Baseline {
+        private final Map<String, Number> sessionStats;
+        private final Map<String, Number> dialogStats;
+
+        Baseline(Map<String, Number> sessionStats, Map<String, Number> dialogStats) {
+            this.sessionStats = sessionStats;
+            this.dialogStats = dialogStats;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Two windows written lock free by many threads, one active and one spare, swapped by a reader.
+ * <p>
+ * A writer announces itself on a per thread stripe of the window it enters and checks the window is still active,
+ * so once the reader has swapped the windows it can wait for the writers left in the retired one, read it
+ * consistently and clear it to become the next spare. Entering and exiting never allocate.
+ */
+final class WindowSwap<W> {
+    private static final int STRIPES = 16;
+    // one counter per cache line
+    private static final int STRIPE_PADDING = 16;
+
+    private final AtomicReference<Slot<W>> current;
+    private final Consumer<W> clear;
+    private Slot<W> spare;
+
+    WindowSwap(W active, W spare, Consumer<W> clear) {
+        this.current = new AtomicReference<>(new Slot<>(active));
+        this.spare = new Slot<>(spare);
+        this.clear = clear;
+    }
+
+    /**
+     * @return the slot of the active window, to be exited once written
+     */
+    Slot<W> enter() {
+        int stripe = stripe();
+        while (true) {
+            Slot<W> slot = current.get();
+            slot.writers.incrementAndGet(stripe);
+            if (slot == current.get()) {
+                return slot;
+            }
+            // swapped meanwhile, the reader may already have read the slot
+            slot.writers.decrementAndGet(stripe);
+        }
+    }
+
+    void exit(Slot<W> slot) {
+        slot.writers.decrementAndGet(stripe());
+    }
+
+    /**
+     * @return the active window, for reads which may miss writes in progress
+     */
+    W active() {
+        return current.get().window;
+    }
+
+    /**
+     * Activates the spare window and reads the retired one once its writers are done, then clears it.
+     *
+     * @return what the reader returned
+     */
+    synchronized <R> R swap(Function<W, R> reader) {
+        Slot<W> retired = current.getAndSet(spare);
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            while (retired.writers.get(stripe * STRIPE_PADDING) != 0) {
+                Thread.yield();
+            }
+        }
+        try {
+            return reader.apply(retired.window);
+        } finally {
+            clear.accept(retired.window);
+            spare = retired;
+        }
+    }
+
+    private static int stripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_PADDING;
+    }
+
+    static final class Slot<W> {
+        final W window;
+        private final AtomicLongArray writers = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+
+        private Slot(W window) {
+            this.window = window;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.payload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
+
+import com.computaris.tools.scenario.simulator.cache.ContentDigest;
+
+/**
+ * Keyword payloads (scenarios, data sets, configuration files) in one of the supported encodings:
+ * <ul>
+ * <li>{@value #ENCODING_PLAIN}: text, as the keywords always took it</li>
+ * <li>{@value #ENCODING_BASE64}: base64 encoded bytes</li>
+ * <li>{@value #ENCODING_GZIP}: base64 encoded gzip</li>
+ * </ul>
+ * Payloads are decoded as a stream straight into the target file, without the decoded text in memory.
+ */
+public final class Payloads {
+    public static final String ENCODING_PLAIN = "plain";
+    public static final String ENCODING_BASE64 = "base64";
+    public static final String ENCODING_GZIP = "gzip";
+
+    private Payloads() {
+    }
+
+    /**
+     * @return the decoded payload bytes
+     */
+    public static InputStream open(String payload, String encoding) throws IOException {
+        if (ENCODING_PLAIN.equalsIgnoreCase(encoding)) {
+            return new CharSequenceInputStream(payload, Charset.defaultCharset());
+        } else if (ENCODING_BASE64.equalsIgnoreCase(encoding)) {
+            return base64(payload);
+        } else if (ENCODING_GZIP.equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(base64(payload), 64 * 1024);
+        }
+        throw new IllegalArgumentException("Unsupported payload encoding: " + encoding);
+    }
+
+    private static InputStream base64(String payload) {
+        return Base64.getMimeDecoder().wrap(new CharSequenceInputStream(payload, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes the payload into the file.
+     *
+     * @return SHA-256 of the decoded payload
+     */
+    public static String decode(String payload, String encoding, File target) throws IOException {
+        MessageDigest digest = ContentDigest.newDigest();
+        try (InputStream in = open(payload, encoding);
+             OutputStream out = new DigestOutputStream(Files.newOutputStream(target.toPath()), digest)) {
+            IOUtils.copy(in, out, 64 * 1024);
+        }
+        return ContentDigest.toHex(digest.digest());
+    }
+}
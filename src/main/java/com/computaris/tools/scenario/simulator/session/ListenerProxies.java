@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Helpers for simulator listeners implemented as dynamic proxies.
+ */
+final class ListenerProxies {
+
+    private ListenerProxies() {
+    }
+
+    static <T> T newProxy(Class<T> listenerType, InvocationHandler handler) {
+        return listenerType.cast(Proxy.newProxyInstance(listenerType.getClassLoader(), new Class<?>[]{listenerType}, handler));
+    }
+
+    static boolean isObjectMethod(Method method) {
+        return method.getDeclaringClass() == Object.class;
+    }
+
+    static Object invokeObjectMethod(Object proxy, Method method, Object[] args, String name) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return name;
+        }
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == void.class || !type.isPrimitive()) {
+            return null;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the first argument which is neither a String nor of the excluded type, or the first argument
+     */
+    static Object sessionArgument(Object[] args, Class<?> excluded) {
+        for (Object arg : args) {
+            if (arg != null && !(arg instanceof String) && !excluded.isInstance(arg)) {
+                return arg;
+            }
+        }
+        return args[0];
+    }
+}
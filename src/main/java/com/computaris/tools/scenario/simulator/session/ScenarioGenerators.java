@@ -0,0 +1,332 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.metrics.LatencyHistogram;
+import com.opencloud.tools.scenario.simulator.management.SimulatorException;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Session generators per initiating scenario, each with its own rate, ramp and start/stop, independent of the
+ * simulator's global generator and preferred scenario weights.
+ * <p>
+ * One timer ticks every "com.computaris.robotremote.scenario-generators.tick-millis" (default 10) for all
+ * generators. On each tick a generator earns its rate times the time since the previous tick in session credit and
+ * starts a session per whole credit, so fractional rates and tick jitter even out. Credit is capped at one second
+ * worth of sessions after a stall; it is only touched by the timer thread, stopping a generator asks that thread to
+ * clear it. At most "com.computaris.robotremote.scenario-generators.max-in-flight" (default
+ * 1000) sessions of a scenario run at once; a session due above that is dropped and counted.
+ */
+public class ScenarioGenerators {
+    public static final String TICK_MILLIS_PROPERTY = "com.computaris.robotremote.scenario-generators.tick-millis";
+    public static final String MAX_IN_FLIGHT_PROPERTY = "com.computaris.robotremote.scenario-generators.max-in-flight";
+
+    private final SimulatorFacade simulatorFacade;
+    private final ExecutorService executor;
+    private final Logger log;
+    private final long tickMillis;
+    private final int maxInFlight;
+    private final ConcurrentMap<String, Generator> generators = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+    private long lastTickNanos;
+
+    public ScenarioGenerators(SimulatorFacade simulatorFacade, ExecutorService executor, Logger log) {
+        this.simulatorFacade = simulatorFacade;
+        this.executor = executor;
+        this.log = log;
+        this.tickMillis = Math.max(1, Long.getLong(TICK_MILLIS_PROPERTY, 10L));
+        this.maxInFlight = Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, 1000);
+    }
+
+    public void setRate(String scenarioName, double rate) {
+        checkRate(rate);
+        generator(scenarioName).setRate(rate);
+        log.info("Scenario " + scenarioName + " rate set to " + rate);
+    }
+
+    public void rampRate(String scenarioName, double initialRate, double targetRate, int periodSeconds) {
+        checkRate(initialRate);
+        checkRate(targetRate);
+        generator(scenarioName).ramp(initialRate, targetRate, TimeUnit.SECONDS.toNanos(Math.max(0, periodSeconds)));
+        log.info("Scenario " + scenarioName + " rate ramping from " + initialRate + " to " + targetRate + " in " + periodSeconds + " s");
+    }
+
+    private static void checkRate(double rate) {
+        if (rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid session rate: " + rate);
+        }
+    }
+
+    public synchronized void start(String scenarioName) {
+        generator(scenarioName).running = true;
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(SessionExecutors.daemonThreadFactory("scenario-generators"));
+            lastTickNanos = System.nanoTime();
+            timer.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+        log.info("Scenario " + scenarioName + " generator started");
+    }
+
+    /**
+     * Stops starting sessions of the scenario, the running ones complete.
+     */
+    public void stop(String scenarioName) {
+        Generator generator = generators.get(scenarioName);
+        if (generator != null) {
+            generator.stop();
+            log.info("Scenario " + scenarioName + " generator stopped");
+        }
+    }
+
+    public void stopAll() {
+        for (String scenarioName : generators.keySet()) {
+            stop(scenarioName);
+        }
+    }
+
+    /**
+     * Stops and forgets the generator of a removed scenario, with its rate and stats.
+     */
+    public void remove(String scenarioName) {
+        Generator generator = generators.remove(scenarioName);
+        if (generator != null) {
+            generator.stop();
+            log.info("Scenario " + scenarioName + " generator removed");
+        }
+    }
+
+    /**
+     * Stops all generators and the timer, which a later {@link #start(String)} creates again.
+     */
+    public synchronized void shutdown() {
+        stopAll();
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private Generator generator(String scenarioName) {
+        Generator generator = generators.get(scenarioName);
+        if (generator == null) {
+            if (!simulatorFacade.getInitiatingScenarioNames().contains(scenarioName)) {
+                throw new IllegalArgumentException("Not an initiating scenario: " + scenarioName);
+            }
+            Generator created = new Generator(scenarioName);
+            generator = generators.putIfAbsent(scenarioName, created);
+            if (generator == null) {
+                generator = created;
+            }
+        }
+        return generator;
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        double seconds = (now - lastTickNanos) / 1e9;
+        lastTickNanos = now;
+        for (Generator generator : generators.values()) {
+            if (generator.running) {
+                try {
+                    generator.tick(now, seconds);
+                } catch (RuntimeException e) {
+                    log.warn("Scenario " + generator.scenarioName + " generator tick failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return rate (current), targetRate, running and inFlight per scenario
+     */
+    public Map<String, Map<String, Object>> getRates() {
+        long now = System.nanoTime();
+        Map<String, Map<String, Object>> rates = new TreeMap<>();
+        for (Generator generator : generators.values()) {
+            Map<String, Object> rate = new LinkedHashMap<>();
+            rate.put("rate", generator.rateAt(now));
+            rate.put("targetRate", generator.targetRate);
+            rate.put("running", generator.running);
+            rate.put("inFlight", generator.inFlight.get());
+            rates.put(generator.scenarioName, rate);
+        }
+        return rates;
+    }
+
+    /**
+     * @return started, successful, failed, dropped, inFlight, outcomes (count per outcome) and latencyMillis of the
+     *         sessions started by the generator of each scenario, or of the given one
+     */
+    public Map<String, Map<String, Object>> getStats(String scenarioName) {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        for (Generator generator : generators.values()) {
+            if (scenarioName == null || scenarioName.isEmpty() || scenarioName.equals(generator.scenarioName)) {
+                stats.put(generator.scenarioName, generator.stats());
+            }
+        }
+        return stats;
+    }
+
+    public void resetStats(String scenarioName) {
+        for (Generator generator : generators.values()) {
+            if (scenarioName == null || scenarioName.isEmpty() || scenarioName.equals(generator.scenarioName)) {
+                generator.resetStats();
+            }
+        }
+    }
+
+    private final class Generator {
+        private final String scenarioName;
+        private volatile boolean running;
+        private volatile double initialRate;
+        private volatile double targetRate;
+        private volatile long rampStartNanos;
+        private volatile long rampNanos;
+        // session credit, only touched by the timer thread
+        private double credit;
+        private volatile boolean clearCredit;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile Counters counters = new Counters();
+
+        Generator(String scenarioName) {
+            this.scenarioName = scenarioName;
+        }
+
+        synchronized void setRate(double rate) {
+            ramp(rate, rate, 0);
+        }
+
+        synchronized void ramp(double from, double to, long periodNanos) {
+            initialRate = from;
+            targetRate = to;
+            rampNanos = periodNanos;
+            rampStartNanos = System.nanoTime();
+        }
+
+        double rateAt(long now) {
+            long elapsed = now - rampStartNanos;
+            if (rampNanos <= 0 || elapsed >= rampNanos) {
+                return targetRate;
+            }
+            return initialRate + (targetRate - initialRate) * elapsed / (double) rampNanos;
+        }
+
+        void stop() {
+            running = false;
+            clearCredit = true;
+        }
+
+        void tick(long now, double seconds) {
+            if (clearCredit) {
+                clearCredit = false;
+                credit = 0;
+            }
+            double rate = rateAt(now);
+            credit = Math.min(credit + rate * seconds, Math.max(1, rate));
+            Counters current = counters;
+            while (credit >= 1) {
+                credit -= 1;
+                if (inFlight.get() >= maxInFlight) {
+                    current.dropped.increment();
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                current.started.increment();
+                try {
+                    executor.execute(() -> runSession(current));
+                } catch (RejectedExecutionException e) {
+                    inFlight.decrementAndGet();
+                    current.dropped.increment();
+                }
+            }
+        }
+
+        private void runSession(Counters current) {
+            long start = System.nanoTime();
+            String label;
+            try {
+                SessionOutcome outcome = simulatorFacade.runSession(scenarioName, null);
+                label = SessionOutcomes.label(outcome);
+            } catch (SimulatorException | RuntimeException e) {
+                label = e.getClass().getSimpleName();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            current.latency.record(System.nanoTime() - start);
+            if (SessionOutcomes.isSuccessful(label)) {
+                current.successful.increment();
+            } else {
+                current.failed.increment();
+            }
+            LongAdder outcome = current.outcomes.get(label);
+            if (outcome == null) {
+                LongAdder created = new LongAdder();
+                outcome = current.outcomes.putIfAbsent(label, created);
+                if (outcome == null) {
+                    outcome = created;
+                }
+            }
+            outcome.increment();
+        }
+
+        void resetStats() {
+            counters = new Counters();
+        }
+
+        Map<String, Object> stats() {
+            Counters current = counters;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("started", current.started.sum());
+            stats.put("successful", current.successful.sum());
+            stats.put("failed", current.failed.sum());
+            stats.put("dropped", current.dropped.sum());
+            stats.put("inFlight", inFlight.get());
+            Map<String, Long> outcomes = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> outcome : current.outcomes.entrySet()) {
+                outcomes.put(outcome.getKey(), outcome.getValue().sum());
+            }
+            stats.put("outcomes", outcomes);
+            stats.put("latencyMillis", current.latency.summary());
+            return stats;
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder started = new LongAdder();
+        private final LongAdder successful = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Runs a batch of sessions of one scenario with bounded concurrency and aggregates the results.
+ * Session and dialog stats are left untouched. Interrupting the caller, as cancelling an async job does, stops
+ * starting sessions and interrupts the running ones.
+ */
+public class SessionBatchRunner {
+    private static final int MAX_FAILURE_SAMPLES = 10;
+
+    private final SimulatorFacade simulatorFacade;
+    private final ExecutorService executor;
+
+    public SessionBatchRunner(SimulatorFacade simulatorFacade, ExecutorService executor) {
+        this.simulatorFacade = simulatorFacade;
+        this.executor = executor;
+    }
+
+    /**
+     * @return "count", "elapsedMillis", "sessionsPerSecond", "successful", "failed", "outcomes" (count per outcome),
+     * "failureSamples" and "latencyMillis" (min, mean, p50, p90, p99, max)
+     * @throws InterruptedException if interrupted before the batch is done, the workers being stopped
+     */
+    public Map<String, Object> run(final String scenarioName, int count, int concurrency) throws InterruptedException {
+        if (count < 0 || concurrency < 1) {
+            throw new IllegalArgumentException("count must be >= 0 and concurrency >= 1");
+        }
+        final String[] labels = new String[count];
+        final long[] durations = new long[count];
+        final List<String> failureSamples = new ArrayList<>();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        int workers = Math.min(concurrency, Math.max(count, 1));
+        final CountDownLatch done = new CountDownLatch(workers);
+        List<Future<?>> futures = new ArrayList<>(workers);
+
+        long start = System.nanoTime();
+        for (int w = 0; w < workers; w++) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int i;
+                        while (!stopped.get() && (i = next.getAndIncrement()) < labels.length) {
+                            long sessionStart = System.nanoTime();
+                            String failure = null;
+                            try {
+                                SessionOutcome outcome = simulatorFacade.runSession(scenarioName, null);
+                                labels[i] = SessionOutcomes.label(outcome);
+                                if (!SessionOutcomes.isSuccessful(outcome)) {
+                                    failure = "session " + i + ": " + labels[i];
+                                }
+                            } catch (Throwable e) {
+                                labels[i] = e.getClass().getSimpleName();
+                                failure = "session " + i + ": " + e;
+                            }
+                            durations[i] = System.nanoTime() - sessionStart;
+                            if (failure != null) {
+                                synchronized (failureSamples) {
+                                    if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                                        failureSamples.add(failure);
+                                    }
+                                }
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }));
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            stopped.set(true);
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, Integer> outcomes = new TreeMap<>();
+        int successful = 0;
+        for (String label : labels) {
+            Integer previous = outcomes.get(label);
+            outcomes.put(label, previous == null ? 1 : previous + 1);
+            if (SessionOutcomes.isSuccessful(label)) {
+                successful++;
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("elapsedMillis", elapsed / 1e6);
+        result.put("sessionsPerSecond", elapsed == 0 ? 0.0 : count / (elapsed / 1e9));
+        result.put("successful", successful);
+        result.put("failed", count - successful);
+        result.put("outcomes", outcomes);
+        result.put("failureSamples", failureSamples);
+        result.put("latencyMillis", latencySummary(durations));
+        return result;
+    }
+
+    private static Map<String, Double> latencySummary(long[] durations) {
+        Map<String, Double> summary = new LinkedHashMap<>();
+        if (durations.length == 0) {
+            return summary;
+        }
+        Arrays.sort(durations);
+        long total = 0;
+        for (long duration : durations) {
+            total += duration;
+        }
+        summary.put("min", durations[0] / 1e6);
+        summary.put("mean", total / (double) durations.length / 1e6);
+        summary.put("p50", percentile(durations, 0.50) / 1e6);
+        summary.put("p90", percentile(durations, 0.90) / 1e6);
+        summary.put("p99", percentile(durations, 0.99) / 1e6);
+        summary.put("max", durations[durations.length - 1] / 1e6);
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
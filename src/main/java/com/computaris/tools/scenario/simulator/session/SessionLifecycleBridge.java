@@ -0,0 +1,276 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.opencloud.tools.scenario.simulator.monitoring.SessionLifecycleListener;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Single {@link SessionLifecycleListener} registered with the simulator, fanning session ends out to {@link Sink}s.
+ * <p>
+ * The listener's callbacks are bound once, from the methods the interface declares: sessionStarted marks a session
+ * start and sessionEnded its end. The session is the one parameter of another type than String, SessionOutcome or a
+ * primitive, the outcome the SessionOutcome parameter and the scenario the String parameter, or a getScenarioName()
+ * accessor of the session when there is none. Any other method or parameter list fails the construction of the
+ * bridge rather than being guessed at.
+ * <p>
+ * The lifecycle callbacks carry no duration, so start times are kept in a preallocated open addressing table of
+ * "com.computaris.robotremote.session-start-slots" (default 65536) slots, probed from the hash of the session.
+ * When the probed slots are all taken the oldest start is evicted, which is also how the starts of sessions whose
+ * end is never reported go; the evicted session then ends without a duration. Recording a start or an end does not
+ * allocate nor lock beyond the argument array of the listener call.
+ */
+public class SessionLifecycleBridge implements InvocationHandler {
+    public static final String UNKNOWN_SCENARIO = "unknown";
+    public static final String START_SLOTS_PROPERTY = "com.computaris.robotremote.session-start-slots";
+    static final String SESSION_STARTED = "sessionStarted";
+    static final String SESSION_ENDED = "sessionEnded";
+    private static final int PROBES = 8;
+    // marks session classes without a scenario name accessor
+    private static final Method NO_ACCESSOR = Object.class.getMethods()[0];
+
+    /**
+     * Receiver of completed sessions. Called on simulator threads, implementations must be fast and thread safe.
+     */
+    public interface Sink {
+        /**
+         * @param session       the simulator's identification of the session
+         * @param durationNanos session duration, -1 if the start of the session was not seen
+         */
+        void sessionEnded(Object session, String scenarioName, SessionOutcome outcome, long durationNanos);
+    }
+
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final AtomicReferenceArray<Object> startedSessions;
+    private final AtomicLongArray startTimes;
+    private final int startMask;
+    private final ConcurrentHashMap<Class<?>, Method> scenarioAccessors = new ConcurrentHashMap<>();
+    private final Map<Method, Callback> callbacks;
+    private final SessionLifecycleListener listener;
+
+    public SessionLifecycleBridge() {
+        this(Integer.getInteger(START_SLOTS_PROPERTY, 65536));
+    }
+
+    public SessionLifecycleBridge(int startSlots) {
+        this(startSlots, SessionLifecycleListener.class);
+    }
+
+    /**
+     * @param listenerType the interface whose callbacks {@link #invoke} accepts
+     */
+    SessionLifecycleBridge(int startSlots, Class<?> listenerType) {
+        int slots = Integer.highestOneBit(Math.max(PROBES, startSlots - 1) << 1);
+        this.startedSessions = new AtomicReferenceArray<>(slots);
+        this.startTimes = new AtomicLongArray(slots);
+        this.startMask = slots - 1;
+        this.callbacks = bind(listenerType);
+        this.listener = ListenerProxies.newProxy(SessionLifecycleListener.class, this);
+    }
+
+    /**
+     * @return the callback of each method of the listener type
+     * @throws IllegalStateException if a method is not a session callback the bridge knows
+     */
+    static Map<Method, Callback> bind(Class<?> listenerType) {
+        Map<Method, Callback> callbacks = new HashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (Method method : listenerType.getMethods()) {
+            Callback callback = Callback.of(method);
+            if (callback == null) {
+                unknown.add(method.toGenericString());
+            } else {
+                callbacks.put(method, callback);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new IllegalStateException("Unsupported " + listenerType.getName() + " methods: " + unknown);
+        }
+        return Collections.unmodifiableMap(callbacks);
+    }
+
+    public SessionLifecycleListener asListener() {
+        return listener;
+    }
+
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(Sink sink) {
+        sinks.remove(sink);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (ListenerProxies.isObjectMethod(method)) {
+            return ListenerProxies.invokeObjectMethod(proxy, method, args, getClass().getSimpleName());
+        }
+        Callback callback = callbacks.get(method);
+        if (callback == null) {
+            throw new UnsupportedOperationException("Unsupported session callback " + method);
+        }
+        long now = System.nanoTime();
+        Object session = callback.session < 0 ? null : args[callback.session];
+        if (callback.outcome < 0) {
+            if (session != null) {
+                putStart(session, now);
+            }
+        } else {
+            long start = session == null ? -1 : removeStart(session);
+            String scenarioName = callback.scenario < 0 ? scenarioName(session) : (String) args[callback.scenario];
+            long duration = start < 0 ? -1 : now - start;
+            SessionOutcome outcome = (SessionOutcome) args[callback.outcome];
+            for (Sink sink : sinks) {
+                sink.sessionEnded(session, scenarioName, outcome, duration);
+            }
+        }
+        return ListenerProxies.defaultValue(method.getReturnType());
+    }
+
+    private int home(Object session) {
+        int hash = session.hashCode();
+        return (hash ^ (hash >>> 16)) & startMask;
+    }
+
+    /**
+     * Takes a free probed slot, or evicts the oldest start of the probed slots. The session's start is written after
+     * its slot is taken, its end being reported only after the start callback returned.
+     */
+    private void putStart(Object session, long now) {
+        int home = home(session);
+        int oldest = home;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & startMask;
+            if (startedSessions.get(slot) == null && startedSessions.compareAndSet(slot, null, session)) {
+                startTimes.set(slot, now);
+                return;
+            }
+            if (startTimes.get(slot) - startTimes.get(oldest) < 0) {
+                oldest = slot;
+            }
+        }
+        Object evicted = startedSessions.get(oldest);
+        if (startedSessions.compareAndSet(oldest, evicted, session)) {
+            startTimes.set(oldest, now);
+        }
+    }
+
+    /**
+     * @return the start of the session freeing its slot, -1 if it is not recorded
+     */
+    private long removeStart(Object session) {
+        int home = home(session);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & startMask;
+            Object started = startedSessions.get(slot);
+            if (started != null && (started == session || started.equals(session))) {
+                long start = startTimes.get(slot);
+                if (startedSessions.compareAndSet(slot, started, null)) {
+                    return start;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Argument positions of a bound callback, -1 for an absent argument. A callback without outcome is a start.
+     */
+    static final class Callback {
+        final int session;
+        final int scenario;
+        final int outcome;
+
+        private Callback(int session, int scenario, int outcome) {
+            this.session = session;
+            this.scenario = scenario;
+            this.outcome = outcome;
+        }
+
+        /**
+         * @return the callback of the method, null if it is not a session start or end of a supported shape
+         */
+        static Callback of(Method method) {
+            boolean started = method.getName().equals(SESSION_STARTED);
+            if (!started && !method.getName().equals(SESSION_ENDED)) {
+                return null;
+            }
+            int session = -1;
+            int scenario = -1;
+            int outcome = -1;
+            Class<?>[] types = method.getParameterTypes();
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == String.class) {
+                    if (scenario >= 0) {
+                        return null;
+                    }
+                    scenario = i;
+                } else if (SessionOutcome.class.isAssignableFrom(types[i])) {
+                    if (outcome >= 0) {
+                        return null;
+                    }
+                    outcome = i;
+                } else if (!types[i].isPrimitive()) {
+                    if (session >= 0) {
+                        return null;
+                    }
+                    session = i;
+                }
+            }
+            if (started ? session < 0 || outcome >= 0 : outcome < 0) {
+                return null;
+            }
+            return new Callback(session, scenario, outcome);
+        }
+    }
+
+    private String scenarioName(Object session) {
+        if (session == null) {
+            return UNKNOWN_SCENARIO;
+        }
+        Method accessor = scenarioAccessors.get(session.getClass());
+        if (accessor == null) {
+            try {
+                accessor = session.getClass().getMethod("getScenarioName");
+            } catch (NoSuchMethodException e) {
+                accessor = NO_ACCESSOR;
+            }
+            scenarioAccessors.put(session.getClass(), accessor);
+        }
+        if (accessor == NO_ACCESSOR) {
+            return UNKNOWN_SCENARIO;
+        }
+        try {
+            return String.valueOf(accessor.invoke(session));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return UNKNOWN_SCENARIO;
+        }
+    }
+}
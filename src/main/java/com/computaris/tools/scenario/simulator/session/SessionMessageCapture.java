@@ -0,0 +1,272 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.opencloud.tools.scenario.simulator.monitoring.SessionMessageListener;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Opt-in capture of session messages into a fixed size ring buffer, used to see why sessions failed.
+ * <p>
+ * The ring is a preallocated array of slots, each holding a message summary rendered into its own character buffer
+ * when the message is captured, so no message object is kept past its callback. Slots are claimed with a single
+ * atomic increment, the oldest messages are overwritten; a slot is published with its sequence number so readers
+ * skip slots being rewritten. Messages are matched to their session by identity: a slot keeps the session until it
+ * is overwritten. Failed sessions are remembered in a second, smaller ring so their messages can be fetched after the
+ * fact. Like {@link SessionLifecycleBridge} the message listener is a dynamic proxy: the session is the first
+ * argument which is not a String, the remaining arguments make up the summary.
+ */
+public class SessionMessageCapture implements InvocationHandler, SessionLifecycleBridge.Sink {
+    static final int MAX_SUMMARY_LENGTH = 512;
+
+    private final SessionMessageListener listener = ListenerProxies.newProxy(SessionMessageListener.class, this);
+    private volatile MessageRing messages;
+    private volatile FailedRing failedSessions;
+
+    public SessionMessageListener asListener() {
+        return listener;
+    }
+
+    public boolean isEnabled() {
+        return messages != null;
+    }
+
+    /**
+     * Starts capturing into fresh buffers.
+     *
+     * @param capacity number of messages kept, rounded up to a power of two
+     */
+    public synchronized void start(int capacity, int failedSessionCapacity) {
+        failedSessions = new FailedRing(failedSessionCapacity);
+        messages = new MessageRing(capacity);
+    }
+
+    public synchronized void stop() {
+        messages = null;
+        failedSessions = null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (ListenerProxies.isObjectMethod(method)) {
+            return ListenerProxies.invokeObjectMethod(proxy, method, args, getClass().getSimpleName());
+        }
+        MessageRing ring = messages;
+        if (ring != null && args != null && args.length > 0) {
+            ring.add(ListenerProxies.sessionArgument(args, Void.class), method.getName(), args);
+        }
+        return ListenerProxies.defaultValue(method.getReturnType());
+    }
+
+    @Override
+    public void sessionEnded(Object session, String scenarioName, SessionOutcome outcome, long durationNanos) {
+        FailedRing ring = failedSessions;
+        if (ring != null && session != null && !SessionOutcomes.isSuccessful(outcome)) {
+            ring.add(new Failed(session, scenarioName + " " + SessionOutcomes.label(outcome)));
+        }
+    }
+
+    /**
+     * @return the messages of the last failed sessions, newest first
+     */
+    public List<Map<String, Object>> getFailedSessionTraces(int count) {
+        FailedRing failed = failedSessions;
+        MessageRing ring = messages;
+        List<Map<String, Object>> traces = new ArrayList<>();
+        if (failed == null || ring == null) {
+            return traces;
+        }
+        for (Failed entry : failed.newestFirst(count)) {
+            traces.add(trace(entry.name, entry.outcome, ring.messagesOf(entry.session)));
+        }
+        return traces;
+    }
+
+    /**
+     * @param sessionId the session as returned in a failed trace, or as its messages render it
+     * @return the captured messages of the session
+     */
+    public Map<String, Object> getSessionTrace(String sessionId) {
+        FailedRing failed = failedSessions;
+        MessageRing ring = messages;
+        List<String> lines = new ArrayList<>();
+        if (ring != null) {
+            Object session = null;
+            if (failed != null) {
+                for (Failed entry : failed.newestFirst(Integer.MAX_VALUE)) {
+                    if (sessionId.equals(entry.name)) {
+                        session = entry.session;
+                        break;
+                    }
+                }
+            }
+            lines = session != null ? ring.messagesOf(session) : ring.messagesOf(sessionId);
+        }
+        return trace(sessionId, null, lines);
+    }
+
+    private static Map<String, Object> trace(String session, String outcome, List<String> lines) {
+        Map<String, Object> trace = new LinkedHashMap<>();
+        trace.put("session", session);
+        if (outcome != null) {
+            trace.put("outcome", outcome);
+        }
+        trace.put("messages", lines);
+        return trace;
+    }
+
+    /**
+     * A failed session, immutable once published.
+     */
+    private static final class Failed {
+        private final Object session;
+        private final String name;
+        private final String outcome;
+
+        Failed(Object session, String outcome) {
+            this.session = session;
+            this.name = String.valueOf(session);
+            this.outcome = outcome;
+        }
+    }
+
+    private static final class FailedRing {
+        private final int mask;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicReferenceArray<Failed> entries;
+
+        FailedRing(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+            mask = size - 1;
+            entries = new AtomicReferenceArray<>(size);
+        }
+
+        void add(Failed failed) {
+            entries.set((int) (next.getAndIncrement() & mask), failed);
+        }
+
+        List<Failed> newestFirst(int count) {
+            long end = next.get();
+            List<Failed> failed = new ArrayList<>();
+            for (long sequence = end - 1; sequence >= Math.max(0, end - mask - 1) && failed.size() < count; sequence--) {
+                Failed entry = entries.get((int) (sequence & mask));
+                if (entry != null) {
+                    failed.add(entry);
+                }
+            }
+            return failed;
+        }
+    }
+
+    /**
+     * One preallocated message slot. The state is the sequence number of the message held, {@link #WRITING} while
+     * it is rewritten; the other fields are only written between the two.
+     */
+    private static final class Slot {
+        static final long WRITING = -1;
+
+        final AtomicLong state = new AtomicLong(WRITING - 1);
+        final char[] summary = new char[MAX_SUMMARY_LENGTH];
+        int length;
+        long timestamp;
+        Object session;
+
+        void append(String text) {
+            int count = Math.min(text.length(), MAX_SUMMARY_LENGTH - length);
+            text.getChars(0, count, summary, length);
+            length += count;
+        }
+    }
+
+    private static final class MessageRing {
+        private final int mask;
+        private final AtomicLong next = new AtomicLong();
+        private final Slot[] slots;
+
+        MessageRing(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+            mask = size - 1;
+            slots = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot();
+            }
+        }
+
+        /**
+         * Renders the message into its slot. A slot still being written by a writer lapped by this one is left to it
+         * and the message is dropped.
+         */
+        void add(Object session, String name, Object[] args) {
+            long sequence = next.getAndIncrement();
+            Slot slot = slots[(int) (sequence & mask)];
+            long held = slot.state.get();
+            if (held == Slot.WRITING || held > sequence || !slot.state.compareAndSet(held, Slot.WRITING)) {
+                return;
+            }
+            slot.timestamp = System.currentTimeMillis();
+            slot.session = session;
+            slot.length = 0;
+            slot.append(name);
+            for (int i = 0; i < args.length && slot.length < MAX_SUMMARY_LENGTH; i++) {
+                if (args[i] != session) {
+                    slot.append(" ");
+                    slot.append(String.valueOf(args[i]));
+                }
+            }
+            slot.state.set(sequence);
+        }
+
+        List<String> messagesOf(Object session) {
+            return messages(session, null);
+        }
+
+        List<String> messagesOf(String sessionId) {
+            return messages(null, sessionId);
+        }
+
+        /**
+         * @return the messages of the session, or of the sessions rendered as sessionId, oldest first
+         */
+        private List<String> messages(Object session, String sessionId) {
+            long end = next.get();
+            List<String> lines = new ArrayList<>();
+            for (long sequence = Math.max(0, end - mask - 1); sequence < end; sequence++) {
+                Slot slot = slots[(int) (sequence & mask)];
+                if (slot.state.get() != sequence) {
+                    continue;
+                }
+                Object held = slot.session;
+                String line = slot.timestamp + " " + new String(slot.summary, 0, slot.length);
+                // the compare and set orders the reads above before the check that the slot was not rewritten
+                if (slot.state.compareAndSet(sequence, sequence)
+                        && (session != null ? held == session : held != null && sessionId.equals(String.valueOf(held)))) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+}
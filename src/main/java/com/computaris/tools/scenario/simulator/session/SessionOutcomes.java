@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import java.util.Locale;
+
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+/**
+ * Classification of session outcomes shared by the keywords that aggregate sessions.
+ * <p>
+ * Outcomes are identified by their label. A label starting with one of the success prefixes (comma separated,
+ * case insensitive, configured by {@value #SUCCESS_OUTCOMES_PROPERTY}) counts as a successful session.
+ */
+public final class SessionOutcomes {
+    public static final String SUCCESS_OUTCOMES_PROPERTY = "com.computaris.robotremote.success-outcomes";
+    public static final String NO_OUTCOME = "NONE";
+
+    private static final String[] SUCCESS_PREFIXES =
+            System.getProperty(SUCCESS_OUTCOMES_PROPERTY, "MATCHED,SUCCESS").toUpperCase(Locale.ROOT).split("\\s*,\\s*");
+
+    private SessionOutcomes() {
+    }
+
+    public static String label(SessionOutcome outcome) {
+        return outcome == null ? NO_OUTCOME : outcome.toString();
+    }
+
+    public static boolean isSuccessful(SessionOutcome outcome) {
+        return outcome != null && isSuccessful(outcome.toString());
+    }
+
+    public static boolean isSuccessful(String label) {
+        String upper = label.toUpperCase(Locale.ROOT);
+        for (String prefix : SUCCESS_PREFIXES) {
+            if (!prefix.isEmpty() && upper.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.shard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.computaris.tools.scenario.simulator.metrics.SnapshotCounters;
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+import com.opencloud.tools.scenario.definition.ScenarioRecognitionException;
+import com.opencloud.tools.scenario.schema.validation.InvalidScenarioException;
+import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescription;
+import com.opencloud.tools.scenario.simulator.management.SimulatorConfigurationException;
+import com.opencloud.tools.scenario.simulator.management.SimulatorException;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+import com.opencloud.tools.scenario.simulator.monitoring.DialogStatsSnapshot;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionLifecycleListener;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionMessageListener;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+import com.opencloud.tools.scenario.simulator.monitoring.SessionStatusSnapshot;
+import com.opencloud.tools.scenario.simulator.protocol.ProtocolAdaptorException;
+
+/**
+ * SimulatorFacade spreading the load over several simulator instances of the same JVM.
+ * <p>
+ * Configuration calls are applied to every shard in parallel, the session rate is split evenly, sessions run by
+ * keyword are distributed round robin and read only calls are answered by the first shard. A call failing on some
+ * shards only throws a {@link PartialFailureException} naming them, as the shards no longer share one
+ * configuration. Each shard needs its own
+ * local endpoint addresses: in endpoint properties and addresses "{shard}" is replaced by the shard index, and the
+ * trailing port of the properties named in {@value #SHARD_PORT_PROPERTIES} is increased by shard * {@value #SHARD_PORT_STRIDE}.
+ * <p>
+ * The typed stats snapshots cannot be built from several shards, {@link #getSessionStatsSnapshot()} and
+ * {@link #getDialogStatsSnapshot()} return those of the first shard only. The merged view of all shards, which the
+ * stats keywords use, is given by {@link #getSessionStatsCounters()} and {@link #getDialogStatsCounters()}.
+ */
+public class ShardedSimulatorFacade implements SimulatorFacade {
+    public static final String SHARD_PORT_PROPERTIES = "com.computaris.robotremote.shard-port-properties";
+    public static final String SHARD_PORT_STRIDE = "com.computaris.robotremote.shard-port-stride";
+    private static final String SHARD_TOKEN = "{shard}";
+    private static final Pattern TRAILING_PORT = Pattern.compile("^(.*?)(\\d+)$");
+
+    private final List<SimulatorFacade> shards;
+    private final ExecutorService executor;
+    private final Set<String> portProperties = new HashSet<>();
+    private final int portStride;
+    private final AtomicInteger nextSessionShard = new AtomicInteger();
+
+    public ShardedSimulatorFacade(List<SimulatorFacade> shards) {
+        this.shards = new ArrayList<>(shards);
+        this.executor = Executors.newFixedThreadPool(shards.size(), SessionExecutors.daemonThreadFactory("shard-fan-out"));
+        for (String property : System.getProperty(SHARD_PORT_PROPERTIES, "").split(",")) {
+            if (!property.trim().isEmpty()) {
+                portProperties.add(property.trim());
+            }
+        }
+        this.portStride = Integer.parseInt(System.getProperty(SHARD_PORT_STRIDE, "1"));
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    private interface ShardCall<T> {
+        T call(int index, SimulatorFacade shard) throws Exception;
+    }
+
+    /**
+     * Runs the call on every shard in parallel.
+     *
+     * @return the result of every shard, in shard order
+     * @throws PartialFailureException if the call failed on some shards only, which are now configured differently
+     * @throws Exception the failure of the first shard if the call failed on all of them, the others suppressed
+     */
+    private <T> List<T> fanOut(String operation, ShardCall<T> call) throws Exception {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            futures.add(executor.submit(() -> call.call(index, shards.get(index))));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        Map<Integer, Exception> failures = new TreeMap<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                failures.put(i, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            }
+        }
+        if (failures.isEmpty()) {
+            return results;
+        }
+        if (failures.size() < shards.size()) {
+            throw new PartialFailureException(operation, failures, shards.size());
+        }
+        Exception failure = failures.remove(0);
+        for (Exception other : failures.values()) {
+            failure.addSuppressed(other);
+        }
+        throw failure;
+    }
+
+    private static <E extends Exception> void rethrowIf(Exception e, Class<E> type) throws E {
+        if (type.isInstance(e)) {
+            throw type.cast(e);
+        }
+    }
+
+    private static RuntimeException unchecked(Exception e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        return new IllegalStateException(e);
+    }
+
+    private void fanOutUnchecked(String operation, ShardCall<?> call) {
+        try {
+            fanOut(operation, call);
+        } catch (Exception e) {
+            throw unchecked(e);
+        }
+    }
+
+    String forShard(int index, String key, String value) {
+        if (value == null) {
+            return null;
+        }
+        String result = value.replace(SHARD_TOKEN, String.valueOf(index));
+        if (key != null && portProperties.contains(key)) {
+            Matcher matcher = TRAILING_PORT.matcher(result);
+            if (matcher.matches()) {
+                result = matcher.group(1) + (Integer.parseInt(matcher.group(2)) + index * portStride);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setEndpointAddress(final String endpointName, final String addressString) throws SimulatorConfigurationException {
+        try {
+            fanOut("setEndpointAddress", (index, shard) -> {
+                shard.setEndpointAddress(endpointName, forShard(index, null, addressString));
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, SimulatorConfigurationException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public Collection<String> getEndpointNames() {
+        return shards.get(0).getEndpointNames();
+    }
+
+    @Override
+    public Collection<String> getSchemaNames() {
+        return shards.get(0).getSchemaNames();
+    }
+
+    @Override
+    public Collection<Map<String, String>> getSchemaInfos() {
+        return shards.get(0).getSchemaInfos();
+    }
+
+    @Override
+    public Collection<String> getProtocolAdaptorTypes() {
+        return shards.get(0).getProtocolAdaptorTypes();
+    }
+
+    @Override
+    public Collection<Map<String, String>> getProtocolAdaptorTypeInfos() {
+        return shards.get(0).getProtocolAdaptorTypeInfos();
+    }
+
+    @Override
+    public String getProtocolAdaptorTypeForSchema(String schema) throws SimulatorConfigurationException {
+        return shards.get(0).getProtocolAdaptorTypeForSchema(schema);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void createLocalEndpoint(final String endpointName, final String protocolAdaptorType, final String propertiesFile, final Collection<String> schemas)
+            throws ProtocolAdaptorException, IllegalStateException, IOException, SimulatorConfigurationException {
+        try {
+            fanOut("createLocalEndpoint", (index, shard) -> {
+                shard.createLocalEndpoint(endpointName, protocolAdaptorType, forShard(index, null, propertiesFile), schemas);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, ProtocolAdaptorException.class);
+            rethrowIf(e, IOException.class);
+            rethrowIf(e, SimulatorConfigurationException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public void createLocalEndpoint(final String localEndpointName, final String protocolAdaptorType, final Map<String, String> properties, final Collection<String> schemas)
+            throws ProtocolAdaptorException, IllegalStateException, SimulatorConfigurationException {
+        try {
+            fanOut("createLocalEndpoint", (index, shard) -> {
+                Map<String, String> shardProperties = new LinkedHashMap<>();
+                for (Map.Entry<String, String> property : properties.entrySet()) {
+                    shardProperties.put(property.getKey(), forShard(index, property.getKey(), property.getValue()));
+                }
+                shard.createLocalEndpoint(localEndpointName, protocolAdaptorType, shardProperties, schemas);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, ProtocolAdaptorException.class);
+            rethrowIf(e, SimulatorConfigurationException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public void bindRole(final String roleName, final String endpointName, final String dialogName, final String configName) throws SimulatorConfigurationException {
+        try {
+            fanOut("bindRole", (index, shard) -> {
+                shard.bindRole(roleName, endpointName, dialogName, configName);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, SimulatorConfigurationException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public void loadDataSet(final String dataSetName, final String csvFilePath) throws IOException, SimulatorConfigurationException {
+        try {
+            fanOut("loadDataSet", (index, shard) -> {
+                shard.loadDataSet(dataSetName, csvFilePath);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, IOException.class);
+            rethrowIf(e, SimulatorConfigurationException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public Collection<String> getDataSetNames() {
+        return shards.get(0).getDataSetNames();
+    }
+
+    @Override
+    public void bindTable(final String tableName, final String dataSetName, final String configName) throws SimulatorConfigurationException {
+        try {
+            fanOut("bindTable", (index, shard) -> {
+                shard.bindTable(tableName, dataSetName, configName);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, SimulatorConfigurationException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public ScenarioBindingsDescription load(final String scenarioFile, final String configName)
+            throws IOException, ScenarioRecognitionException, SimulatorConfigurationException, InvalidScenarioException {
+        try {
+            return fanOut("load", (index, shard) -> shard.load(scenarioFile, configName)).get(0);
+        } catch (Exception e) {
+            rethrowIf(e, IOException.class);
+            rethrowIf(e, ScenarioRecognitionException.class);
+            rethrowIf(e, SimulatorConfigurationException.class);
+            rethrowIf(e, InvalidScenarioException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public String getConfigurationDescription() {
+        return shards.get(0).getConfigurationDescription();
+    }
+
+    @Override
+    public Collection<String> getConfigurationNames() {
+        return shards.get(0).getConfigurationNames();
+    }
+
+    @Override
+    public void setPreferredScenario(final Map<String, Double> scenarios) throws SimulatorException {
+        try {
+            fanOut("setPreferredScenario", (index, shard) -> {
+                shard.setPreferredScenario(scenarios);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, SimulatorException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public void setPreferredScenario(final String scenarioName) throws SimulatorException {
+        try {
+            fanOut("setPreferredScenario", (index, shard) -> {
+                shard.setPreferredScenario(scenarioName);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, SimulatorException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public boolean removeScenario(final String scenarioName) {
+        boolean removed = false;
+        try {
+            for (Boolean shardRemoved : fanOut("removeScenario", (index, shard) -> shard.removeScenario(scenarioName))) {
+                removed |= shardRemoved;
+            }
+        } catch (Exception e) {
+            throw unchecked(e);
+        }
+        return removed;
+    }
+
+    @Override
+    public Collection<String> getScenarioNames() {
+        return shards.get(0).getScenarioNames();
+    }
+
+    @Override
+    public Collection<String> getInitiatingScenarioNames() {
+        return shards.get(0).getInitiatingScenarioNames();
+    }
+
+    @Override
+    public String getScenarioDescription(String scenarioName) {
+        return shards.get(0).getScenarioDescription(scenarioName);
+    }
+
+    @Override
+    public ScenarioBindingsDescription getScenarioBindings(String scenarioName) {
+        return shards.get(0).getScenarioBindings(scenarioName);
+    }
+
+    @Override
+    public String getConnectivityStatusSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < shards.size(); i++) {
+            summary.append("shard ").append(i).append(":\n").append(shards.get(i).getConnectivityStatusSummary()).append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return the snapshot of the first shard only, see {@link #getSessionStatsCounters()} for all shards
+     */
+    @Override
+    public SessionStatusSnapshot getSessionStatsSnapshot() {
+        return shards.get(0).getSessionStatsSnapshot();
+    }
+
+    public Map<String, Number> getSessionStatsCounters() {
+        List<Map<String, Number>> views = new ArrayList<>(shards.size());
+        for (SimulatorFacade shard : shards) {
+            views.add(SnapshotCounters.of(shard.getSessionStatsSnapshot()));
+        }
+        return SnapshotCounters.merge(views);
+    }
+
+    @Override
+    public void resetSessionAndDialogStats() {
+        fanOutUnchecked("resetSessionAndDialogStats", (index, shard) -> {
+            shard.resetSessionAndDialogStats();
+            return null;
+        });
+    }
+
+    /**
+     * @return the snapshot of the first shard only, see {@link #getDialogStatsCounters()} for all shards
+     */
+    @Override
+    public DialogStatsSnapshot getDialogStatsSnapshot() {
+        return shards.get(0).getDialogStatsSnapshot();
+    }
+
+    public Map<String, Number> getDialogStatsCounters() {
+        List<Map<String, Number>> views = new ArrayList<>(shards.size());
+        for (SimulatorFacade shard : shards) {
+            views.add(SnapshotCounters.of(shard.getDialogStatsSnapshot()));
+        }
+        return SnapshotCounters.merge(views);
+    }
+
+    @Override
+    public SessionOutcome runSession(String scenarioName, SessionMessageListener sessionMessageListener) throws SimulatorException {
+        int index = (nextSessionShard.getAndIncrement() & Integer.MAX_VALUE) % shards.size();
+        return shards.get(index).runSession(scenarioName, sessionMessageListener);
+    }
+
+    @Override
+    public boolean startGeneratingSessions() {
+        boolean started = true;
+        try {
+            for (Boolean shardStarted : fanOut("startGeneratingSessions", (index, shard) -> shard.startGeneratingSessions())) {
+                started &= shardStarted;
+            }
+        } catch (Exception e) {
+            throw unchecked(e);
+        }
+        return started;
+    }
+
+    @Override
+    public void stopGeneratingSessions() {
+        fanOutUnchecked("stopGeneratingSessions", (index, shard) -> {
+            shard.stopGeneratingSessions();
+            return null;
+        });
+    }
+
+    @Override
+    public void setSessionRate(double sessionRate) {
+        final double shardRate = sessionRate / shards.size();
+        fanOutUnchecked("setSessionRate", (index, shard) -> {
+            shard.setSessionRate(shardRate);
+            return null;
+        });
+    }
+
+    @Override
+    public void rampUpSessionRate(double initialRate, double targetRate, final int period) {
+        final double shardInitialRate = initialRate / shards.size();
+        final double shardTargetRate = targetRate / shards.size();
+        fanOutUnchecked("rampUpSessionRate", (index, shard) -> {
+            shard.rampUpSessionRate(shardInitialRate, shardTargetRate, period);
+            return null;
+        });
+    }
+
+    @Override
+    public void addGlobalSessionLifecycleListener(SessionLifecycleListener sessionLifecycleListener) {
+        for (SimulatorFacade shard : shards) {
+            shard.addGlobalSessionLifecycleListener(sessionLifecycleListener);
+        }
+    }
+
+    @Override
+    public void addGlobalSessionMessageListener(SessionMessageListener sessionMessageListener) {
+        for (SimulatorFacade shard : shards) {
+            shard.addGlobalSessionMessageListener(sessionMessageListener);
+        }
+    }
+
+    @Override
+    public void waitUntilOperational(final int timeout) throws SimulatorException {
+        try {
+            fanOut("waitUntilOperational", (index, shard) -> {
+                shard.waitUntilOperational(timeout);
+                return null;
+            });
+        } catch (Exception e) {
+            rethrowIf(e, SimulatorException.class);
+            throw unchecked(e);
+        }
+    }
+
+    @Override
+    public void quit(final long timeout) {
+        fanOutUnchecked("quit", (index, shard) -> {
+            shard.quit(timeout);
+            return null;
+        });
+        executor.shutdown();
+    }
+
+    @Override
+    public void quit() {
+        fanOutUnchecked("quit", (index, shard) -> {
+            shard.quit();
+            return null;
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * A fanned out call failed on some shards and was applied on the others.
+     */
+    public static class PartialFailureException extends RuntimeException {
+        private final Map<Integer, Exception> failures;
+
+        public PartialFailureException(String operation, Map<Integer, Exception> failures, int shardCount) {
+            super(message(operation, failures, shardCount), failures.values().iterator().next());
+            this.failures = failures;
+        }
+
+        private static String message(String operation, Map<Integer, Exception> failures, int shardCount) {
+            StringBuilder message = new StringBuilder(operation).append(" failed on ").append(failures.size())
+                    .append(" of ").append(shardCount).append(" shards, the others applied it:");
+            for (Map.Entry<Integer, Exception> failure : failures.entrySet()) {
+                message.append(" shard ").append(failure.getKey()).append(": ").append(failure.getValue()).append(';');
+            }
+            message.setLength(message.length() - 1);
+            return message.toString();
+        }
+
+        /**
+         * @return failure of each failed shard by shard index
+         */
+        public Map<Integer, Exception> getFailures() {
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Client of {@link FramedKeywordServer} for load controllers. Calls may be pipelined: {@link #call(String, Object...)}
+ * returns immediately and any number of calls can be in flight on the connection.
+ * <pre>
+ * try (FramedKeywordClient client = new FramedKeywordClient("localhost", 8271)) {
+ *     Object names = client.run("ScenSimGetScenarioNames");
+ * }
+ * </pre>
+ */
+public class FramedKeywordClient implements Closeable {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final Gson gson = new Gson();
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private volatile IOException closed;
+
+    public FramedKeywordClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readResponses();
+            }
+        }, "framed-keyword-client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a keyword call without waiting for its result.
+     *
+     * @return the keyword return value, or an exception carrying the keyword error
+     */
+    public CompletableFuture<Object> call(String keyword, Object... args) throws IOException {
+        long id = ids.incrementAndGet();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        inFlight.put(id, result);
+        if (closed != null) {
+            // the reader is gone, nothing would complete the call
+            inFlight.remove(id);
+            result.completeExceptionally(closed);
+            return result;
+        }
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("id", id);
+        request.put("keyword", keyword);
+        request.put("args", Arrays.asList(args));
+        byte[] frame = gson.toJson(request).getBytes(StandardCharsets.UTF_8);
+        try {
+            synchronized (out) {
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+            }
+        } catch (IOException e) {
+            inFlight.remove(id);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Calls a keyword and waits for its result.
+     */
+    public Object run(String keyword, Object... args) throws IOException, InterruptedException, ExecutionException {
+        return call(keyword, args).get();
+    }
+
+    /**
+     * Completes calls as their responses arrive. A response which cannot be matched to a call is skipped; when the
+     * reader stops, whatever the reason, every call still in flight fails.
+     */
+    private void readResponses() {
+        IOException failure;
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > FramedKeywordServer.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                complete(frame);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (Throwable t) {
+            failure = new IOException("Framed keyword client reader failed", t);
+        }
+        closed = failure;
+        for (Long id : inFlight.keySet()) {
+            CompletableFuture<Object> result = inFlight.remove(id);
+            if (result != null) {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void complete(byte[] frame) {
+        Map<String, Object> response;
+        try {
+            response = gson.fromJson(new String(frame, StandardCharsets.UTF_8), new TypeToken<Map<String, Object>>() { }.getType());
+        } catch (JsonParseException e) {
+            return;
+        }
+        Object id = response == null ? null : response.get("id");
+        if (!(id instanceof Number)) {
+            return;
+        }
+        CompletableFuture<Object> result = inFlight.remove(((Number) id).longValue());
+        if (result == null) {
+            return;
+        }
+        if ("PASS".equals(response.get("status"))) {
+            result.complete(response.get("return"));
+        } else {
+            result.completeExceptionally(new IOException(String.valueOf(response.get("error"))));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.computaris.tools.scenario.simulator.session.SessionExecutors;
+
+/**
+ * Keyword endpoint speaking length prefixed frames over persistent NIO connections.
+ * <p>
+ * Every frame is a 4 byte big endian length followed by a UTF-8 JSON document handled by {@link KeywordDispatcher}.
+ * A connection may have several calls in flight: requests are dispatched to the worker executor as soon as they are
+ * read and responses are written back as they complete, the caller matches them by id. Once a connection has
+ * maxInFlight calls whose responses are not written yet, it is not read any further until one is, so a client
+ * outpacing the workers is pushed back by TCP. A call the workers cannot take fails with a busy error.
+ * <p>
+ * The endpoint has no authentication, so it listens on the loopback interface unless given another address. The read
+ * buffer of a connection grows with the bytes of a frame actually received, not with the length the frame declares.
+ */
+public class FramedKeywordServer implements Runnable {
+    public static final String WORKERS_PROPERTY = "com.computaris.robotremote.framed-workers";
+    public static final String QUEUE_PROPERTY = "com.computaris.robotremote.framed-queue";
+    public static final String MAX_IN_FLIGHT_PROPERTY = "com.computaris.robotremote.framed-max-in-flight";
+    public static final String BIND_ADDRESS_PROPERTY = "com.computaris.robotremote.framed-bind-address";
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final int port;
+    private final KeywordDispatcher dispatcher;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final Logger log;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    public FramedKeywordServer(InetAddress bindAddress, int port, KeywordDispatcher dispatcher, ExecutorService workers, int maxInFlight, Logger log) throws IOException {
+        this.port = port;
+        this.dispatcher = dispatcher;
+        this.workers = workers;
+        this.maxInFlight = maxInFlight;
+        this.log = log;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Creates the server with a fixed pool of {@value #WORKERS_PROPERTY} workers (default 16) taking up to
+     * {@value #QUEUE_PROPERTY} queued calls (default 1024) and {@value #MAX_IN_FLIGHT_PROPERTY} calls in flight per
+     * connection (default 64), listening on {@value #BIND_ADDRESS_PROPERTY} (default the loopback address).
+     */
+    public static FramedKeywordServer fromSystemProperties(int port, KeywordDispatcher dispatcher, Logger log) throws IOException {
+        int threads = Integer.parseInt(System.getProperty(WORKERS_PROPERTY, "16"));
+        int queue = Integer.parseInt(System.getProperty(QUEUE_PROPERTY, "1024"));
+        int maxInFlight = Integer.parseInt(System.getProperty(MAX_IN_FLIGHT_PROPERTY, "64"));
+        String bindAddress = System.getProperty(BIND_ADDRESS_PROPERTY);
+        InetAddress address = bindAddress == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress);
+        ExecutorService workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queue)), SessionExecutors.daemonThreadFactory("framed-keyword"));
+        return new FramedKeywordServer(address, port, dispatcher, workers, Math.max(1, maxInFlight), log);
+    }
+
+    public InetAddress getLocalAddress() {
+        return serverChannel.socket().getInetAddress();
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "framed-keyword-server-" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            ((Connection) key.attachment()).read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            ((Connection) key.attachment()).write();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.debug("Closing framed keyword connection: " + e);
+                        close(key);
+                    }
+                }
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection && key.isValid()) {
+                        try {
+                            ((Connection) key.attachment()).resume();
+                        } catch (IOException | RuntimeException e) {
+                            log.debug("Closing framed keyword connection: " + e);
+                            close(key);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Framed keyword server failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.debug("Cannot close selector: " + e);
+            }
+            workers.shutdown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(key, channel));
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // already closing
+        }
+    }
+
+    private final class Connection {
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+        // calls read but whose response is not written yet, which bounds pendingWrites as well
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        Connection(SelectionKey key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close(key);
+                return;
+            }
+            dispatchFrames();
+        }
+
+        /**
+         * Dispatches the complete frames in the read buffer, as long as the connection is below maxInFlight.
+         */
+        private void dispatchFrames() throws IOException {
+            readBuffer.flip();
+            try {
+                while (readBuffer.remaining() >= 4 && inFlight.get() < maxInFlight) {
+                    int length = readBuffer.getInt(readBuffer.position());
+                    if (length < 0 || length > MAX_FRAME_LENGTH) {
+                        throw new IOException("Invalid frame length " + length);
+                    }
+                    if (readBuffer.remaining() < 4 + length) {
+                        if (readBuffer.remaining() == readBuffer.capacity()) {
+                            // the partial frame fills the buffer: double it, up to the frame
+                            ByteBuffer larger = ByteBuffer.allocate(Math.min(4 + length, 2 * readBuffer.capacity()));
+                            larger.put(readBuffer).flip();
+                            readBuffer = larger;
+                        }
+                        break;
+                    }
+                    readBuffer.getInt();
+                    byte[] request = new byte[length];
+                    readBuffer.get(request);
+                    inFlight.incrementAndGet();
+                    try {
+                        workers.execute(() -> respond(dispatcher.dispatch(request)));
+                    } catch (RejectedExecutionException e) {
+                        respond(dispatcher.failure(request, "Framed keyword server busy"));
+                    }
+                }
+            } finally {
+                readBuffer.compact();
+                if (readBuffer.position() == 0 && readBuffer.capacity() > READ_BUFFER_SIZE) {
+                    readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                }
+            }
+        }
+
+        void respond(byte[] response) {
+            ByteBuffer frame = ByteBuffer.allocate(4 + response.length);
+            frame.putInt(response.length).put(response).flip();
+            pendingWrites.add(frame);
+            selector.wakeup();
+        }
+
+        void write() throws IOException {
+            ByteBuffer frame;
+            while ((frame = pendingWrites.peek()) != null) {
+                channel.write(frame);
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                pendingWrites.poll();
+                inFlight.decrementAndGet();
+            }
+        }
+
+        /**
+         * Picks up frames left in the read buffer once responses were written, then reads only while below
+         * maxInFlight.
+         */
+        void resume() throws IOException {
+            if (readBuffer.position() > 0 && inFlight.get() < maxInFlight) {
+                dispatchFrames();
+            }
+            int ops = inFlight.get() < maxInFlight ? SelectionKey.OP_READ : 0;
+            key.interestOps(pendingWrites.isEmpty() ? ops : ops | SelectionKey.OP_WRITE);
+        }
+    }
+}
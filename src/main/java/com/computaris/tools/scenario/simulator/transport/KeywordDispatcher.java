@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.transport;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Runs JSON encoded keyword calls against the library served by the XML-RPC remote server, so both transports
+ * share keyword lookup and argument conversion.
+ * <p>
+ * Request: {"id": 1, "keyword": "ScenSimGetScenarioNames", "args": [], "kwargs": {}}<br>
+ * Response: {"id": 1, "status": "PASS", "return": [...]} or {"id": 1, "status": "FAIL", "error": "..."}
+ * <p>
+ * Return values are converted like the XML-RPC server does: maps, collections and arrays are kept, scalars are
+ * kept, any other object is returned as its string form.
+ */
+public class KeywordDispatcher {
+    private final RemoteLibrary library;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    public KeywordDispatcher(RemoteLibrary library) {
+        this.library = library;
+    }
+
+    public byte[] dispatch(byte[] request) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        try {
+            JsonObject call = JsonParser.parseString(new String(request, StandardCharsets.UTF_8)).getAsJsonObject();
+            if (call.has("id")) {
+                response.put("id", call.get("id"));
+            }
+            String keyword = call.get("keyword").getAsString();
+            List<Object> args = call.has("args") ? arguments(call.get("args")) : Collections.emptyList();
+            Map<String, Object> kwargs = call.has("kwargs") ? keywordArguments(call.getAsJsonObject("kwargs")) : Collections.<String, Object>emptyMap();
+
+            Object result = runKeyword(keyword, args, kwargs);
+            response.put("status", "PASS");
+            response.put("return", toTransportValue(result));
+        } catch (Throwable t) {
+            Throwable cause = t;
+            while (cause instanceof InvocationTargetException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            response.put("status", "FAIL");
+            response.put("error", String.valueOf(cause));
+        }
+        return gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a failed response to the request without running it, keeping its id if it can be read
+     */
+    public byte[] failure(byte[] request, String error) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        try {
+            JsonObject call = JsonParser.parseString(new String(request, StandardCharsets.UTF_8)).getAsJsonObject();
+            if (call.has("id")) {
+                response.put("id", call.get("id"));
+            }
+        } catch (RuntimeException e) {
+            // malformed, answered without id
+        }
+        response.put("status", "FAIL");
+        response.put("error", error);
+        return gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object runKeyword(String keyword, List<Object> args, Map<String, Object> kwargs) throws Throwable {
+        return library.runKeyword(keyword, (List) args, kwargs);
+    }
+
+    private static List<Object> arguments(JsonElement json) {
+        List<Object> args = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray()) {
+            args.add(toArgument(element));
+        }
+        return args;
+    }
+
+    private static Map<String, Object> keywordArguments(JsonObject json) {
+        Map<String, Object> kwargs = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+            kwargs.put(entry.getKey(), toArgument(entry.getValue()));
+        }
+        return kwargs;
+    }
+
+    /**
+     * Scalars are passed as strings, as Robot does, leaving the conversion to the keyword signature.
+     */
+    private static Object toArgument(JsonElement element) {
+        if (element.isJsonNull()) {
+            return null;
+        } else if (element.isJsonArray()) {
+            return arguments(element);
+        } else if (element.isJsonObject()) {
+            return keywordArguments(element.getAsJsonObject());
+        }
+        return element.getAsString();
+    }
+
+    static Object toTransportValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), toTransportValue(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof Iterable) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Iterable<?>) value) {
+                list.add(toTransportValue(item));
+            }
+            return list;
+        } else if (value.getClass().isArray() && !(value instanceof char[])) {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < Array.getLength(value); i++) {
+                list.add(toTransportValue(Array.get(value, i)));
+            }
+            return list;
+        }
+        return value instanceof char[] ? new String((char[]) value) : value.toString();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.computaris.tools.scenario.simulator.cache.ScenarioCache;
+import com.computaris.tools.scenario.simulator.config.ConfigurationSnapshots;
+import com.computaris.tools.scenario.simulator.transport.FramedKeywordClient;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+public class ScenarioSimulatorMainTest {
+    private static final String PORT_PROPERTY = "com.computaris.robotremote.port";
+    private static final String FRAMED_PORT_PROPERTY = "com.computaris.robotremote.framed-port";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PORT_PROPERTY);
+        System.clearProperty(FRAMED_PORT_PROPERTY);
+        System.clearProperty(ScenarioCache.CACHE_DIR_PROPERTY);
+        System.clearProperty(ConfigurationSnapshots.SNAPSHOT_DIR_PROPERTY);
+    }
+
+    @Test
+    public void servedSimulatorAnswersKeywords() throws Exception {
+        System.setProperty(PORT_PROPERTY, String.valueOf(freePort()));
+        int framedPort = freePort();
+        System.setProperty(FRAMED_PORT_PROPERTY, String.valueOf(framedPort));
+        System.setProperty(ScenarioCache.CACHE_DIR_PROPERTY, folder.newFolder("scenarios").getPath());
+        System.setProperty(ConfigurationSnapshots.SNAPSHOT_DIR_PROPERTY, folder.newFolder("snapshots").getPath());
+        SimulatorFacade simulatorFacade = mock(SimulatorFacade.class);
+        when(simulatorFacade.getScenarioNames()).thenReturn(Arrays.asList("call"));
+
+        ScenarioSimulatorMain.serve(simulatorFacade, Logger.getLogger(getClass()));
+
+        try (FramedKeywordClient client = new FramedKeywordClient("localhost", framedPort)) {
+            assertEquals(Arrays.asList("call"), client.run("ScenSimGetScenarioNames"));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.robotframework.remoteserver.RemoteServer;
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+import com.computaris.tools.scenario.simulator.cache.ScenarioCache;
+import com.computaris.tools.scenario.simulator.config.ConfigurationSnapshots;
+import com.computaris.tools.scenario.simulator.payload.Payloads;
+import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescription;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+public class SimulatorFacadeRemoteDecoratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Set<String> scenarios = ConcurrentHashMap.newKeySet();
+    private SimulatorFacade simulatorFacade;
+    private SimulatorFacadeRemoteDecorator decorator;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(ScenarioCache.CACHE_DIR_PROPERTY, folder.newFolder("scenarios").getPath());
+        System.setProperty(ConfigurationSnapshots.SNAPSHOT_DIR_PROPERTY, folder.newFolder("snapshots").getPath());
+        simulatorFacade = mock(SimulatorFacade.class);
+        doAnswer(invocation -> new ArrayList<>(scenarios)).when(simulatorFacade).getScenarioNames();
+        doAnswer(invocation -> {
+            scenarios.add("call");
+            return mock(ScenarioBindingsDescription.class);
+        }).when(simulatorFacade).load(anyString(), isNull());
+        doAnswer(invocation -> scenarios.remove(invocation.<String>getArgument(0))).when(simulatorFacade).removeScenario(anyString());
+        decorator = new SimulatorFacadeRemoteDecorator(simulatorFacade, Logger.getLogger(getClass()));
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ScenarioCache.CACHE_DIR_PROPERTY);
+        System.clearProperty(ConfigurationSnapshots.SNAPSHOT_DIR_PROPERTY);
+    }
+
+    @Test
+    public void scenarioRemovedThroughTheFacadeMethodIsLoadedAgain() throws Exception {
+        decorator.scenSimloadNoConfig("scenario call");
+        decorator.scenSimloadNoConfig("scenario call");
+        verify(simulatorFacade, times(1)).load(anyString(), isNull());
+
+        assertTrue(decorator.removeScenario("call"));
+        decorator.scenSimloadNoConfig("scenario call");
+
+        verify(simulatorFacade, times(2)).load(anyString(), isNull());
+    }
+
+    @Test
+    public void loadThroughTheFacadeMethodForgetsReplacedScenarios() throws Exception {
+        decorator.scenSimloadNoConfig("scenario call");
+        // loads call again from another file, replacing it
+        decorator.load(folder.newFile("call.scen").getPath(), null);
+        decorator.scenSimloadNoConfig("scenario call");
+
+        verify(simulatorFacade, times(3)).load(anyString(), isNull());
+    }
+
+    @Test
+    public void encodedScenarioHitsTheCacheOfTheSameContent() throws Exception {
+        decorator.scenSimloadNoConfig("scenario call");
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write("scenario call".getBytes(StandardCharsets.UTF_8));
+        }
+
+        decorator.scenSimloadNoConfig(Base64.getEncoder().encodeToString(gzipped.toByteArray()), Payloads.ENCODING_GZIP);
+
+        verify(simulatorFacade, times(1)).load(anyString(), isNull());
+    }
+
+    @Test
+    public void cachedScenarioNamesFollowLoadsAndRemovals() throws Exception {
+        assertTrue(decorator.getScenarioNames().isEmpty());
+        assertTrue(decorator.getScenarioNames().isEmpty());
+        assertEquals(1L, decorator.scenSimGetMetadataCacheStats().get("hits"));
+
+        decorator.load(folder.newFile("call.scen").getPath(), null);
+        assertEquals(Collections.singletonList("call"), new ArrayList<>(decorator.getScenarioNames()));
+
+        decorator.removeScenario("call");
+        assertTrue(decorator.getScenarioNames().isEmpty());
+    }
+
+    @Test
+    public void createLocalEndpointPassesParsedPropertiesAndSchemas() throws Exception {
+        decorator.scenSimCreateLocalEndpoint("endpoint", "diameter", "host=localhost\nport=3868\n", "diameter-base,diameter-ro");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("host", "localhost");
+        properties.put("port", "3868");
+        verify(simulatorFacade).createLocalEndpoint("endpoint", "diameter", properties, Arrays.asList("diameter-base", "diameter-ro"));
+    }
+
+    @Test
+    public void keywordsRunThroughTheLibraryOfTheRemoteServer() throws Throwable {
+        RemoteServer server = new RemoteServer(0);
+        server.putLibrary("/SimulatorFacade", decorator);
+        RemoteLibrary library = server.getLibraryMap().get("/SimulatorFacade");
+
+        library.runKeyword("ScenSimBindRole", Arrays.asList("role", "endpoint", "dialog", "config"), Collections.<String, Object>emptyMap());
+
+        verify(simulatorFacade).bindRole(eq("role"), eq("endpoint"), eq("dialog"), eq("config"));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MetadataCacheTest {
+    private final MetadataCache cache = new MetadataCache(true);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private List<String> load(String... names) {
+        loads.incrementAndGet();
+        List<String> result = new ArrayList<>();
+        for (String name : names) {
+            result.add(name);
+        }
+        return result;
+    }
+
+    @Test
+    public void hitsReturnTheSameSnapshotUntilInvalidated() {
+        Collection<String> first = cache.get(MetadataCache.SCENARIO_NAMES, () -> load("call"));
+        assertSame(first, cache.get(MetadataCache.SCENARIO_NAMES, () -> load("call")));
+        assertEquals(1, loads.get());
+
+        cache.invalidate(MetadataCache.DATASET_NAMES);
+        assertSame(first, cache.get(MetadataCache.SCENARIO_NAMES, () -> load("call")));
+
+        cache.invalidate(MetadataCache.SCENARIO_NAMES);
+        assertEquals(2, cache.<Collection<String>, RuntimeException>get(MetadataCache.SCENARIO_NAMES, () -> load("call", "sms")).size());
+        assertEquals(2, loads.get());
+        assertEquals(2L, cache.getStats().get("misses"));
+        assertEquals(2L, cache.getStats().get("hits"));
+    }
+
+    @Test
+    public void prefixInvalidationDropsEveryKeyOfThePrefix() {
+        cache.get(MetadataCache.SCENARIO_BINDINGS + "call", () -> load("client"));
+        cache.get(MetadataCache.SCENARIO_BINDINGS + "sms", () -> load("client"));
+        cache.get(MetadataCache.SCENARIO_NAMES, () -> load("call", "sms"));
+
+        cache.invalidate(MetadataCache.SCENARIO_BINDINGS);
+
+        assertEquals(1, cache.getStats().get("size"));
+    }
+
+    @Test
+    public void resultLoadedDuringAnInvalidationIsNotKept() {
+        cache.get(MetadataCache.SCENARIO_NAMES, () -> {
+            List<String> stale = load("call");
+            cache.invalidate(MetadataCache.SCENARIO_NAMES);
+            return stale;
+        });
+        cache.get(MetadataCache.SCENARIO_NAMES, () -> load("sms"));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void nullResultsAreCached() {
+        assertNull(cache.get(MetadataCache.CONFIGURATION_DESCRIPTION, () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(MetadataCache.CONFIGURATION_DESCRIPTION, () -> load("unexpected")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void disabledCacheAlwaysLoads() {
+        MetadataCache disabled = new MetadataCache(false);
+        disabled.get(MetadataCache.SCENARIO_NAMES, () -> load("call"));
+        disabled.get(MetadataCache.SCENARIO_NAMES, () -> load("call"));
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opencloud.tools.scenario.simulator.management.ScenarioBindingsDescription;
+
+public class ScenarioCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File store;
+    private ScenarioCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        store = folder.newFolder("scenarios");
+        cache = new ScenarioCache(2, store);
+    }
+
+    @Test
+    public void hitsAfterPutAndMissesOtherwise() {
+        ScenarioBindingsDescription a = mock(ScenarioBindingsDescription.class);
+        assertNull(cache.lookup("a"));
+        cache.put("a", a, "scenario-a");
+        assertSame(a, cache.lookup("a"));
+        assertNull(cache.lookup("b"));
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(2L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void removedScenarioAndUnnamedDigestsAreForgotten() {
+        cache.put("a", mock(ScenarioBindingsDescription.class), "scenario-a");
+        cache.put("b", mock(ScenarioBindingsDescription.class), "scenario-b");
+        cache.invalidateScenario("scenario-a");
+        assertNull(cache.lookup("a"));
+        assertTrue(cache.lookup("b") != null);
+
+        cache.put("c", mock(ScenarioBindingsDescription.class), null);
+        cache.invalidateScenario("scenario-c");
+        assertNull(cache.lookup("c"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAndItsStoredFile() throws IOException {
+        byte[] content = ScenarioCache.encode("scenario a");
+        String digest = ContentDigest.of(content);
+        File stored = cache.stage(digest, content);
+        cache.put(digest, mock(ScenarioBindingsDescription.class), "scenario-a");
+        cache.put("b", mock(ScenarioBindingsDescription.class), "scenario-b");
+        cache.lookup(digest);
+        cache.put("c", mock(ScenarioBindingsDescription.class), "scenario-c");
+
+        assertTrue(cache.lookup(digest) != null);
+        assertNull(cache.lookup("b"));
+        assertTrue(cache.lookup("c") != null);
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertTrue(stored.isFile());
+
+        cache.lookup("c");
+        cache.put("d", mock(ScenarioBindingsDescription.class), "scenario-d");
+        assertNull(cache.lookup(digest));
+        assertFalse(stored.exists());
+    }
+
+    @Test
+    public void otherContentUnderTheSameNameReplacesTheDigest() {
+        cache.put("a", mock(ScenarioBindingsDescription.class), "scenario");
+        cache.put("b", mock(ScenarioBindingsDescription.class), "scenario");
+
+        assertNull(cache.lookup("a"));
+        assertTrue(cache.lookup("b") != null);
+        assertEquals(1L, cache.getStats().get("replacements"));
+    }
+
+    @Test
+    public void unknownNameForgetsEveryOtherDigest() {
+        cache.put("a", mock(ScenarioBindingsDescription.class), "scenario-a");
+        cache.put("b", mock(ScenarioBindingsDescription.class), null);
+
+        assertNull(cache.lookup("a"));
+        assertTrue(cache.lookup("b") != null);
+    }
+
+    @Test
+    public void stagesContentOnce() throws IOException {
+        byte[] content = ScenarioCache.encode("scenario a");
+        File first = cache.stage(ContentDigest.of(content), content);
+        long modified = first.lastModified();
+        File second = cache.stage(ContentDigest.of(content), content);
+
+        assertEquals(first, second);
+        assertEquals(modified, second.lastModified());
+        assertEquals(1, store.list().length);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.computaris.tools.scenario.simulator.config.ConfigurationJournal.Operation;
+
+public class ConfigurationJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void filesAreCapturedOnlyWhenSaved() throws IOException {
+        File blobs = new File(folder.getRoot(), "blobs");
+        ConfigurationJournal journal = new ConfigurationJournal(blobs, Logger.getLogger(getClass()));
+        File data = write("data.csv", "a,b\n");
+        journal.recordLoadDataSet("data", data.getPath());
+        assertFalse(blobs.exists());
+
+        List<Operation> operations = journal.capture();
+
+        assertEquals(1, operations.size());
+        assertNotNull(journal.blobFile(operations.get(0).blob));
+        assertTrue(operations.get(0).blob.endsWith(".csv"));
+    }
+
+    @Test
+    public void supersededOperationsAreReplaced() throws IOException {
+        ConfigurationJournal journal = new ConfigurationJournal(new File(folder.getRoot(), "blobs"), Logger.getLogger(getClass()));
+        journal.recordLoadDataSet("data", write("first.csv", "1").getPath());
+        journal.recordEndpointAddress("remote", "host:1");
+        journal.recordLoad(write("call.scen", "call").getPath(), null, "call");
+        journal.recordLoad(write("sms.scen", "sms").getPath(), null, "sms");
+        journal.recordLoadDataSet("data", write("second.csv", "2").getPath());
+        journal.recordEndpointAddress("remote", "host:2");
+        journal.recordRemoveScenario("call");
+        journal.recordRemoveScenario("other");
+        journal.recordPreferredScenario("sms");
+
+        List<Operation> operations = journal.capture();
+
+        assertEquals(5, operations.size());
+        assertEquals(Operation.LOAD_SCENARIO, operations.get(0).type);
+        assertEquals("sms", operations.get(0).arg(1));
+        assertEquals(Operation.LOAD_DATASET, operations.get(1).type);
+        assertEquals("2", new String(Files.readAllBytes(journal.blobFile(operations.get(1).blob).toPath()), StandardCharsets.UTF_8));
+        assertEquals("host:2", operations.get(2).arg(1));
+        assertEquals(Operation.REMOVE_SCENARIO, operations.get(3).type);
+        assertEquals("other", operations.get(3).arg(0));
+        assertEquals(Operation.PREFERRED_SCENARIO, operations.get(4).type);
+    }
+
+    @Test
+    public void releasedFileIsKeptUntilSuperseded() throws IOException {
+        ConfigurationJournal journal = new ConfigurationJournal(new File(folder.getRoot(), "blobs"), Logger.getLogger(getClass()));
+        File unused = write("unused.csv", "0");
+        journal.release(unused);
+        assertFalse(unused.exists());
+
+        File first = write("first.csv", "1");
+        journal.recordLoadDataSet("data", first.getPath());
+        journal.release(first);
+        assertTrue(first.exists());
+
+        journal.recordLoadDataSet("data", write("second.csv", "2").getPath());
+        assertFalse(first.exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingFileFailsSaving() throws IOException {
+        ConfigurationJournal journal = new ConfigurationJournal(new File(folder.getRoot(), "blobs"), Logger.getLogger(getClass()));
+        File data = write("data.csv", "a,b\n");
+        journal.recordLoadDataSet("data", data.getPath());
+        assertTrue(data.delete());
+
+        journal.capture();
+    }
+}
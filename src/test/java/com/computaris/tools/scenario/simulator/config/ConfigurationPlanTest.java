@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+public class ConfigurationPlanTest {
+    private static final String DOCUMENT = "{"
+            + "\"endpoints\": [{\"name\": \"diameter\", \"address\": \"host:3868\"}, {\"name\": \"sip\", \"address\": \"host:5060\"}],"
+            + "\"dataSets\": [{\"name\": \"subscribers\", \"content\": \"id\\n1\\n\"}],"
+            + "\"roles\": [{\"role\": \"client\", \"endpoint\": \"diameter\", \"dialog\": \"ccr\", \"config\": \"default\"},"
+            + "            {\"role\": \"caller\", \"endpoint\": \"sip\", \"dialog\": \"invite\", \"config\": \"default\"}],"
+            + "\"tables\": [{\"table\": \"subscribers\", \"dataSet\": \"subscribers\", \"config\": \"default\"}],"
+            + "\"scenarios\": [{\"file\": \"/scenarios/call.scen\", \"config\": \"default\"}],"
+            + "\"preferredScenario\": \"call\"}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SimulatorFacade simulatorFacade;
+    private ConfigurationJournal journal;
+
+    @Before
+    public void setUp() {
+        simulatorFacade = mock(SimulatorFacade.class);
+        journal = new ConfigurationJournal(new File(folder.getRoot(), "blobs"), Logger.getLogger(getClass()));
+    }
+
+    @Test
+    public void stepsRunAfterTheirDependencies() throws Exception {
+        List<String> dataSetContents = new ArrayList<>();
+        doAnswer(invocation -> dataSetContents.add(new String(Files.readAllBytes(Paths.get((String) invocation.getArgument(1))), StandardCharsets.UTF_8)))
+                .when(simulatorFacade).loadDataSet(eq("subscribers"), anyString());
+
+        Map<String, Object> result = ConfigurationPlan.parse(DOCUMENT).apply(simulatorFacade, journal, 4, Logger.getLogger(getClass()));
+
+        assertEquals(ConfigurationPlan.PASS, result.get("status"));
+        assertEquals(8, ((List<?>) result.get("steps")).size());
+        assertEquals("id\n1\n", dataSetContents.get(0));
+        InOrder endpoint = inOrder(simulatorFacade);
+        endpoint.verify(simulatorFacade).setEndpointAddress("diameter", "host:3868");
+        endpoint.verify(simulatorFacade).bindRole("client", "diameter", "ccr", "default");
+        endpoint.verify(simulatorFacade).load("/scenarios/call.scen", "default");
+        endpoint.verify(simulatorFacade).setPreferredScenario("call");
+        InOrder table = inOrder(simulatorFacade);
+        table.verify(simulatorFacade).loadDataSet(eq("subscribers"), anyString());
+        table.verify(simulatorFacade).bindTable("subscribers", "subscribers", "default");
+        table.verify(simulatorFacade).load("/scenarios/call.scen", "default");
+    }
+
+    @Test
+    public void failedStepSkipsItsDependentsOnly() throws Exception {
+        doThrow(new IllegalStateException("unreachable")).when(simulatorFacade).setEndpointAddress("diameter", "host:3868");
+
+        Map<String, Object> result = ConfigurationPlan.parse(DOCUMENT).apply(simulatorFacade, journal, 4, Logger.getLogger(getClass()));
+
+        assertEquals(ConfigurationPlan.FAIL, result.get("status"));
+        Map<String, String> states = states(result);
+        assertEquals(ConfigurationPlan.FAIL, states.get("endpoint diameter"));
+        assertEquals(ConfigurationPlan.SKIPPED, states.get("role client"));
+        assertEquals(ConfigurationPlan.PASS, states.get("role caller"));
+        assertEquals(ConfigurationPlan.PASS, states.get("table subscribers"));
+        assertEquals(ConfigurationPlan.SKIPPED, states.get("scenario /scenarios/call.scen"));
+        assertEquals(ConfigurationPlan.SKIPPED, states.get("preferredScenario"));
+        verify(simulatorFacade, never()).bindRole("client", "diameter", "ccr", "default");
+        verify(simulatorFacade, never()).load(anyString(), anyString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void endpointWithoutAddressOrTypeIsRejected() {
+        ConfigurationPlan.parse("{\"endpoints\": [{\"name\": \"diameter\"}]}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedDocumentIsRejected() {
+        ConfigurationPlan.parse("{\"endpoints\": ");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> states(Map<String, Object> result) {
+        Map<String, String> states = new HashMap<>();
+        for (Map<String, Object> step : (List<Map<String, Object>>) result.get("steps")) {
+            states.put((String) step.get("step"), (String) step.get("state"));
+        }
+        return states;
+    }
+}
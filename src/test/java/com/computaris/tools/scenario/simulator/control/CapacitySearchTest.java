@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.control;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.metrics.SnapshotCounters;
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+
+public class CapacitySearchTest {
+    private static final double CAPACITY = 120;
+
+    private final AtomicLong nonMatching = new AtomicLong();
+    private volatile double rate;
+    private BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+
+    /**
+     * The stub fails a session on every stats read while the rate is above {@link #CAPACITY}.
+     */
+    @Before
+    public void setUp() {
+        simulatorFacade = mock(BaseSimulatorFacadeRemoteDecorator.class);
+        doAnswer(invocation -> {
+            rate = invocation.getArgument(0);
+            return null;
+        }).when(simulatorFacade).setSessionRate(anyDouble());
+        when(simulatorFacade.getSessionStatsCounters()).thenAnswer(invocation -> {
+            long count = rate > CAPACITY ? nonMatching.incrementAndGet() : nonMatching.get();
+            return Collections.<String, Number>singletonMap(SnapshotCounters.NON_MATCHING_SESSIONS, count);
+        });
+        when(simulatorFacade.getDialogStatsCounters()).thenReturn(Collections.<String, Number>emptyMap());
+    }
+
+    @Test
+    public void bisectsToTheHighestHealthyRate() throws Exception {
+        Map<String, Object> result = search("1000", "1");
+
+        double sustainable = (Double) result.get("sustainableRate");
+        assertTrue("sustainable rate " + sustainable, sustainable > CAPACITY - 1 && sustainable <= CAPACITY);
+        assertEquals(sustainable, rate, 0);
+        for (Object probe : (List<?>) result.get("probes")) {
+            Map<?, ?> measurement = (Map<?, ?>) probe;
+            assertEquals((Double) measurement.get("rate") <= CAPACITY, measurement.get("healthy"));
+        }
+    }
+
+    @Test
+    public void maxRateIsKeptWhenHealthy() throws Exception {
+        Map<String, Object> result = search("100", "1");
+
+        assertEquals(100.0, result.get("sustainableRate"));
+        assertEquals(2, ((List<?>) result.get("probes")).size());
+    }
+
+    @Test
+    public void unsustainableMinRateLeavesMinRate() throws Exception {
+        Properties settings = settings("1000", "1");
+        settings.setProperty("minRate", "500");
+
+        Map<String, Object> result = new CapacitySearch(simulatorFacade, new SessionLifecycleBridge(), settings, Logger.getLogger(getClass())).run();
+
+        assertEquals(0.0, result.get("sustainableRate"));
+        assertEquals(500, rate, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxRateIsRequired() {
+        new CapacitySearch(simulatorFacade, new SessionLifecycleBridge(), new Properties(), Logger.getLogger(getClass()));
+    }
+
+    private Map<String, Object> search(String maxRate, String tolerance) throws InterruptedException {
+        return new CapacitySearch(simulatorFacade, new SessionLifecycleBridge(), settings(maxRate, tolerance), Logger.getLogger(getClass())).run();
+    }
+
+    private static Properties settings(String maxRate, String tolerance) {
+        Properties settings = new Properties();
+        settings.setProperty("maxRate", maxRate);
+        settings.setProperty("tolerance", tolerance);
+        settings.setProperty("windowSeconds", "0.001");
+        settings.setProperty("settleSeconds", "0");
+        return settings;
+    }
+}
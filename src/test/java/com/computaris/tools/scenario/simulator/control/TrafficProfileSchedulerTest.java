@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.control;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+
+public class TrafficProfileSchedulerTest {
+    private final List<Double> rates = new CopyOnWriteArrayList<>();
+    private BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+    private TrafficProfileScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        simulatorFacade = mock(BaseSimulatorFacadeRemoteDecorator.class);
+        doAnswer(invocation -> rates.add(invocation.getArgument(0))).when(simulatorFacade).setSessionRate(anyDouble());
+        scheduler = new TrafficProfileScheduler(simulatorFacade, Logger.getLogger(getClass()));
+    }
+
+    @Test
+    public void profileSetsChangedRatesUntilCompleted() throws Exception {
+        scheduler.start(TrafficProfile.parse("{\"tickMillis\": 10, \"segments\": ["
+                + "{\"type\": \"step\", \"rate\": 10, \"seconds\": 0.1}, {\"type\": \"step\", \"rate\": 20, \"seconds\": 0.1}]}"));
+
+        awaitState(TrafficProfileScheduler.COMPLETED);
+
+        assertEquals(2, rates.size());
+        assertEquals(10, rates.get(0), 0);
+        assertEquals(20, rates.get(1), 0);
+        assertEquals(2L, scheduler.getProgress().get("rateChanges"));
+    }
+
+    @Test
+    public void pausedProfileHoldsItsRate() throws Exception {
+        scheduler.start(TrafficProfile.parse("{\"tickMillis\": 10, \"segments\": ["
+                + "{\"type\": \"step\", \"rate\": 10, \"seconds\": 0.1}, {\"type\": \"step\", \"rate\": 20, \"seconds\": 0.1}]}"));
+        scheduler.pause();
+        Thread.sleep(300);
+        assertEquals(TrafficProfileScheduler.PAUSED, scheduler.getProgress().get("state"));
+        assertFalse(rates.contains(20.0));
+
+        scheduler.resume();
+        awaitState(TrafficProfileScheduler.COMPLETED);
+        assertTrue(rates.contains(20.0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void onlyOneProfilePlaysAtATime() throws Exception {
+        TrafficProfile profile = TrafficProfile.parse("{\"segments\": [{\"type\": \"step\", \"rate\": 10, \"seconds\": 60}]}");
+        scheduler.start(profile);
+        try {
+            scheduler.start(profile);
+        } finally {
+            assertTrue(scheduler.abort());
+        }
+    }
+
+    @Test
+    public void failingRateChangeFailsTheProfile() throws Exception {
+        doThrow(new IllegalStateException("not operational")).when(simulatorFacade).setSessionRate(anyDouble());
+
+        scheduler.start(TrafficProfile.parse("{\"segments\": [{\"type\": \"step\", \"rate\": 10, \"seconds\": 60}]}"));
+
+        awaitState(TrafficProfileScheduler.FAILED);
+        assertTrue(String.valueOf(scheduler.getProgress().get("error")).contains("not operational"));
+    }
+
+    private void awaitState(String state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!state.equals(scheduler.getProgress().get("state"))) {
+            assertTrue("profile not " + state, System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
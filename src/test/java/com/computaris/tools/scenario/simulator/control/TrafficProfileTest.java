@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.control;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TrafficProfileTest {
+    @Test
+    public void segmentsPlayOneAfterTheOther() throws IOException {
+        TrafficProfile profile = TrafficProfile.parse("{\"segments\": ["
+                + "{\"type\": \"step\", \"rate\": 10, \"seconds\": 10},"
+                + "{\"type\": \"linear\", \"from\": 10, \"to\": 110, \"seconds\": 100},"
+                + "{\"type\": \"sine\", \"rate\": 50, \"amplitude\": 20, \"periodSeconds\": 40, \"seconds\": 40},"
+                + "{\"type\": \"spike\", \"rate\": 5, \"spikeRate\": 200, \"spikeSeconds\": 2, \"everySeconds\": 10, \"seconds\": 20},"
+                + "{\"type\": \"replay\", \"csv\": \"offset,rate\\n0,7\\n5,9\\n8,3\"}]}");
+
+        assertEquals(178, profile.getDurationSeconds(), 0);
+        assertEquals(10, profile.rateAt(5), 0);
+        assertEquals(60, profile.rateAt(60), 1e-9);
+        assertEquals(70, profile.rateAt(120), 1e-9);
+        assertEquals(30, profile.rateAt(140), 1e-9);
+        assertEquals(200, profile.rateAt(161), 0);
+        assertEquals(5, profile.rateAt(165), 0);
+        assertEquals(7, profile.rateAt(174), 0);
+        assertEquals(9, profile.rateAt(175), 0);
+        assertEquals(3, profile.rateAt(200), 0);
+        assertEquals(4, profile.segmentAt(177));
+        assertEquals(TrafficProfile.REPLAY, profile.segmentType(4));
+    }
+
+    @Test
+    public void scaleAndRepeatApplyToTheWholeProfile() throws IOException {
+        TrafficProfile profile = TrafficProfile.parse("{\"scale\": 0.5, \"repeat\": true, \"tickMillis\": 1, \"segments\": ["
+                + "{\"type\": \"step\", \"rate\": 10, \"seconds\": 10}, {\"type\": \"step\", \"rate\": 20, \"seconds\": 10}]}");
+
+        assertEquals(5, profile.rateAt(5), 0);
+        assertEquals(10, profile.rateAt(15), 0);
+        assertEquals(5, profile.rateAt(25), 0);
+        assertEquals(0, profile.segmentAt(25));
+        assertEquals(10, profile.getTickMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSegmentTypeIsRejected() throws IOException {
+        TrafficProfile.parse("{\"segments\": [{\"type\": \"square\", \"seconds\": 10}]}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentWithoutDurationIsRejected() throws IOException {
+        TrafficProfile.parse("{\"segments\": [{\"type\": \"step\", \"rate\": 10}]}");
+    }
+}
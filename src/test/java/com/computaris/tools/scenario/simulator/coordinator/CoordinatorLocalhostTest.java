@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robotframework.remoteserver.RemoteServer;
+
+/**
+ * Two peers and a coordinator, each served over XML-RPC on localhost like separate instances.
+ */
+public class CoordinatorLocalhostTest {
+    private static final String PATH = "/SimulatorFacade";
+    private static final int TIMEOUT_MILLIS = 500;
+    private static final int SLOW_MILLIS = 1500;
+
+    private final List<RemoteServer> servers = new ArrayList<>();
+    private final List<PeerLibrary> peerLibraries = Arrays.asList(new PeerLibrary(), new PeerLibrary());
+    private RemotePeer coordinator;
+
+    @Before
+    public void setUp() throws Exception {
+        List<RemotePeer> peers = new ArrayList<>();
+        for (PeerLibrary library : peerLibraries) {
+            peers.add(new RemotePeer(serve(library), TIMEOUT_MILLIS, 10000));
+        }
+        coordinator = new RemotePeer(serve(new CoordinatorLibrary(peers, Logger.getLogger(getClass()))), 10000, 10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (RemoteServer server : servers) {
+            server.stop();
+        }
+    }
+
+    private String serve(Object library) throws Exception {
+        RemoteServer server = new RemoteServer("127.0.0.1", 0);
+        server.putLibrary(PATH, library);
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getLocalPort() + PATH;
+    }
+
+    @Test
+    public void rateIsSplitAndCountersAreSummed() throws Exception {
+        coordinator.runKeyword("ScenSimSetSessionRate", Collections.<Object>singletonList("10"));
+
+        for (PeerLibrary library : peerLibraries) {
+            assertEquals(5.0, library.rate, 0.0);
+        }
+        Map<?, ?> stats = (Map<?, ?>) coordinator.runKeyword("ScenSimGetSessionStats", Collections.emptyList());
+        assertEquals("2", String.valueOf(stats.get("nonMatchingSessionsCount")));
+    }
+
+    @Test
+    public void peerRepliesAreBoundedByThePeerTimeout() throws Exception {
+        try {
+            coordinator.runKeyword("ScenSimGetScenarioNames", Collections.emptyList());
+            fail("peer timeout expected");
+        } catch (RemotePeer.KeywordFailedException | XmlRpcException e) {
+            assertTrue(String.valueOf(e.getMessage()), String.valueOf(e.getMessage()).toLowerCase().contains("timed out")
+                    || String.valueOf(e.getMessage()).toLowerCase().contains("timeout"));
+        }
+    }
+
+    @Test
+    public void changingKeywordsGetTheLongTimeout() throws Exception {
+        coordinator.runKeyword("ScenSimWaitUntilOperational", Collections.<Object>singletonList("1"));
+        coordinator.runKeyword("ScenSimLoadDataSet", Arrays.<Object>asList("data", "a,b"));
+
+        for (PeerLibrary library : peerLibraries) {
+            assertEquals(2, library.slowCalls);
+        }
+    }
+
+    @Test
+    public void onlyReadOnlyKeywordsGetTheShortTimeout() {
+        for (String keyword : new String[]{"ScenSimGetSessionStats", "scen_sim_get_scenario_names", "ScenSimVerifyStatus", "ScenSimPollJob"}) {
+            assertTrue(keyword, RemotePeer.isReadOnly(keyword));
+        }
+        for (String keyword : new String[]{"ScenSimLoadDataSet", "ScenSimCommitDataSetUpload", "ScenSimApplyConfiguration",
+                "ScenSimRestoreConfigurationSnapshot", "ScenSimSaveConfigurationSnapshot", "ScenSimLoad", "ScenSimLoadNoConfig",
+                "ScenSimCreateLocalEndpointWithConfigurationFile", "ScenSimRunSessions", "ScenSimQuit"}) {
+            assertFalse(keyword, RemotePeer.isReadOnly(keyword));
+        }
+    }
+
+    /**
+     * Dynamic library standing in for the keywords of a simulator instance.
+     */
+    public static class PeerLibrary {
+        volatile double rate;
+        volatile int slowCalls;
+
+        public List<String> getKeywordNames() {
+            return Arrays.asList("ScenSimSetSessionRate", "ScenSimGetSessionStats", "ScenSimGetScenarioNames",
+                    "ScenSimWaitUntilOperational", "ScenSimLoadDataSet");
+        }
+
+        public Object runKeyword(String keyword, List<Object> args, Map<String, Object> kwargs) throws Exception {
+            switch (keyword) {
+                case "ScenSimSetSessionRate":
+                    rate = Double.parseDouble(String.valueOf(args.get(0)));
+                    return "";
+                case "ScenSimGetSessionStats":
+                    Map<String, Object> stats = new TreeMap<>();
+                    stats.put("nonMatchingSessionsCount", 1);
+                    return stats;
+                case "ScenSimWaitUntilOperational":
+                case "ScenSimLoadDataSet":
+                    Thread.sleep(SLOW_MILLIS);
+                    slowCalls++;
+                    return "";
+                default:
+                    Thread.sleep(SLOW_MILLIS);
+                    return "";
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.dataset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DataSetUploadsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void committedUploadIsStoredByDigest() throws IOException {
+        DataSetUploads uploads = new DataSetUploads(folder.getRoot(), 60000, Long.MAX_VALUE);
+        String uploadId = (String) uploads.begin("data", 0, "").get("uploadId");
+        uploads.append(uploadId, "a,b\n", DataSetUploads.ENCODING_PLAIN);
+        uploads.append(uploadId, "1,2\n", DataSetUploads.ENCODING_PLAIN);
+        File stored = uploads.commit(uploadId);
+
+        assertEquals("a,b\n1,2\n", new String(Files.readAllBytes(stored.toPath()), Charset.defaultCharset()));
+        assertEquals(true, uploads.begin("data", 0, stored.getName().substring(0, 64)).get("present"));
+    }
+
+    @Test
+    public void idleUploadIsDiscardedWithItsFile() throws Exception {
+        DataSetUploads uploads = new DataSetUploads(folder.getRoot(), 0, Long.MAX_VALUE);
+        String uploadId = (String) uploads.begin("data", 1024, "").get("uploadId");
+        assertEquals(1, folder.getRoot().list().length);
+
+        uploads.expireIdle();
+
+        assertEquals(0, folder.getRoot().list().length);
+        try {
+            uploads.append(uploadId, "a", DataSetUploads.ENCODING_PLAIN);
+            throw new AssertionError("expired upload accepted a chunk");
+        } catch (IllegalArgumentException expected) {
+            // no longer known
+        }
+    }
+
+    @Test
+    public void storeIsPrunedToItsSizeLeastRecentlyUsedFirst() throws IOException {
+        DataSetUploads uploads = new DataSetUploads(folder.getRoot(), 60000, 10);
+        File first = upload(uploads, "123456");
+        first.setLastModified(System.currentTimeMillis() - 60000);
+        File second = upload(uploads, "abcdef");
+
+        assertFalse(first.exists());
+        assertTrue(second.isFile());
+    }
+
+    private static File upload(DataSetUploads uploads, String content) throws IOException {
+        String uploadId = (String) uploads.begin("data", 0, "").get("uploadId");
+        uploads.append(uploadId, content, DataSetUploads.ENCODING_PLAIN);
+        return uploads.commit(uploadId);
+    }
+}
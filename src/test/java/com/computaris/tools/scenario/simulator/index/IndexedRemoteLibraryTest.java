@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.SimulatorFacadeRemoteDecorator;
+
+public class IndexedRemoteLibraryTest {
+    private SimulatorFacadeRemoteDecorator decorator;
+    private IndexedRemoteLibrary library;
+
+    @Before
+    public void setUp() {
+        KeywordIndex index = KeywordIndex.forClass(SimulatorFacadeRemoteDecorator.class);
+        assertNotNull(index);
+        decorator = mock(SimulatorFacadeRemoteDecorator.class);
+        library = new IndexedRemoteLibrary(decorator, index);
+    }
+
+    @Test
+    public void overloadIsPickedByArgumentCountAndArgumentsConverted() throws Throwable {
+        Map<String, Object> result = Collections.singletonMap("status", "PASS");
+        when(decorator.scenSimRunSessions("call", 5, 2)).thenReturn(result);
+
+        assertEquals(result, library.runKeyword("ScenSim Run Sessions", arguments("call", "5", "2"), null));
+        assertNull(library.runKeyword("scen_sim_start_stats_sampler", arguments("250", "10"), null));
+        verify(decorator).scenSimStartStatsSampler(250L, 10);
+    }
+
+    @Test
+    public void overloadOfTheSameCountIsPickedByArgumentType() throws Throwable {
+        Map<String, Double> weights = new HashMap<>();
+        weights.put("call", 1.0);
+
+        library.runKeyword("ScenSimSetPreferredScenario", arguments("call"), null);
+        library.runKeyword("ScenSimSetPreferredScenario", arguments(weights), null);
+
+        verify(decorator).scenSimSetPreferredScenario("call");
+        verify(decorator).scenSimSetPreferredScenario(weights);
+    }
+
+    @Test
+    public void unknownKeywordsAndArgumentCountsAreRejected() throws Throwable {
+        try {
+            library.runKeyword("ScenSimNoSuchKeyword", arguments(), null);
+            fail("Unknown keyword was run");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            library.runKeyword("ScenSimRunSessions", arguments("call"), null);
+            fail("Keyword was run without an overload of the argument count");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<String> arguments(Object... args) {
+        return (List) Arrays.asList(args);
+    }
+}
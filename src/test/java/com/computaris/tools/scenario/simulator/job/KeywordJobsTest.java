@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+public class KeywordJobsTest {
+    private final HeldExecutor executor = new HeldExecutor();
+    private final KeywordJobs jobs = new KeywordJobs(executor, Logger.getLogger(getClass()));
+
+    @Test
+    public void jobCanBeAwaitedAndCancelledBeforeItIsScheduled() throws Exception {
+        String jobId = jobs.submit("ScenSimRunSessions", () -> "done");
+
+        assertEquals(KeywordJobs.RUNNING, jobs.poll(jobId).get("state"));
+        try {
+            jobs.await(jobId, 10);
+            fail("timeout expected");
+        } catch (TimeoutException expected) {
+            // not scheduled yet
+        }
+        assertTrue(jobs.cancel(jobId));
+        executor.runAll();
+        assertEquals(KeywordJobs.CANCELLED, jobs.poll(jobId).get("state"));
+        try {
+            jobs.await(jobId, 10);
+            fail("cancellation expected");
+        } catch (CancellationException expected) {
+            // cancelled before running
+        }
+    }
+
+    @Test
+    public void scheduledJobPasses() throws Exception {
+        String jobId = jobs.submit("ScenSimGetScenarioNames", () -> "names");
+        executor.runAll();
+
+        assertEquals("names", jobs.await(jobId, 10));
+        assertEquals(KeywordJobs.PASS, jobs.poll(jobId).get("state"));
+    }
+
+    /**
+     * Executor running its tasks only when asked, to hold jobs between submission and scheduling.
+     */
+    private static final class HeldExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        synchronized void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.computaris.tools.scenario.simulator.session.SessionOutcomes;
+
+public class SessionJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> read(File directory) throws IOException {
+        final List<String> records = new ArrayList<>();
+        new SessionJournalReader(directory).read((endMillis, scenarioName, outcome, successful, durationNanos) ->
+                records.add(scenarioName + ":" + outcome + ":" + successful + ":" + durationNanos));
+        return records;
+    }
+
+    @Test
+    public void recordsAreReadBackAcrossSegments() throws IOException {
+        File directory = folder.getRoot();
+        SessionJournal journal = new SessionJournal(directory, 2, 10, Logger.getLogger(getClass()));
+        for (int i = 0; i < 5; i++) {
+            journal.sessionEnded(null, i % 2 == 0 ? "call" : "sms", null, i * 1000);
+        }
+        journal.flush();
+
+        assertEquals(3, SessionJournalReader.segmentFiles(directory).size());
+        List<String> records = read(directory);
+        assertEquals(5, records.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals((i % 2 == 0 ? "call" : "sms") + ":" + SessionOutcomes.NO_OUTCOME + ":false:" + i * 1000, records.get(i));
+        }
+    }
+
+    @Test
+    public void oldestSegmentsAreDroppedAndNamesKeptPerRun() throws IOException {
+        File directory = folder.getRoot();
+        SessionJournal first = new SessionJournal(directory, 2, 2, Logger.getLogger(getClass()));
+        for (int i = 0; i < 3; i++) {
+            first.sessionEnded(null, "call", null, i);
+        }
+        first.flush();
+        // a new run numbers its names afresh, sms taking the id call had
+        SessionJournal second = new SessionJournal(directory, 2, 2, Logger.getLogger(getClass()));
+        second.sessionEnded(null, "sms", null, 3);
+        second.flush();
+
+        List<String> records = read(directory);
+        assertEquals(2, records.size());
+        assertEquals("call:" + SessionOutcomes.NO_OUTCOME + ":false:2", records.get(0));
+        assertEquals("sms:" + SessionOutcomes.NO_OUTCOME + ":false:3", records.get(1));
+    }
+}
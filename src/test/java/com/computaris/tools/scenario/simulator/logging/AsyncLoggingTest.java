@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+public class AsyncLoggingTest {
+    @Test
+    public void eventsReachTheAppendersOfTheLoggerAsynchronously() throws Exception {
+        Collector collector = new Collector();
+        Logger parent = Logger.getLogger("async-logging-test");
+        parent.addAppender(collector);
+
+        Logger logger = AsyncLogging.asyncLogger("async-logging-test.keywords");
+        logger.info("loadNoConfig");
+
+        assertNotNull(logger.getAppender("async"));
+        assertFalse(logger.getAdditivity());
+        assertSame(logger, AsyncLogging.asyncLogger("async-logging-test.keywords"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (collector.messages.isEmpty()) {
+            assertTrue("event not delivered", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals("loadNoConfig", collector.messages.get(0));
+    }
+
+    @Test
+    public void loggerWithoutAppendersStaysSynchronous() {
+        Logger.getLogger("async-logging-test-unconfigured").setAdditivity(false);
+
+        Logger logger = AsyncLogging.asyncLogger("async-logging-test-unconfigured");
+
+        assertNull(logger.getAppender("async"));
+    }
+
+    @Test
+    public void longValuesAreCut() {
+        char[] text = new char[1000];
+        Arrays.fill(text, 'x');
+
+        String bounded = AsyncLogging.bounded(new String(text));
+
+        assertTrue(bounded, bounded.endsWith("...(1000 chars)"));
+        assertEquals("short", AsyncLogging.bounded("short"));
+    }
+
+    private static final class Collector extends AppenderSkeleton {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void append(LoggingEvent event) {
+            messages.add(event.getRenderedMessage());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
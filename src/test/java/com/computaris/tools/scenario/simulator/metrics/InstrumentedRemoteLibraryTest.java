@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+public class InstrumentedRemoteLibraryTest {
+    private final KeywordStats stats = new KeywordStats();
+    private InstrumentedRemoteLibrary library;
+
+    @Before
+    public void setUp() throws Throwable {
+        RemoteLibrary delegate = mock(RemoteLibrary.class);
+        when(delegate.getKeywordNames()).thenReturn(Arrays.asList("ScenSimGetScenarioNames", "ScenSimLoadDataSet"));
+        when(delegate.runKeyword(eq("scen_sim_get_scenario_names"), anyList(), anyMap())).thenReturn(Collections.emptyList());
+        when(delegate.runKeyword(eq("ScenSimLoadDataSet"), anyList(), anyMap())).thenThrow(new IllegalStateException("no file"));
+        library = new InstrumentedRemoteLibrary(delegate, stats);
+    }
+
+    @Test
+    public void callsAreRecordedUnderTheListedName() throws Throwable {
+        library.runKeyword("scen_sim_get_scenario_names", Collections.<String>emptyList(), Collections.<String, Object>emptyMap());
+        library.runKeyword("scen_sim_get_scenario_names", Collections.<String>emptyList(), Collections.<String, Object>emptyMap());
+        try {
+            library.runKeyword("ScenSimLoadDataSet", Collections.<String>emptyList(), Collections.<String, Object>emptyMap());
+            fail("keyword error expected");
+        } catch (IllegalStateException expected) {
+        }
+        library.runKeyword("ScenSimNoSuchKeyword", Collections.<String>emptyList(), Collections.<String, Object>emptyMap());
+
+        Map<String, Map<String, Object>> keywords = stats.getStats();
+        assertEquals(2, keywords.size());
+        assertEquals(2L, keywords.get("ScenSimGetScenarioNames").get("calls"));
+        assertEquals(0L, keywords.get("ScenSimGetScenarioNames").get("errors"));
+        assertEquals(1L, keywords.get("ScenSimLoadDataSet").get("errors"));
+        assertEquals(Long.valueOf(2), stats.getCalls().get("ScenSimGetScenarioNames"));
+
+        stats.reset();
+        assertTrue(stats.getStats().isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void smallValuesHaveExactBuckets() {
+        for (long micros = 0; micros < 32; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(micros)));
+        }
+    }
+
+    @Test
+    public void bucketsBoundTheRelativeError() {
+        Random random = new Random(42);
+        int previous = -1;
+        for (long micros = 32; micros > 0 && micros < Long.MAX_VALUE / 4; micros += 1 + (micros >>> 6)) {
+            int bucket = LatencyHistogram.bucketIndex(micros);
+            long upper = LatencyHistogram.bucketUpperBound(bucket);
+            assertTrue(bucket >= previous);
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+            assertTrue(micros + " in bucket up to " + upper, upper >= micros);
+            assertTrue(micros + " in bucket up to " + upper, upper - micros <= micros / 16);
+            previous = bucket;
+            micros += random.nextInt(3);
+        }
+    }
+
+    @Test
+    public void summaryAndResetStartANewWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1000000L);
+        }
+
+        Map<String, Object> summary = histogram.summary();
+        assertEquals(100L, summary.get("count"));
+        assertEquals(50.5, (Double) summary.get("mean"), 0.001);
+        assertEquals(50.0, (Double) summary.get("p50"), 50 * 0.07);
+        assertEquals(99.0, (Double) summary.get("p99"), 99 * 0.07);
+        assertEquals(100.0, (Double) summary.get("max"), 0.0);
+
+        assertEquals(summary, histogram.reset());
+        assertEquals(0L, histogram.summary().get("count"));
+        histogram.record(5000000L);
+        assertEquals(1L, histogram.reset().get("count"));
+        assertEquals(0L, histogram.reset().get("count"));
+    }
+
+    @Test
+    public void resetsRacingWithRecordsLoseNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final long[] recorded = new long[4];
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < recorded.length; w++) {
+            final int writer = w;
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    histogram.record(1000L * (recorded[writer] % 1000));
+                    recorded[writer]++;
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+        long counted = 0;
+        for (int i = 0; i < 200; i++) {
+            counted += (Long) histogram.reset().get("count");
+        }
+        running.set(false);
+        long total = 0;
+        for (int w = 0; w < writers.size(); w++) {
+            writers.get(w).join();
+            total += recorded[w];
+        }
+        counted += (Long) histogram.reset().get("count");
+
+        assertEquals(total, counted);
+    }
+
+    @Test
+    public void scenarioOutcomesAreResetTogether() throws InterruptedException {
+        final SessionLatencyRecorder recorder = new SessionLatencyRecorder();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                recorder.sessionEnded(null, "call", null, 1000000L);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                Map<String, Map<String, Object>> closed = recorder.resetLatency("call");
+                if (!closed.isEmpty()) {
+                    assertEquals(closed.get(SessionLatencyRecorder.ALL_OUTCOMES).get("count"), closed.get("NONE").get("count"));
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
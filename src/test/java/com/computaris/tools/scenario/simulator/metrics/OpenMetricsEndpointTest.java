@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+
+public class OpenMetricsEndpointTest {
+    private final KeywordStats keywordStats = new KeywordStats();
+    private BaseSimulatorFacadeRemoteDecorator simulatorFacade;
+
+    @Before
+    public void setUp() {
+        simulatorFacade = mock(BaseSimulatorFacadeRemoteDecorator.class);
+        when(simulatorFacade.getSessionStatsCounters()).thenReturn(Collections.<String, Number>singletonMap("nonMatchingSessionsCount", 3L));
+        when(simulatorFacade.getDialogStatsCounters()).thenReturn(Collections.<String, Number>singletonMap("dialogsRejected", 1L));
+        when(simulatorFacade.getSessionRate()).thenReturn(12.5);
+        when(simulatorFacade.isGeneratingSessions()).thenReturn(true);
+        when(simulatorFacade.getConnectivityStatusSummary()).thenReturn("diameter: connected\nsip: \"down\"\n");
+        when(simulatorFacade.getEndpointNames()).thenReturn(Arrays.asList("diameter", "sip"));
+        Map<String, Object> cacheStats = new LinkedHashMap<>();
+        cacheStats.put("hits", 4L);
+        cacheStats.put("misses", 2L);
+        cacheStats.put("invalidations", 1L);
+        when(simulatorFacade.getMetadataCacheStats()).thenReturn(cacheStats);
+        keywordStats.record("ScenSimGetScenarioNames", 1000000, false);
+        keywordStats.record("ScenSimGetScenarioNames", 1000000, true);
+        System.setProperty(OpenMetricsEndpoint.CACHE_MILLIS_PROPERTY, "60000");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(OpenMetricsEndpoint.CACHE_MILLIS_PROPERTY);
+    }
+
+    @Test
+    public void exposesSimulatorAndKeywordStats() throws IOException {
+        String exposition = new OpenMetricsEndpoint(0, simulatorFacade, keywordStats, Logger.getLogger(getClass())).render();
+
+        assertTrue(exposition, exposition.contains("\nscensim_session_non_matching_sessions_count 3\n"));
+        assertTrue(exposition, exposition.contains("\nscensim_dialog_dialogs_rejected 1\n"));
+        assertTrue(exposition, exposition.contains("\nscensim_session_rate 12.5\n"));
+        assertTrue(exposition, exposition.contains("\nscensim_generating_sessions 1\n"));
+        assertTrue(exposition, exposition.contains("scensim_endpoint_connectivity_info{endpoint=\"sip\",status=\"sip: \\\"down\\\"\"} 1\n"));
+        assertTrue(exposition, exposition.contains("\nscensim_metadata_cache_hits_total 4\n"));
+        assertTrue(exposition, exposition.contains("scensim_keyword_calls_total{keyword=\"ScenSimGetScenarioNames\"} 2\n"));
+        assertTrue(exposition, exposition.contains("scensim_keyword_errors_total{keyword=\"ScenSimGetScenarioNames\"} 1\n"));
+        assertTrue(exposition, exposition.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void scrapesWithinTheCachePeriodDoNotReachTheSimulator() throws IOException {
+        OpenMetricsEndpoint endpoint = new OpenMetricsEndpoint(0, simulatorFacade, keywordStats, Logger.getLogger(getClass()));
+        endpoint.start();
+
+        String first = scrape(endpoint.getLocalPort());
+        String second = scrape(endpoint.getLocalPort());
+
+        assertEquals(first, second);
+        verify(simulatorFacade, times(1)).getSessionStatsCounters();
+    }
+
+    @Test
+    public void snakeCaseNames() {
+        assertEquals("non_matching_sessions_count", OpenMetricsEndpoint.snakeCase("nonMatchingSessionsCount"));
+        assertEquals("dialogs_rejected_2xx", OpenMetricsEndpoint.snakeCase("dialogsRejected-2xx"));
+    }
+
+    private static String scrape(int port) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/metrics").openConnection();
+        try {
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("application/openmetrics-text"));
+            try (InputStream in = connection.getInputStream()) {
+                return IOUtils.toString(in, StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
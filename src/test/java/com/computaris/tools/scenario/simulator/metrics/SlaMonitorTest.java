@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+import com.computaris.tools.scenario.simulator.session.SessionLifecycleBridge;
+
+public class SlaMonitorTest {
+    private SlaMonitor monitor;
+
+    @Before
+    public void setUp() {
+        System.setProperty(SlaMonitor.SLOT_MILLIS_PROPERTY, "50");
+        BaseSimulatorFacadeRemoteDecorator simulatorFacade = mock(BaseSimulatorFacadeRemoteDecorator.class);
+        when(simulatorFacade.getDialogStatsCounters()).thenReturn(Collections.<String, Number>emptyMap());
+        when(simulatorFacade.getSessionRate()).thenReturn(1000.0);
+        monitor = new SlaMonitor(simulatorFacade, new SessionLifecycleBridge(), Logger.getLogger(getClass()));
+    }
+
+    @After
+    public void tearDown() {
+        monitor.stop();
+        System.clearProperty(SlaMonitor.SLOT_MILLIS_PROPERTY);
+    }
+
+    @Test
+    public void noCompleteSlotIsNoData() {
+        assertEquals(SlaMonitor.NO_DATA, monitor.evaluate(rules("maxErrorRatio", "0")).get("status"));
+    }
+
+    @Test
+    public void rulesAreCheckedOverTheCompleteSlotsOfTheWindow() throws Exception {
+        monitor.start();
+        for (int i = 0; i < 10; i++) {
+            // no outcome counts as failed
+            monitor.sessionEnded(new Object(), "call", null, TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        Thread.sleep(120);
+
+        Properties rules = rules("maxErrorRatio", "0.5");
+        rules.setProperty("maxLatencyP99Millis", "100");
+        rules.setProperty("minRateRatio", "0.9");
+        Map<String, Object> result = monitor.evaluate(rules);
+
+        assertEquals(SlaMonitor.FAIL, result.get("status"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> measurements = (Map<String, Object>) result.get("measurements");
+        assertEquals(10L, measurements.get("sessions"));
+        assertEquals(1.0, (Double) measurements.get("errorRatio"), 0);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> violations = (List<Map<String, Object>>) result.get("violations");
+        assertEquals(2, violations.size());
+        assertEquals("maxErrorRatio", violations.get(0).get("rule"));
+        assertEquals("minRateRatio", violations.get(1).get("rule"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownRuleIsRejected() {
+        monitor.evaluate(rules("maxErrors", "1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowAboveTheMaximumIsRejected() {
+        monitor.evaluate(rules("windowSeconds", "3600"));
+    }
+
+    private static Properties rules(String rule, String limit) {
+        Properties rules = new Properties();
+        rules.setProperty("windowSeconds", "1");
+        rules.setProperty(rule, limit);
+        return rules;
+    }
+}
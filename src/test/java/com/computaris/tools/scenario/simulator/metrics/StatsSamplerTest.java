@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+
+public class StatsSamplerTest {
+    private static final String ENDED = "endedSessionsCount";
+    private static final long[] VALUES = {10, 30, 5, 25};
+
+    private final AtomicInteger reads = new AtomicInteger();
+    private StatsSampler sampler;
+
+    @Before
+    public void setUp() {
+        BaseSimulatorFacadeRemoteDecorator simulatorFacade = mock(BaseSimulatorFacadeRemoteDecorator.class);
+        when(simulatorFacade.getSessionStatsCounters()).thenAnswer(invocation -> {
+            long value = VALUES[Math.min(reads.getAndIncrement(), VALUES.length - 1)];
+            return Collections.<String, Number>singletonMap(ENDED, value);
+        });
+        when(simulatorFacade.getDialogStatsCounters()).thenReturn(Collections.<String, Number>emptyMap());
+        sampler = new StatsSampler(simulatorFacade, Logger.getLogger(getClass()));
+    }
+
+    @After
+    public void tearDown() {
+        sampler.stop();
+    }
+
+    @Test
+    public void samplesKeepValuesAndDeltasCountingAgainAfterAReset() throws Exception {
+        sampler.start(10, 10);
+        awaitReads(VALUES.length);
+        sampler.stop();
+
+        List<Map<String, Object>> samples = samples(sampler.getSamples(0));
+        assertTrue(samples.size() >= VALUES.length);
+        double[] deltas = {0, 20, 5, 20};
+        for (int i = 0; i < VALUES.length; i++) {
+            Map<String, Double> ended = counter(samples.get(i), ENDED);
+            assertEquals(VALUES[i], ended.get("value"), 0);
+            assertEquals(deltas[i], ended.get("delta"), 0);
+        }
+        assertEquals(false, sampler.getSamples(0).get("running"));
+    }
+
+    @Test
+    public void onlyTheLastCapacitySamplesAfterTheTimestampAreReturned() throws Exception {
+        sampler.start(10, 2);
+        awaitReads(VALUES.length + 1);
+        sampler.stop();
+
+        Map<String, Object> result = sampler.getSamples(0);
+        List<Map<String, Object>> samples = samples(result);
+        assertEquals(2, samples.size());
+        long latest = (Long) result.get("latestTimestamp");
+        assertEquals(latest, samples.get(1).get("timestamp"));
+        assertTrue(samples(sampler.getSamples(latest)).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalMustBePositive() {
+        sampler.start(0, 10);
+    }
+
+    private void awaitReads(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reads.get() < count) {
+            assertTrue("fewer than " + count + " samples taken", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        // let the last sample be recorded
+        Thread.sleep(20);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> samples(Map<String, Object> result) {
+        return (List<Map<String, Object>>) result.get("samples");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Double> counter(Map<String, Object> sample, String name) {
+        return ((Map<String, Map<String, Double>>) sample.get(StatsSampler.SESSION_STATS)).get(name);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.computaris.tools.scenario.simulator.BaseSimulatorFacadeRemoteDecorator;
+
+public class StatsScopesTest {
+    private final BaseSimulatorFacadeRemoteDecorator simulatorFacade = mock(BaseSimulatorFacadeRemoteDecorator.class);
+    private final StatsScopes scopes = new StatsScopes(simulatorFacade);
+
+    @Test
+    public void countersAreCountedFromTheBaselineAndGaugesReportedAsTheyAre() {
+        when(simulatorFacade.getSessionStatsCounters()).thenReturn(counters(10, 7)).thenReturn(counters(15, 9));
+        scopes.reset("client");
+
+        Map<String, Number> stats = scopes.getSessionStats("client");
+
+        assertEquals(5L, stats.get(SnapshotCounters.NON_MATCHING_SESSIONS));
+        assertEquals(9L, stats.get("activeSessions"));
+    }
+
+    @Test
+    public void gaugesAreRecognizedByName() {
+        assertTrue(SnapshotCounters.isGauge("activeSessions"));
+        assertTrue(SnapshotCounters.isGauge("currentSessionRate"));
+        assertTrue(SnapshotCounters.isGauge("sessionsInProgress"));
+        assertFalse(SnapshotCounters.isGauge(SnapshotCounters.NON_MATCHING_SESSIONS));
+        assertFalse(SnapshotCounters.isGauge(SnapshotCounters.DIALOGS_REJECTED));
+    }
+
+    private static Map<String, Number> counters(long nonMatching, long active) {
+        Map<String, Number> counters = new TreeMap<>();
+        counters.put(SnapshotCounters.NON_MATCHING_SESSIONS, nonMatching);
+        counters.put("activeSessions", active);
+        return counters;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.payload;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.computaris.tools.scenario.simulator.cache.ContentDigest;
+
+public class PayloadsTest {
+    private static final String CONTENT = "id,msisdn\n1,447700900001\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyEncodingDecodesToTheSameFile() throws IOException {
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        assertDecodes(CONTENT, Payloads.ENCODING_PLAIN);
+        assertDecodes(Base64.getEncoder().encodeToString(bytes), Payloads.ENCODING_BASE64);
+        assertDecodes(Base64.getMimeEncoder().encodeToString(gzip(bytes)), Payloads.ENCODING_GZIP);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEncodingIsRejected() throws IOException {
+        Payloads.decode(CONTENT, "zip", folder.newFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptGzipFails() throws IOException {
+        Payloads.decode(Base64.getEncoder().encodeToString(CONTENT.getBytes(StandardCharsets.UTF_8)), Payloads.ENCODING_GZIP, folder.newFile());
+    }
+
+    private void assertDecodes(String payload, String encoding) throws IOException {
+        File target = folder.newFile();
+        String digest = Payloads.decode(payload, encoding, target);
+
+        byte[] decoded = Files.readAllBytes(target.toPath());
+        assertEquals(CONTENT, new String(decoded, StandardCharsets.UTF_8));
+        assertEquals(ContentDigest.of(decoded), digest);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
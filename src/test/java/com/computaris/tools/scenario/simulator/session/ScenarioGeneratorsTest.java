@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+public class ScenarioGeneratorsTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ScenarioGenerators generators;
+
+    @Before
+    public void setUp() {
+        SimulatorFacade simulatorFacade = mock(SimulatorFacade.class);
+        when(simulatorFacade.getInitiatingScenarioNames()).thenReturn(Collections.singletonList("call"));
+        generators = new ScenarioGenerators(simulatorFacade, executor, Logger.getLogger(getClass()));
+    }
+
+    @After
+    public void tearDown() {
+        generators.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void generatorStartsSessionsUntilStopped() throws Exception {
+        generators.setRate("call", 200);
+        generators.start("call");
+        awaitStarted(20);
+
+        generators.stop("call");
+        Thread.sleep(50);
+        long started = started();
+        Thread.sleep(200);
+        assertEquals(started, started());
+        assertEquals(false, generators.getRates().get("call").get("running"));
+    }
+
+    @Test
+    public void shutdownStopsTheTimer() throws Exception {
+        generators.setRate("call", 200);
+        generators.start("call");
+        awaitStarted(5);
+
+        generators.shutdown();
+        Thread.sleep(50);
+        long started = started();
+        Thread.sleep(200);
+        assertEquals(started, started());
+
+        generators.start("call");
+        awaitStarted(started + 5);
+    }
+
+    @Test
+    public void removedScenarioLosesItsGenerator() {
+        generators.setRate("call", 10);
+        assertTrue(generators.getRates().containsKey("call"));
+
+        generators.remove("call");
+
+        assertFalse(generators.getRates().containsKey("call"));
+        assertTrue(generators.getStats(null).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyInitiatingScenariosHaveGenerators() {
+        generators.setRate("answer", 10);
+    }
+
+    private long started() {
+        return (Long) generators.getStats("call").get("call").get("started");
+    }
+
+    private void awaitStarted(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (started() < count) {
+            assertTrue("fewer than " + count + " sessions started", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
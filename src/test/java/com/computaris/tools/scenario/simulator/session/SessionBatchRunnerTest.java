@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+public class SessionBatchRunnerTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void errorsAreLabelledAsFailures() throws Exception {
+        SimulatorFacade simulatorFacade = mock(SimulatorFacade.class);
+        when(simulatorFacade.runSession(eq("call"), isNull()))
+                .thenReturn(null)
+                .thenThrow(new NoClassDefFoundError("missing"))
+                .thenReturn(null);
+
+        Map<String, Object> result = new SessionBatchRunner(simulatorFacade, executor).run("call", 3, 1);
+
+        assertEquals(3, result.get("failed"));
+        @SuppressWarnings("unchecked")
+        Map<String, Integer> outcomes = (Map<String, Integer>) result.get("outcomes");
+        assertEquals(Integer.valueOf(2), outcomes.get(SessionOutcomes.NO_OUTCOME));
+        assertEquals(Integer.valueOf(1), outcomes.get("NoClassDefFoundError"));
+    }
+
+    @Test
+    public void interruptStopsTheWorkers() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        SimulatorFacade simulatorFacade = mock(SimulatorFacade.class);
+        when(simulatorFacade.runSession(eq("call"), isNull())).thenAnswer(invocation -> {
+            started.incrementAndGet();
+            running.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IllegalStateException("interrupted", e);
+            }
+            return null;
+        });
+        final SessionBatchRunner runner = new SessionBatchRunner(simulatorFacade, executor);
+        final AtomicInteger callerInterrupted = new AtomicInteger();
+        Thread caller = new Thread(() -> {
+            try {
+                runner.run("call", 1000, 2);
+            } catch (InterruptedException e) {
+                callerInterrupted.incrementAndGet();
+            }
+        });
+        caller.start();
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+
+        caller.interrupt();
+        caller.join(10000);
+
+        assertEquals(1, callerInterrupted.get());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(2, started.get());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.opencloud.tools.scenario.simulator.monitoring.SessionOutcome;
+
+public class SessionLifecycleBridgeTest {
+
+    public interface Listener {
+        void sessionStarted(Object session, String scenarioName);
+
+        void sessionEnded(Object session, String scenarioName, SessionOutcome outcome);
+    }
+
+    public interface RestartListener {
+        void restart(Object session, String scenarioName);
+    }
+
+    public interface AmbiguousListener {
+        void sessionEnded(Object session, String dialogName, String scenarioName, SessionOutcome outcome);
+    }
+
+    @Test
+    public void sessionEndCarriesScenarioAndDuration() throws Exception {
+        SessionLifecycleBridge bridge = new SessionLifecycleBridge(16, Listener.class);
+        final List<String> ended = new ArrayList<>();
+        final List<Long> durations = new ArrayList<>();
+        bridge.addSink((session, scenarioName, outcome, durationNanos) -> {
+            ended.add(scenarioName);
+            durations.add(durationNanos);
+        });
+        Object session = new Object();
+
+        bridge.invoke(null, Listener.class.getMethod("sessionStarted", Object.class, String.class), new Object[]{session, "call"});
+        bridge.invoke(null, Listener.class.getMethod("sessionEnded", Object.class, String.class, SessionOutcome.class),
+                new Object[]{session, "call", null});
+        bridge.invoke(null, Listener.class.getMethod("sessionEnded", Object.class, String.class, SessionOutcome.class),
+                new Object[]{new Object(), "sms", null});
+
+        assertEquals(2, ended.size());
+        assertEquals("call", ended.get(0));
+        assertTrue(durations.get(0) >= 0);
+        assertEquals("sms", ended.get(1));
+        assertEquals(-1L, (long) durations.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownCallbackIsRejected() {
+        new SessionLifecycleBridge(16, RestartListener.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ambiguousScenarioIsRejected() {
+        new SessionLifecycleBridge(16, AmbiguousListener.class);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SessionMessageCaptureTest {
+    private final AtomicInteger renders = new AtomicInteger();
+    private final SessionMessageCapture capture = new SessionMessageCapture();
+
+    @Test
+    public void messagesAreRenderedWhenCaptured() throws Exception {
+        capture.start(16, 4);
+        Session session = new Session("s1");
+        Rendered request = new Rendered("request");
+        message(session, request);
+        message(new Session("s2"), new Rendered("other"));
+        message(session, new Rendered("answer"));
+        assertEquals(3, renders.get());
+        request.text = "changed after the callback";
+        capture.sessionEnded(session, "call", null, 0);
+
+        List<Map<String, Object>> traces = capture.getFailedSessionTraces(10);
+
+        assertEquals(1, traces.size());
+        assertEquals("s1", traces.get(0).get("session"));
+        assertEquals("call NONE", traces.get(0).get("outcome"));
+        assertEquals(Arrays.asList("message request", "message answer"), texts(traces.get(0)));
+        assertEquals(3, renders.get());
+    }
+
+    @Test
+    public void sessionsWithEqualHashesAreKeptApart() throws Exception {
+        capture.start(16, 4);
+        Session first = new Session("s1");
+        Session second = new Session("s2");
+        assertEquals(first.hashCode(), second.hashCode());
+        message(first, "request");
+        message(second, "other");
+        capture.sessionEnded(first, "call", null, 0);
+
+        assertEquals(Arrays.asList("message request"), texts(capture.getSessionTrace("s1")));
+        assertEquals(Arrays.asList("message other"), texts(capture.getSessionTrace("s2")));
+        assertTrue(texts(capture.getSessionTrace("unknown")).isEmpty());
+    }
+
+    @Test
+    public void longMessagesAreTruncated() throws Exception {
+        capture.start(4, 4);
+        Session session = new Session("s1");
+        char[] text = new char[2 * SessionMessageCapture.MAX_SUMMARY_LENGTH];
+        Arrays.fill(text, 'x');
+        message(session, new String(text));
+
+        assertEquals(SessionMessageCapture.MAX_SUMMARY_LENGTH, texts(capture.getSessionTrace("s1")).get(0).length());
+    }
+
+    @Test
+    public void oldestMessagesAreOverwritten() throws Exception {
+        capture.start(4, 4);
+        Session session = new Session("s1");
+        for (int i = 0; i < 10; i++) {
+            message(session, "m" + i);
+        }
+
+        assertEquals(Arrays.asList("message m6", "message m7", "message m8", "message m9"), texts(capture.getSessionTrace("s1")));
+    }
+
+    private void message(Session session, Object text) throws Exception {
+        Method method = Messages.class.getMethod("message", Object.class, Object.class);
+        capture.invoke(null, method, new Object[]{session, text});
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> texts(Map<String, Object> trace) {
+        List<String> lines = (List<String>) trace.get("messages");
+        String[] texts = new String[lines.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = lines.get(i).substring(lines.get(i).indexOf(' ') + 1);
+        }
+        return Arrays.asList(texts);
+    }
+
+    public interface Messages {
+        void message(Object session, Object text);
+    }
+
+    private static final class Session {
+        private final String id;
+
+        Session(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+
+    private final class Rendered {
+        private String text;
+
+        Rendered(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            renders.incrementAndGet();
+            return text;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.shard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.opencloud.tools.scenario.simulator.management.SimulatorConfigurationException;
+import com.opencloud.tools.scenario.simulator.management.SimulatorFacade;
+
+public class ShardedSimulatorFacadeTest {
+    private final SimulatorFacade first = mock(SimulatorFacade.class);
+    private final SimulatorFacade second = mock(SimulatorFacade.class);
+    private final SimulatorFacade third = mock(SimulatorFacade.class);
+    private final ShardedSimulatorFacade facade = new ShardedSimulatorFacade(Arrays.asList(first, second, third));
+
+    @Test
+    public void partialFailureNamesFailedShards() throws Exception {
+        SimulatorConfigurationException failure = new SimulatorConfigurationException("no such endpoint");
+        doThrow(failure).when(second).bindRole("client", "diameter", "dialog", "default");
+
+        try {
+            facade.bindRole("client", "diameter", "dialog", "default");
+            fail("partial failure expected");
+        } catch (ShardedSimulatorFacade.PartialFailureException e) {
+            assertEquals(1, e.getFailures().size());
+            assertSame(failure, e.getFailures().get(1));
+            assertTrue(e.getMessage(), e.getMessage().startsWith("bindRole failed on 1 of 3 shards"));
+        }
+        verify(first).bindRole("client", "diameter", "dialog", "default");
+        verify(third).bindRole("client", "diameter", "dialog", "default");
+    }
+
+    @Test
+    public void failureOnAllShardsKeepsItsType() throws Exception {
+        for (SimulatorFacade shard : Arrays.asList(first, second, third)) {
+            doThrow(new SimulatorConfigurationException("bad")).when(shard).bindTable("table", "data", "default");
+        }
+
+        try {
+            facade.bindTable("table", "data", "default");
+            fail("failure expected");
+        } catch (SimulatorConfigurationException e) {
+            assertEquals(2, e.getSuppressed().length);
+        }
+    }
+}
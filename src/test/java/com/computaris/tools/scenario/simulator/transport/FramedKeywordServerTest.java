@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright 2020 Computaris International (http://computaris.com/).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.computaris.tools.scenario.simulator.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+import org.robotframework.remoteserver.library.RemoteLibrary;
+
+public class FramedKeywordServerTest {
+    private final RemoteLibrary library = mock(RemoteLibrary.class);
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private FramedKeywordServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        if (server != null) {
+            server.stop();
+        }
+        workers.shutdownNow();
+    }
+
+    private void startServer(int maxInFlight) throws Throwable {
+        when(library.runKeyword(eq("Echo"), anyList(), anyMap())).thenAnswer(call -> call.getArgument(1));
+        when(library.runKeyword(eq("Block"), anyList(), anyMap())).thenAnswer(call -> release.await(10, TimeUnit.SECONDS));
+        when(library.runKeyword(eq("Fail"), anyList(), anyMap())).thenThrow(new IllegalStateException("failed"));
+        server = new FramedKeywordServer(InetAddress.getLoopbackAddress(), 0, new KeywordDispatcher(library), workers, maxInFlight, Logger.getLogger(getClass()));
+        server.start();
+    }
+
+    @Test
+    public void pipelinedCallsRoundTrip() throws Throwable {
+        startServer(64);
+        try (FramedKeywordClient client = new FramedKeywordClient("localhost", server.getLocalPort())) {
+            List<CompletableFuture<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(client.call("Echo", "call", i));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Arrays.asList("call", String.valueOf(i)), results.get(i).get(10, TimeUnit.SECONDS));
+            }
+            try {
+                client.run("Fail");
+                fail("keyword error expected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage().contains("failed"));
+            }
+        }
+    }
+
+    @Test
+    public void malformedFrameFailsWithoutClosingConnection() throws Throwable {
+        startServer(64);
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            writeFrame(out, "not json");
+            String failure = readFrame(in);
+            assertTrue(failure, failure.contains("\"status\":\"FAIL\""));
+
+            writeFrame(out, "{\"id\": 7, \"keyword\": \"Echo\", \"args\": [\"x\"]}");
+            assertEquals("{\"id\":7,\"status\":\"PASS\",\"return\":[\"x\"]}", readFrame(in));
+        }
+    }
+
+    @Test
+    public void largeFrameIsReadAsItArrives() throws Throwable {
+        startServer(64);
+        char[] text = new char[1024 * 1024];
+        Arrays.fill(text, 'x');
+        String large = new String(text);
+        try (FramedKeywordClient client = new FramedKeywordClient("localhost", server.getLocalPort())) {
+            assertEquals(Arrays.asList(large), client.call("Echo", large).get(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("small"), client.call("Echo", "small").get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void frameLongerThanMaximumClosesConnection() throws Throwable {
+        startServer(64);
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(10000);
+            new DataOutputStream(socket.getOutputStream()).writeInt(FramedKeywordServer.MAX_FRAME_LENGTH + 1);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void listensOnLoopbackByDefault() throws Throwable {
+        server = FramedKeywordServer.fromSystemProperties(0, new KeywordDispatcher(library), Logger.getLogger(getClass()));
+        server.start();
+        assertTrue(server.getLocalAddress().isLoopbackAddress());
+    }
+
+    @Test
+    public void invalidFrameLengthClosesConnection() throws Throwable {
+        startServer(64);
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(10000);
+            new DataOutputStream(socket.getOutputStream()).writeInt(-1);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void connectionIsNotReadBeyondMaxInFlight() throws Throwable {
+        startServer(2);
+        try (FramedKeywordClient client = new FramedKeywordClient("localhost", server.getLocalPort())) {
+            List<CompletableFuture<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                results.add(client.call("Block"));
+            }
+            verify(library, timeout(10000).times(2)).runKeyword(eq("Block"), anyList(), anyMap());
+            Thread.sleep(200);
+            verify(library, atMost(2)).runKeyword(eq("Block"), anyList(), anyMap());
+
+            release.countDown();
+            for (CompletableFuture<Object> result : results) {
+                assertEquals(true, result.get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void clientFailsCallsWhenResponsesCannotBeRead() throws Exception {
+        try (ServerSocket fake = new ServerSocket(0)) {
+            Thread peer = new Thread(() -> {
+                try (Socket socket = fake.accept()) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    readFrame(in);
+                    writeFrame(out, "{\"status\":\"PASS\"}");
+                    writeFrame(out, "{\"id\":\"one\",\"status\":\"PASS\"}");
+                    writeFrame(out, "[");
+                    out.writeInt(Integer.MAX_VALUE);
+                    out.flush();
+                    readFrame(in);
+                } catch (IOException ignored) {
+                    // client went away
+                }
+            });
+            peer.start();
+            try (FramedKeywordClient client = new FramedKeywordClient("localhost", fake.getLocalPort())) {
+                CompletableFuture<Object> result = client.call("Echo");
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    fail("call should fail with the connection");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+                try {
+                    client.call("Echo").get(10, TimeUnit.SECONDS);
+                    fail("call after the reader stopped should fail");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                } catch (IOException expected) {
+                    // or fail to send
+                }
+            }
+            peer.join(10000);
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, String json) throws IOException {
+        byte[] frame = json.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    private static String readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new EOFException();
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return new String(frame, StandardCharsets.UTF_8);
+    }
+}